@@ -0,0 +1,97 @@
+package com.kalabay.cloudstorage.dir;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.kalabay.cloudstorage.common.web.Cursor;
+import com.kalabay.cloudstorage.common.web.CursorPage;
+import com.kalabay.cloudstorage.common.web.Keyed;
+import com.kalabay.cloudstorage.common.web.ListingSort;
+import com.kalabay.cloudstorage.dir.dto.DirResponse;
+import com.kalabay.cloudstorage.file.FileService;
+import com.kalabay.cloudstorage.file.StoredFile;
+import com.kalabay.cloudstorage.file.dto.FileResponse;
+import com.kalabay.cloudstorage.folder.Folder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// The JVM side of GET /api/dir for a large folder. The database sorts and pages the rows (keyset on the
+// sort key and id), so what is left here is cutting the page, encoding the next cursor, mapping
+// entities to responses and writing the JSON.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryListingBenchmark {
+
+    @Param({"100", "1000"})
+    int limit;
+
+    @Param({"createdAt,desc", "name,asc", "size,desc"})
+    String sort;
+
+    private ListingSort parsed;
+    private List<Keyed<StoredFile>> rows;
+    private String cursor;
+    private ObjectWriter writer;
+
+    @Setup
+    public void setUp() {
+        parsed = ListingSort.parse(sort);
+        Folder folder = Folder.builder().id(7L).name("photos").build();
+        Instant uploaded = Instant.parse("2024-01-01T00:00:00Z");
+
+        // fetched with limit + 1, as the repository does
+        rows = new ArrayList<>(limit + 1);
+        for (long id = 1; id <= limit + 1; id++) {
+            StoredFile file = StoredFile.builder()
+                    .id(id)
+                    .folder(folder)
+                    .originalName("IMG_" + (100000 + id) + ".jpg")
+                    .contentType("image/jpeg")
+                    .sizeBytes(1_000_000 + id * 37)
+                    .uploadedAt(uploaded.plusSeconds(id))
+                    .build();
+            Object key = switch (parsed.field()) {
+                case NAME -> file.getOriginalName().toLowerCase(Locale.ROOT);
+                case SIZE -> file.getSizeBytes();
+                case CREATED_AT -> file.getUploadedAt();
+            };
+            rows.add(new Keyed<>(file, key, id));
+        }
+        cursor = page().nextCursor();
+        // as configured in application.yml
+        writer = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .build()
+                .writer();
+    }
+
+    @Benchmark
+    public DirResponse page() {
+        CursorPage<FileResponse> files = CursorPage.of(rows, limit, FileService.LISTING_PHASE, parsed)
+                .map(FileResponse::fromEntity);
+        return new DirResponse(7L, List.of(), files.items(), files.nextCursor());
+    }
+
+    @Benchmark
+    public void pageAndSerialize() throws IOException {
+        writer.writeValue(OutputStream.nullOutputStream(), page());
+    }
+
+    @Benchmark
+    public Cursor decodeCursor() {
+        return Cursor.decode(cursor, parsed);
+    }
+}
@@ -0,0 +1,122 @@
+package com.kalabay.cloudstorage.file;
+
+import com.kalabay.cloudstorage.common.io.BufferPool;
+import com.kalabay.cloudstorage.storage.CompressionPolicy;
+import com.kalabay.cloudstorage.storage.LocalStorageBackend;
+import com.kalabay.cloudstorage.storage.StoredContent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// The storage half of an upload and a download on the local backend: staging (hash + optional gzip)
+// and moving the blob into place, then reading it back as a download does. The blob row upsert is
+// left out, so this is what the disk and the codec cost. bytes/s in the results is raw throughput.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class BlobStorageBenchmark {
+
+    @Param({"4096", "1048576", "67108864"})
+    int size;
+
+    // octet-stream is stored as is; json goes through the gzip codec both ways
+    @Param({"application/octet-stream", "application/json"})
+    String contentType;
+
+    private Path root;
+    private BlobStore blobs;
+    private LocalStorageBackend storage;
+    private byte[] payload;
+    private BlobStore.StagedBlob stored;
+    private byte[] readBuffer;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("blob-bench");
+        storage = new LocalStorageBackend(root.resolve("storage").toString(), false);
+        CompressionPolicy compression = new CompressionPolicy("gzip", -1, DataSize.ofKilobytes(4), 0.9,
+                List.of("text/*", "application/json"));
+        // the repositories and transactions are only used to commit, which this does not measure
+        blobs = new BlobStore(null, null, new BufferPool(DataSize.ofKilobytes(256), 32), compression, storage,
+                root.resolve("uploads").toString(), DataSize.ofGigabytes(10),
+                new TransferMetrics(new SimpleMeterRegistry()), null);
+
+        payload = contentType.equals("application/json") ? jsonLines(size) : randomBytes(size);
+        stored = write(new ByteCounter());
+        readBuffer = new byte[64 * 1024];
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public BlobStore.StagedBlob write(ByteCounter counter) throws IOException {
+        BlobStore.StagedBlob staged = blobs.stage(new ByteArrayInputStream(payload), contentType, payload.length);
+        // one key per payload: each write replaces the previous one instead of filling the disk
+        storage.put(staged.digest(), staged.path());
+        counter.bytes += payload.length;
+        return staged;
+    }
+
+    @Benchmark
+    public long read(ByteCounter counter) throws IOException {
+        StoredContent content = StoredContent.negotiate(storage, stored.digest(), stored.codec(),
+                stored.sizeBytes(), stored.storedSizeBytes(), null);
+        long total = 0;
+        try (InputStream in = content.resource().getInputStream()) {
+            int n;
+            while ((n = in.read(readBuffer)) > 0) {
+                total += n;
+            }
+        }
+        counter.bytes += total;
+        return total;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ByteCounter {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] jsonLines(int size) {
+        Random random = new Random(42);
+        StringBuilder out = new StringBuilder(size + 256);
+        while (out.length() < size) {
+            out.append("{\"ts\":\"2024-05-0").append(1 + random.nextInt(9))
+                    .append("T12:").append(10 + random.nextInt(50)).append(":00Z\",\"level\":\"")
+                    .append(random.nextInt(10) == 0 ? "WARN" : "INFO")
+                    .append("\",\"user\":").append(random.nextInt(5000))
+                    .append(",\"path\":\"/api/files/").append(random.nextInt(1_000_000))
+                    .append("\",\"ms\":").append(random.nextInt(900)).append("}\n");
+        }
+        return out.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,170 @@
+package com.kalabay.cloudstorage.file;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Server CPU and heap traffic per GB of large downloads, read from the instance's own process and GC
+// meters before and after. Not a test; start the app once per mode
+//   java -jar target/cloud-storage-*.jar --spring.profiles.active=dev --storage.download.zero-copy=true|false
+// and run
+//   mvn -q -Pjmh test-compile exec:java -Dexec.classpathScope=test \
+//       -Dexec.mainClass=com.kalabay.cloudstorage.file.DownloadCpuBenchmark [-Dbench.gb=16 ...]
+// The file it uploads is deleted again at the end.
+public final class DownloadCpuBenchmark {
+
+    private static final String URL = System.getProperty("bench.url", "http://localhost:8080");
+    private static final String METRICS_URL = System.getProperty("bench.metrics-url", "http://localhost:8081/actuator/prometheus");
+    private static final int FILE_MB = Integer.getInteger("bench.file-mb", 256);
+    private static final int GB = Integer.getInteger("bench.gb", 8);
+    private static final int CLIENTS = Integer.getInteger("bench.clients", 8);
+
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+
+    private static final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private static String token;
+
+    public static void main(String[] args) throws Exception {
+        token = login("download-cpu-bench", "bench-password-1");
+        long fileId = uploadPayload(FILE_MB * 1024L * 1024L);
+        try {
+            // warms up the JIT and the page cache, so both modes read the file from memory
+            for (int i = 0; i < 3; i++) {
+                download(fileId);
+            }
+
+            Meters before = meters();
+            long started = System.nanoTime();
+            long downloads = (GB * 1024L + FILE_MB - 1) / FILE_MB;
+            AtomicLong remaining = new AtomicLong(downloads);
+            AtomicLong received = new AtomicLong();
+            try (ExecutorService clients = Executors.newFixedThreadPool(CLIENTS)) {
+                List<Future<?>> running = new ArrayList<>();
+                for (int i = 0; i < CLIENTS; i++) {
+                    running.add(clients.submit(() -> {
+                        while (remaining.getAndDecrement() > 0) {
+                            received.addAndGet(download(fileId));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> client : running) {
+                    client.get();
+                }
+            }
+            double seconds = (System.nanoTime() - started) / 1e9;
+            Meters after = meters();
+
+            double gigabytes = received.get() / (double) (1L << 30);
+            System.out.printf("%d downloads of %d MB by %d clients: %.1f GB in %.1fs (%.2f GB/s)%n",
+                    downloads, FILE_MB, CLIENTS, gigabytes, seconds, gigabytes / seconds);
+            System.out.printf("%-26s %10.3f%n", "server CPU s per GB", (after.cpuNanos - before.cpuNanos) / 1e9 / gigabytes);
+            System.out.printf("%-26s %10.1f%n", "allocated MB per GB", (after.allocatedBytes - before.allocatedBytes) / 1048576.0 / gigabytes);
+            System.out.printf("%-26s %10d%n", "GC pauses", (long) (after.gcPauses - before.gcPauses));
+            System.out.printf("%-26s %10.1f%n", "GC pause ms", (after.gcPauseSeconds - before.gcPauseSeconds) * 1000);
+            System.out.printf("%-26s %10.1f%n", "zero-copy GB", (after.zeroCopyBytes - before.zeroCopyBytes) / (double) (1L << 30));
+        } finally {
+            http.send(request("/api/files/" + fileId).DELETE().build(), HttpResponse.BodyHandlers.discarding());
+        }
+    }
+
+    // the stored bytes, as-is, so both modes send the same thing
+    private static long download(long fileId) throws IOException, InterruptedException {
+        HttpResponse<Void> response = http.send(request("/api/files/" + fileId).header("Accept-Encoding", "identity").build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Download failed: " + response.statusCode());
+        }
+        return response.headers().firstValueAsLong("Content-Length").orElseThrow();
+    }
+
+    private static Meters meters() throws IOException, InterruptedException {
+        String body = http.send(HttpRequest.newBuilder(URI.create(METRICS_URL)).build(), HttpResponse.BodyHandlers.ofString()).body();
+        // process.cpu.time reports every 10 ms or so; jvm.gc.memory.allocated moves at each collection
+        return new Meters(
+                sum(body, "process_cpu_time_ns_total"),
+                sum(body, "jvm_gc_memory_allocated_bytes_total"),
+                sum(body, "jvm_gc_pause_seconds_count"),
+                sum(body, "jvm_gc_pause_seconds_sum"),
+                sum(body, "files_download_zero_copy_bytes_total"));
+    }
+
+    // adds up every series of the meter, whatever its tags
+    private static double sum(String exposition, String name) {
+        double total = 0;
+        for (String line : exposition.split("\n")) {
+            if (line.startsWith(name + " ") || line.startsWith(name + "{")) {
+                total += Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+            }
+        }
+        return total;
+    }
+
+    private static String login(String username, String password) throws IOException, InterruptedException {
+        String credentials = "{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}";
+        http.send(json("/api/users/register", credentials), HttpResponse.BodyHandlers.discarding());
+        String body = http.send(json("/api/users/login", credentials), HttpResponse.BodyHandlers.ofString()).body();
+        Matcher matcher = TOKEN.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Login failed: " + body);
+        }
+        return matcher.group(1);
+    }
+
+    // random bytes, so the upload is stored without a coding and sent as a plain file
+    private static long uploadPayload(long size) throws IOException, InterruptedException {
+        Path payload = Files.createTempFile("download-cpu-bench", ".bin");
+        try {
+            Random random = new Random(42);
+            byte[] chunk = new byte[1 << 20];
+            try (var out = Files.newOutputStream(payload)) {
+                for (long written = 0; written < size; written += chunk.length) {
+                    random.nextBytes(chunk);
+                    out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+                }
+            }
+            HttpRequest request = request("/api/files/stream?name=download-cpu-bench.bin")
+                    .header("Content-Type", "application/octet-stream")
+                    .PUT(HttpRequest.BodyPublishers.ofFile(payload))
+                    .build();
+            String body = http.send(request, HttpResponse.BodyHandlers.ofString()).body();
+            Matcher id = ID.matcher(body);
+            if (!id.find()) {
+                throw new IllegalStateException("Upload failed: " + body);
+            }
+            return Long.parseLong(id.group(1));
+        } finally {
+            Files.deleteIfExists(payload);
+        }
+    }
+
+    private static HttpRequest.Builder request(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(URL + path));
+        return token != null ? builder.header("Authorization", "Bearer " + token) : builder;
+    }
+
+    private static HttpRequest json(String path, String body) {
+        return request(path)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private record Meters(double cpuNanos, double allocatedBytes, double gcPauses, double gcPauseSeconds, double zeroCopyBytes) {}
+}
@@ -0,0 +1,307 @@
+package com.kalabay.cloudstorage.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// How many slow clients a running instance serves at once, and how an ordinary request fares meanwhile.
+// Each download client reads a large file at a trickle; each upload client sends its body at a trickle.
+// A probe requests the folder tree every 250 ms throughout. Not a test; start the app once per mode
+//   java -jar target/cloud-storage-*.jar --spring.profiles.active=dev --spring.threads.virtual.enabled=false|true
+// and run
+//   mvn -q -Pjmh test-compile exec:java -Dexec.classpathScope=test \
+//       -Dexec.mainClass=com.kalabay.cloudstorage.file.SlowClientBenchmark [-Dbench.clients=1000 ...]
+// Everything it uploads is deleted again at the end.
+public final class SlowClientBenchmark {
+
+    private static final String URL = System.getProperty("bench.url", "http://localhost:8080");
+    private static final int CLIENTS = Integer.getInteger("bench.clients", 1000);
+    private static final int SECONDS = Integer.getInteger("bench.seconds", 20);
+    private static final int DOWNLOAD_MB = Integer.getInteger("bench.download-mb", 64);
+    private static final int UPLOAD_KB = Integer.getInteger("bench.upload-kb", 256);
+    private static final int RATE_KB = Integer.getInteger("bench.rate-kb", 32);
+
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+
+    private static final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private static String token;
+
+    public static void main(String[] args) throws Exception {
+        token = login("slow-client-bench", "bench-password-1");
+        long downloadId = uploadPayload(DOWNLOAD_MB * 1024L * 1024L);
+
+        System.out.printf("%d clients for %ds, %d KB/s each%n", CLIENTS, SECONDS, RATE_KB);
+        System.out.printf("%-9s %7s %10s %10s %10s %10s %8s%n", "scenario", "served", "p50 ms", "p99 ms", "probe p50", "probe p99", "timeouts");
+
+        List<Long> uploaded = new ArrayList<>();
+        try {
+            run("download", (index, clock, served) -> download(downloadId, clock, served));
+            run("upload", (index, clock, served) -> {
+                long id = upload(index, clock, served);
+                if (id > 0) {
+                    synchronized (uploaded) {
+                        uploaded.add(id);
+                    }
+                }
+            });
+        } finally {
+            uploaded.add(downloadId);
+            cleanUp(uploaded);
+        }
+    }
+
+    // served = clients whose response started (download) or finished (upload) within the run;
+    // p50/p99 are the times to that point, over the served clients only
+    private static void run(String name, Client client) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(SECONDS).toNanos();
+        ConcurrentLinkedQueue<Long> served = new ConcurrentLinkedQueue<>();
+        List<Long> probes = new ArrayList<>();
+        int timeouts = 0;
+
+        Clock clock = new Clock(deadline, new AtomicBoolean());
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CLIENTS; i++) {
+                int index = i;
+                clients.submit(() -> {
+                    long start = System.nanoTime();
+                    try {
+                        client.run(index, clock, () -> served.add(System.nanoTime() - start));
+                    } catch (IOException ignored) {
+                        // not served
+                    }
+                });
+            }
+
+            while (System.nanoTime() < deadline) {
+                long start = System.nanoTime();
+                try {
+                    HttpResponse<Void> response = http.send(request("/api/folders/tree").timeout(Duration.ofSeconds(5)).build(),
+                            HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() == 200) {
+                        probes.add(System.nanoTime() - start);
+                    } else {
+                        timeouts++;
+                    }
+                } catch (IOException e) {
+                    timeouts++;
+                }
+                Thread.sleep(250);
+            }
+            clock.stop().set(true);
+        }
+
+        long[] servedNanos = served.stream().mapToLong(Long::longValue).sorted().toArray();
+        long[] probeNanos = probes.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("%-9s %7d %10.0f %10.0f %10.1f %10.1f %8d%n", name, servedNanos.length,
+                percentile(servedNanos, 0.50), percentile(servedNanos, 0.99),
+                percentile(probeNanos, 0.50), percentile(probeNanos, 0.99), timeouts);
+    }
+
+    private static void download(long fileId, Clock clock, Runnable served) throws IOException {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /api/files/" + fileId + " HTTP/1.1\r\n"
+                    + "Host: " + host() + "\r\n"
+                    + "Authorization: Bearer " + token + "\r\n"
+                    + "Accept-Encoding: identity\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            String head = readHead(in, clock);
+            if (head == null || !head.startsWith("HTTP/1.1 200")) {
+                return;
+            }
+            served.run();
+
+            // keep the response open until the end of the run, draining it at the configured rate
+            byte[] chunk = new byte[RATE_KB * 1024 / 4];
+            while (!clock.expired() && read(in, chunk, clock) >= 0) {
+                sleep(250);
+            }
+        }
+    }
+
+    // returns the new file's id, or -1 when it did not finish within the run
+    private static long upload(int index, Clock clock, Runnable served) throws IOException {
+        byte[] body = new byte[UPLOAD_KB * 1024];
+        new Random(index).nextBytes(body);
+
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("PUT /api/files/stream?name=slow-" + index + ".bin HTTP/1.1\r\n"
+                    + "Host: " + host() + "\r\n"
+                    + "Authorization: Bearer " + token + "\r\n"
+                    + "Content-Type: application/octet-stream\r\n"
+                    + "Content-Length: " + body.length + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+
+            int step = RATE_KB * 1024 / 4;
+            for (int from = 0; from < body.length; from += step) {
+                if (clock.expired()) {
+                    return -1;
+                }
+                out.write(body, from, Math.min(step, body.length - from));
+                out.flush();
+                sleep(250);
+            }
+
+            InputStream in = socket.getInputStream();
+            String head = readHead(in, clock);
+            if (head == null || !head.startsWith("HTTP/1.1 201")) {
+                return -1;
+            }
+            byte[] chunk = new byte[4096];
+            StringBuilder response = new StringBuilder();
+            int n;
+            while ((n = read(in, chunk, clock)) > 0) {
+                response.append(new String(chunk, 0, n, StandardCharsets.UTF_8));
+            }
+            Matcher id = ID.matcher(response);
+            if (!id.find()) {
+                return -1;
+            }
+            served.run();
+            return Long.parseLong(id.group(1));
+        }
+    }
+
+    // null when the run ends first
+    private static String readHead(InputStream in, Clock clock) throws IOException {
+        StringBuilder head = new StringBuilder();
+        byte[] one = new byte[1];
+        int matched = 0;
+        while (matched < 4) {
+            if (read(in, one, clock) <= 0) {
+                return null;
+            }
+            char c = (char) one[0];
+            head.append(c);
+            matched = "\r\n\r\n".charAt(matched) == c ? matched + 1 : (c == '\r' ? 1 : 0);
+        }
+        return head.toString();
+    }
+
+    // like InputStream.read, but waits out read timeouts until the run ends (then returns 0)
+    private static int read(InputStream in, byte[] buffer, Clock clock) throws IOException {
+        while (!clock.expired()) {
+            try {
+                return in.read(buffer);
+            } catch (SocketTimeoutException e) {
+                // look at the clock again
+            }
+        }
+        return 0;
+    }
+
+    private static Socket connect() throws IOException {
+        URI uri = URI.create(URL);
+        Socket socket = new Socket();
+        // small buffers, so the server actually blocks on a slow reader instead of filling the kernel
+        socket.setReceiveBufferSize(64 * 1024);
+        socket.setSendBufferSize(64 * 1024);
+        // a blocked read gives up now and then to look at the clock
+        socket.setSoTimeout(1000);
+        socket.connect(new InetSocketAddress(uri.getHost(), uri.getPort()), 5000);
+        return socket;
+    }
+
+    private static String login(String username, String password) throws IOException, InterruptedException {
+        String credentials = "{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}";
+        http.send(json("/api/users/register", credentials), HttpResponse.BodyHandlers.discarding());
+        String body = http.send(json("/api/users/login", credentials), HttpResponse.BodyHandlers.ofString()).body();
+        Matcher matcher = TOKEN.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Login failed: " + body);
+        }
+        return matcher.group(1);
+    }
+
+    private static long uploadPayload(long size) throws IOException, InterruptedException {
+        byte[] payload = new byte[Math.toIntExact(size)];
+        new Random(42).nextBytes(payload);
+        HttpRequest request = request("/api/files/stream?name=slow-client-download.bin")
+                .header("Content-Type", "application/octet-stream")
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(payload))
+                .build();
+        String body = http.send(request, HttpResponse.BodyHandlers.ofString()).body();
+        Matcher id = ID.matcher(body);
+        if (!id.find()) {
+            throw new IllegalStateException("Upload failed: " + body);
+        }
+        return Long.parseLong(id.group(1));
+    }
+
+    private static void cleanUp(List<Long> fileIds) throws IOException, InterruptedException {
+        String ids = Arrays.toString(fileIds.toArray());
+        http.send(request("/api/dir/delete")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"fileIds\":" + ids + "}"))
+                .build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static HttpRequest.Builder request(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(URL + path));
+        return token != null ? builder.header("Authorization", "Bearer " + token) : builder;
+    }
+
+    private static HttpRequest json(String path, String body) {
+        return request(path)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static String host() {
+        URI uri = URI.create(URL);
+        return uri.getHost() + ":" + uri.getPort();
+    }
+
+    private static double percentile(long[] sortedNanos, double p) {
+        if (sortedNanos.length == 0) {
+            return Double.NaN;
+        }
+        int index = Math.min(sortedNanos.length - 1, (int) Math.ceil(p * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(index, 0)] / 1e6;
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Client {
+        void run(int index, Clock clock, Runnable served) throws IOException;
+    }
+
+    private record Clock(long deadline, AtomicBoolean stop) {
+        boolean expired() {
+            return stop.get() || System.nanoTime() >= deadline;
+        }
+    }
+}
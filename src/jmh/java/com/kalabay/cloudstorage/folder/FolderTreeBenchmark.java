@@ -0,0 +1,62 @@
+package com.kalabay.cloudstorage.folder;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.kalabay.cloudstorage.folder.dto.FolderTreeNode;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// GET /api/folders/tree on a cache miss, minus the query: assembling the nested tree from flat rows,
+// and writing it out as JSON. Each folder hangs under a random earlier one, as in a tree grown by hand.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class FolderTreeBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int folders;
+
+    private List<FolderTreeRow> rows;
+    private List<FolderTreeNode> tree;
+    private ObjectWriter writer;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Instant created = Instant.parse("2024-01-01T00:00:00Z");
+        rows = new ArrayList<>(folders);
+        for (long id = 1; id <= folders; id++) {
+            Long parentId = id <= 10 ? null : 1 + (long) random.nextInt((int) id - 1);
+            rows.add(new FolderTreeRow(id, parentId, "folder-" + id, created.plusSeconds(id)));
+        }
+        tree = FolderService.buildTree(rows).roots();
+        // as configured in application.yml
+        writer = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .build()
+                .writer();
+    }
+
+    @Benchmark
+    public FolderTreeCache.Snapshot build() {
+        return FolderService.buildTree(rows);
+    }
+
+    @Benchmark
+    public void serialize() throws IOException {
+        writer.writeValue(OutputStream.nullOutputStream(), tree);
+    }
+}
@@ -0,0 +1,210 @@
+package com.kalabay.cloudstorage.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Sends requests at a fixed rate whatever the responses do (open loop), picking each one from the mix by
+// weight. Latency runs from when a request was due, not when it went out, so a server that stalls shows
+// up in the percentiles instead of quietly lowering the request rate (coordinated omission).
+final class LoadDriver {
+
+    private static final List<String> SORTS = List.of("createdAt,desc", "name,asc", "size,desc");
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final int UPLOAD_SIZE = 16 * 1024;
+
+    private final String baseUrl;
+    private final LoadSeeder.Fixture fixture;
+    private final Map<String, Integer> mix;
+    private final int totalWeight;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+    private final AtomicLong uploads = new AtomicLong();
+    private long measuredNanos;
+    private long sent;
+    private long late;
+
+    LoadDriver(String baseUrl, LoadSeeder.Fixture fixture, Map<String, Integer> mix) {
+        this.baseUrl = baseUrl;
+        this.fixture = fixture;
+        this.mix = mix;
+        this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        if (fixture.shareTokens().isEmpty() && mix.getOrDefault("public", 0) > 0) {
+            throw new IllegalArgumentException("The mix has public downloads but no shares were seeded");
+        }
+        mix.keySet().forEach(op -> stats.put(op, new Stats()));
+    }
+
+    // e.g. "dir=40,tree=10,download=25,public=20,upload=5"
+    static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split("=", 2);
+            if (pair.length != 2 || !List.of("dir", "tree", "download", "public", "upload").contains(pair[0].trim())) {
+                throw new IllegalArgumentException("Bad mix entry '" + part + "'; expected dir|tree|download|public|upload=<weight>");
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) {
+                mix.put(pair[0].trim(), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("The mix is empty");
+        }
+        return mix;
+    }
+
+    void run(int rate, Duration warmup, Duration duration) throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        AtomicLong inFlight = new AtomicLong();
+
+        System.out.printf("%d requests/s for %ds after %ds of warmup%n", rate, duration.toSeconds(), warmup.toSeconds());
+        for (long due = start; due < end; due += interval) {
+            boolean measured = due >= measureFrom;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else if (wait < -interval && measured) {
+                late++;
+            }
+
+            String op = pick();
+            long dueAt = due;
+            inFlight.incrementAndGet();
+            http.sendAsync(request(op), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        if (measured) {
+                            stats.get(op).record(System.nanoTime() - dueAt, error == null && response.statusCode() < 400);
+                        }
+                        inFlight.decrementAndGet();
+                    });
+            if (measured) {
+                sent++;
+            }
+        }
+        measuredNanos = duration.toNanos();
+
+        // every request times out eventually, so this ends
+        while (inFlight.get() > 0) {
+            Thread.sleep(50);
+        }
+    }
+
+    void report(PrintStream out, Path reportDir) throws IOException {
+        double seconds = measuredNanos / 1e9;
+        out.printf("%n%-9s %8s %7s %8s %9s %9s %9s %9s %9s%n", "endpoint", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        Histogram all = new Histogram(3);
+        for (var entry : stats.entrySet()) {
+            Histogram h = entry.getValue().latency;
+            all.add(h);
+            row(out, entry.getKey(), h, entry.getValue().errors.get(), seconds);
+        }
+        row(out, "all", all, stats.values().stream().mapToLong(s -> s.errors.get()).sum(), seconds);
+        if (late > 0) {
+            // their latency still counts from when they were due; a large share means the generator is the bottleneck
+            out.printf("%nSent late: %d of %d requests%n", late, sent);
+        }
+
+        Files.createDirectories(reportDir);
+        for (var entry : stats.entrySet()) {
+            out.printf("%nLatency of %s in ms%n", entry.getKey());
+            entry.getValue().latency.outputPercentileDistribution(out, 2, 1000.0);
+            // full resolution, for the HdrHistogram plotter
+            try (PrintStream file = new PrintStream(Files.newOutputStream(reportDir.resolve(entry.getKey() + ".hgrm")))) {
+                entry.getValue().latency.outputPercentileDistribution(file, 1000.0);
+            }
+        }
+        out.printf("%nPercentile distributions written to %s%n", reportDir);
+    }
+
+    private static void row(PrintStream out, String name, Histogram h, long errors, double seconds) {
+        out.printf("%-9s %8d %7d %8.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, h.getTotalCount(), errors,
+                (h.getTotalCount() + errors) / seconds,
+                h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0, h.getMaxValue() / 1000.0);
+    }
+
+    private String pick() {
+        int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (var entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private HttpRequest request(String op) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LoadSeeder.Fixture.User user = fixture.users().get(random.nextInt(fixture.users().size()));
+        return switch (op) {
+            // one in ten listings is a user's root
+            case "dir" -> get(user, "/api/dir?limit=100&sort=" + SORTS.get(random.nextInt(SORTS.size()))
+                    + (random.nextInt(10) == 0 ? "" : "&folderId=" + any(user.folderIds(), random)));
+            case "tree" -> get(user, "/api/folders/tree");
+            case "download" -> get(user, "/api/files/" + any(user.fileIds(), random));
+            case "public" -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/public/files/"
+                            + fixture.shareTokens().get(random.nextInt(fixture.shareTokens().size()))))
+                    .timeout(TIMEOUT)
+                    .build();
+            case "upload" -> {
+                byte[] body = new byte[UPLOAD_SIZE];
+                random.nextBytes(body);
+                yield HttpRequest.newBuilder(URI.create(baseUrl + "/api/files/stream?name=load-upload-" + uploads.incrementAndGet()
+                                + ".bin&folderId=" + any(user.folderIds(), random)))
+                        .header("Authorization", "Bearer " + user.token())
+                        .header("Content-Type", "application/octet-stream")
+                        .timeout(TIMEOUT)
+                        .PUT(HttpRequest.BodyPublishers.ofByteArray(body))
+                        .build();
+            }
+            default -> throw new IllegalArgumentException(op);
+        };
+    }
+
+    private HttpRequest get(LoadSeeder.Fixture.User user, String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Authorization", "Bearer " + user.token())
+                .header("Accept-Encoding", "gzip")
+                .timeout(TIMEOUT)
+                .build();
+    }
+
+    private static long any(long[] ids, ThreadLocalRandom random) {
+        return ids[random.nextInt(ids.length)];
+    }
+
+    private static final class Stats {
+        // microseconds; resizes itself, so a slow outlier is never dropped
+        final Histogram latency = new ConcurrentHistogram(3);
+        final AtomicLong errors = new AtomicLong();
+
+        void record(long nanos, boolean ok) {
+            if (ok) {
+                latency.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+            } else {
+                errors.incrementAndGet();
+            }
+        }
+    }
+}
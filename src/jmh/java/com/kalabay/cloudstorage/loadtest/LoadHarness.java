@@ -0,0 +1,88 @@
+package com.kalabay.cloudstorage.loadtest;
+
+import com.kalabay.cloudstorage.CloudStorageApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+// Repeatable load test of the REST surface. Starts the app in-process against PostgreSQL, seeds users,
+// deep folder trees and millions of file rows, drives a mixed open-loop workload and prints HDR latency
+// histograms per endpoint. Not a test; run with
+//   mvn -q -Pjmh test-compile exec:java -Dexec.classpathScope=test \
+//       -Dexec.mainClass=com.kalabay.cloudstorage.loadtest.LoadHarness [-Dloadtest.rate=500 ...]
+//
+// The database is a postgres:16-alpine Testcontainer (needs Docker and, once, the image), or an existing
+// one given by loadtest.jdbc-url / -user / -password. An existing database is seeded on the first run and
+// reused after that, together with loadtest.storage-dir; drop the load-user-* users to seed it again.
+//
+// Settings (system properties):
+//   loadtest.users [20]  loadtest.folders [2000, per user]  loadtest.depth [8]
+//   loadtest.files [2000000, in total]  loadtest.shares [2000]
+//   loadtest.rate [200 requests/s]  loadtest.warmup [15 s]  loadtest.seconds [60]
+//   loadtest.mix [dir=40,tree=10,download=25,public=20,upload=5]
+//   loadtest.storage-dir [target/loadtest/storage]  loadtest.report-dir [target/loadtest]
+public final class LoadHarness {
+
+    public static void main(String[] args) throws Exception {
+        String jdbcUrl = System.getProperty("loadtest.jdbc-url");
+        String jdbcUser = System.getProperty("loadtest.jdbc-user", "cloud");
+        String jdbcPassword = System.getProperty("loadtest.jdbc-password", "");
+        Path storageDir = Path.of(System.getProperty("loadtest.storage-dir", "target/loadtest/storage")).toAbsolutePath();
+        Path reportDir = Path.of(System.getProperty("loadtest.report-dir", "target/loadtest")).toAbsolutePath();
+
+        PostgreSQLContainer<?> postgres = null;
+        if (jdbcUrl == null) {
+            postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+            postgres.start();
+            jdbcUrl = postgres.getJdbcUrl();
+            jdbcUser = postgres.getUsername();
+            jdbcPassword = postgres.getPassword();
+        }
+
+        ConfigurableApplicationContext app = null;
+        try {
+            // arguments rather than builder properties: those are defaults, which the dev profile would override
+            app = new SpringApplicationBuilder(CloudStorageApplication.class)
+                    .profiles("dev")
+                    .run("--spring.datasource.url=" + jdbcUrl,
+                            "--spring.datasource.username=" + jdbcUser,
+                            "--spring.datasource.password=" + jdbcPassword,
+                            "--server.port=0",
+                            "--management.server.port=0",
+                            "--storage.root-dir=" + storageDir.resolve("blobs"),
+                            "--storage.upload.staging-dir=" + storageDir.resolve("uploads"),
+                            "--spring.devtools.restart.enabled=false",
+                            "--logging.level.root=WARN",
+                            "--logging.level.org.springframework=WARN");
+            String baseUrl = "http://localhost:" + ((WebServerApplicationContext) app).getWebServer().getPort();
+
+            LoadSeeder seeder = new LoadSeeder(app.getBean(JdbcTemplate.class), app.getBean(PasswordEncoder.class), baseUrl,
+                    Integer.getInteger("loadtest.users", 20),
+                    Integer.getInteger("loadtest.folders", 2000),
+                    Integer.getInteger("loadtest.depth", 8),
+                    Long.getLong("loadtest.files", 2_000_000),
+                    Integer.getInteger("loadtest.shares", 2000));
+            LoadSeeder.Fixture fixture = seeder.seed();
+
+            LoadDriver driver = new LoadDriver(baseUrl, fixture, LoadDriver.parseMix(
+                    System.getProperty("loadtest.mix", "dir=40,tree=10,download=25,public=20,upload=5")));
+            driver.run(Integer.getInteger("loadtest.rate", 200),
+                    Duration.ofSeconds(Integer.getInteger("loadtest.warmup", 15)),
+                    Duration.ofSeconds(Integer.getInteger("loadtest.seconds", 60)));
+            driver.report(System.out, reportDir);
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+            if (postgres != null) {
+                postgres.stop();
+            }
+        }
+    }
+}
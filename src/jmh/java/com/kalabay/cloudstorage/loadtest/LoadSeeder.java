@@ -0,0 +1,260 @@
+package com.kalabay.cloudstorage.loadtest;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Seeds the data set a load test runs against. A small pool of real blobs is uploaded through the API so
+// downloads have bytes to send; everything else is written with set-based SQL (the folder path and total
+// triggers still run), so millions of file rows take minutes rather than hours. The file rows reuse the
+// pooled blobs, the way deduplicated uploads would.
+final class LoadSeeder {
+
+    static final String USER_PREFIX = "load-user-";
+    static final String PASSWORD = "load-password";
+
+    private static final int POOL_SIZE = 100;
+    private static final int ROOT_FOLDERS = 10;
+    private static final int FILE_CHUNK = 100_000;
+    private static final int SAMPLE = 1000;
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+
+    private final JdbcTemplate jdbc;
+    private final PasswordEncoder passwords;
+    private final String baseUrl;
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final int users;
+    private final int foldersPerUser;
+    private final int depth;
+    private final long files;
+    private final int shares;
+
+    LoadSeeder(JdbcTemplate jdbc, PasswordEncoder passwords, String baseUrl, int users, int foldersPerUser, int depth, long files, int shares) {
+        if (users < 1 || depth < 1 || foldersPerUser < ROOT_FOLDERS) {
+            throw new IllegalArgumentException("Need at least 1 user, depth 1 and " + ROOT_FOLDERS + " folders per user");
+        }
+        this.jdbc = jdbc;
+        this.passwords = passwords;
+        this.baseUrl = baseUrl;
+        this.users = users;
+        this.foldersPerUser = foldersPerUser;
+        this.depth = depth;
+        this.files = files;
+        this.shares = shares;
+    }
+
+    Fixture seed() throws IOException, InterruptedException {
+        Long seeded = jdbc.queryForObject("""
+                SELECT count(*) FROM files f JOIN users u ON u.id = f.owner_id
+                WHERE u.username = ? AND f.folder_id IS NOT NULL
+                """, Long.class, USER_PREFIX + 0);
+        if (seeded != null && seeded > 0) {
+            System.out.println("Reusing the data seeded by an earlier run");
+        } else {
+            long started = System.nanoTime();
+            List<Long> userIds = createUsers();
+            uploadPool(login(USER_PREFIX + 0));
+            for (int i = 0; i < userIds.size(); i++) {
+                createFolders(userIds.get(i));
+                createFiles(userIds.get(i), files / users + (i < files % users ? 1 : 0));
+                System.out.printf("Seeded user %d of %d%n", i + 1, userIds.size());
+            }
+            countPoolReferences(userIds.get(0));
+            createShares();
+            jdbc.execute("ANALYZE");
+            System.out.printf("Seeded %d users, %d folders, %d files in %ds%n", users, (long) users * foldersPerUser, files,
+                    (System.nanoTime() - started) / 1_000_000_000L);
+        }
+        return fixture();
+    }
+
+    private List<Long> createUsers() {
+        // one hash for everybody: BCrypt is slow on purpose, and logins are not what is measured
+        String hash = passwords.encode(PASSWORD);
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            rows.add(new Object[] {USER_PREFIX + i, hash});
+        }
+        jdbc.batchUpdate("INSERT INTO users (username, password_hash) VALUES (?, ?) ON CONFLICT (username) DO NOTHING", rows);
+        return userIds();
+    }
+
+    private List<Long> userIds() {
+        List<Long> ids = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            ids.add(jdbc.queryForObject("SELECT id FROM users WHERE username = ?", Long.class, USER_PREFIX + i));
+        }
+        return ids;
+    }
+
+    // half compressible JSON (stored gzip-coded), half incompressible "photos"; 1 KB to 256 KB
+    private void uploadPool(String token) throws IOException, InterruptedException {
+        Random random = new Random(42);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int size = 1024 << random.nextInt(9);
+            boolean json = i % 2 == 0;
+            byte[] body = json ? jsonBody(random, size) : randomBody(random, size);
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/files/stream?name=pool-" + i + (json ? ".json" : ".jpg")))
+                    .header("Authorization", "Bearer " + token)
+                    .header("Content-Type", json ? "application/json" : "image/jpeg")
+                    .PUT(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 201) {
+                throw new IllegalStateException("Pool upload failed: " + response.statusCode() + " " + response.body());
+            }
+        }
+    }
+
+    // ROOT_FOLDERS roots, the rest spread evenly over the levels below, each under a random folder of
+    // the level above, so every user has branches depth levels deep
+    private void createFolders(Long userId) {
+        List<Long> level = jdbc.queryForList("""
+                INSERT INTO folders (owner_id, parent_id, name, created_at)
+                SELECT ?, NULL, 'Folder ' || g, now() - random() * interval '730 days'
+                FROM generate_series(1, ?) g
+                RETURNING id
+                """, Long.class, userId, ROOT_FOLDERS);
+
+        int perLevel = depth > 1 ? (foldersPerUser - ROOT_FOLDERS) / (depth - 1) : 0;
+        for (int d = 1; d < depth; d++) {
+            int count = d == depth - 1 ? foldersPerUser - ROOT_FOLDERS - perLevel * (depth - 2) : perLevel;
+            level = jdbc.queryForList("""
+                    INSERT INTO folders (owner_id, parent_id, name, created_at)
+                    SELECT ?, p.ids[1 + floor(random() * cardinality(p.ids))::int], 'Folder ' || ? || '.' || g,
+                           now() - random() * interval '730 days'
+                    FROM generate_series(1, ?) g, (SELECT CAST(? AS BIGINT[]) AS ids) p
+                    RETURNING id
+                    """, Long.class, userId, d, count, arrayLiteral(level));
+        }
+    }
+
+    // files land in folders with a skew (power 3), so a few folders hold thousands of files and most
+    // hold a handful; folders are shuffled first so the big ones sit at every depth. 5% stay at the root
+    private void createFiles(Long userId, long count) {
+        for (long from = 1; from <= count; from += FILE_CHUNK) {
+            long to = Math.min(count, from + FILE_CHUNK - 1);
+            jdbc.update("""
+                    WITH pool AS (
+                        SELECT row_number() OVER (ORDER BY f.id) AS n, f.storage_name, f.content_type, f.size_bytes,
+                               f.codec, f.stored_size_bytes
+                        FROM files f JOIN users u ON u.id = f.owner_id
+                        WHERE u.username = ? AND f.folder_id IS NULL AND f.original_name LIKE 'pool-%'
+                    ),
+                    targets AS (
+                        SELECT array_agg(id ORDER BY md5(id::text)) AS ids FROM folders WHERE owner_id = ?
+                    ),
+                    picks AS (
+                        SELECT g, 1 + floor(random() * (SELECT count(*) FROM pool))::int AS n,
+                               CASE WHEN random() < 0.05 THEN NULL
+                                    ELSE t.ids[1 + floor(power(random(), 3) * cardinality(t.ids))::int] END AS folder_id
+                        FROM generate_series(?, ?) g, targets t
+                    )
+                    INSERT INTO files (owner_id, folder_id, original_name, storage_name, content_type, size_bytes,
+                                       codec, stored_size_bytes, uploaded_at)
+                    SELECT ?, s.folder_id,
+                           CASE WHEN p.content_type = 'application/json' THEN 'report-' || s.g || '.json' ELSE 'IMG_' || s.g || '.jpg' END,
+                           p.storage_name, p.content_type, p.size_bytes, p.codec, p.stored_size_bytes,
+                           now() - random() * interval '730 days'
+                    FROM picks s JOIN pool p ON p.n = s.n
+                    """, USER_PREFIX + 0, userId, from, to, userId);
+        }
+    }
+
+    private void countPoolReferences(Long poolOwnerId) {
+        jdbc.update("""
+                UPDATE blobs b SET ref_count = c.refs
+                FROM (
+                    SELECT storage_name, count(*) AS refs FROM files
+                    WHERE storage_name IN (SELECT storage_name FROM files WHERE owner_id = ? AND folder_id IS NULL AND original_name LIKE 'pool-%')
+                    GROUP BY storage_name
+                ) c
+                WHERE b.storage_name = c.storage_name
+                """, poolOwnerId);
+    }
+
+    private void createShares() {
+        jdbc.update("""
+                INSERT INTO file_shares (file_id, token)
+                SELECT f.id, md5(random()::text || f.id)
+                FROM files f JOIN users u ON u.id = f.owner_id
+                WHERE u.username LIKE ?
+                ORDER BY random()
+                LIMIT ?
+                """, USER_PREFIX + "%", shares);
+    }
+
+    private Fixture fixture() throws IOException, InterruptedException {
+        List<Fixture.User> fixtures = new ArrayList<>();
+        List<Long> userIds = userIds();
+        for (int i = 0; i < userIds.size(); i++) {
+            Long userId = userIds.get(i);
+            List<Long> folderIds = jdbc.queryForList("SELECT id FROM folders WHERE owner_id = ?", Long.class, userId);
+            List<Long> fileIds = jdbc.queryForList("SELECT id FROM files WHERE owner_id = ? ORDER BY random() LIMIT ?",
+                    Long.class, userId, SAMPLE);
+            fixtures.add(new Fixture.User(login(USER_PREFIX + i), toArray(folderIds), toArray(fileIds)));
+        }
+        List<String> tokens = jdbc.queryForList("""
+                SELECT s.token FROM file_shares s JOIN files f ON f.id = s.file_id JOIN users u ON u.id = f.owner_id
+                WHERE u.username LIKE ? AND NOT s.revoked
+                """, String.class, USER_PREFIX + "%");
+        return new Fixture(fixtures, tokens);
+    }
+
+    private String login(String username) throws IOException, InterruptedException {
+        String credentials = "{\"username\":\"" + username + "\",\"password\":\"" + PASSWORD + "\"}";
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/users/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(credentials))
+                .build();
+        String body = http.send(request, HttpResponse.BodyHandlers.ofString()).body();
+        Matcher matcher = TOKEN.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Login failed for " + username + ": " + body);
+        }
+        return matcher.group(1);
+    }
+
+    private static String arrayLiteral(List<Long> ids) {
+        return ids.stream().map(String::valueOf).collect(Collectors.joining(",", "{", "}"));
+    }
+
+    private static long[] toArray(List<Long> ids) {
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static byte[] randomBody(Random random, int size) {
+        byte[] body = new byte[size];
+        random.nextBytes(body);
+        return body;
+    }
+
+    private static byte[] jsonBody(Random random, int size) {
+        StringBuilder out = new StringBuilder(size + 128);
+        out.append('[');
+        while (out.length() < size - 2) {
+            out.append("{\"ts\":\"2024-05-0").append(1 + random.nextInt(9))
+                    .append("T12:00:00Z\",\"user\":").append(random.nextInt(5000))
+                    .append(",\"path\":\"/api/files/").append(random.nextInt(1_000_000)).append("\"},");
+        }
+        out.setLength(out.length() - 1);
+        out.append(']');
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    record Fixture(List<User> users, List<String> shareTokens) {
+        record User(String token, long[] folderIds, long[] fileIds) {}
+    }
+}
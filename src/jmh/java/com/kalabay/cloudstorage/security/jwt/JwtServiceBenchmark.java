@@ -0,0 +1,37 @@
+package com.kalabay.cloudstorage.security.jwt;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Runs on every authenticated request (the principal cache saves the user lookup, not this).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    private JwtService jwt;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        // the dev profile's secret: 64 bytes, HS512
+        jwt = new JwtService("pTnq2hQ9NZGvmCqEd8H9+HfA9swHQxtTnFlEXwRYe6c2FB9hAN/XG8Ujs3kGW2sL2bY3pV5KMUJf0GzT3csGbw==", 60, "cloud-storage",
+                new SimpleMeterRegistry());
+        token = jwt.generateToken(42L, "alice");
+    }
+
+    @Benchmark
+    public JwtService.TokenSubject validate() {
+        return jwt.validate(token);
+    }
+
+    @Benchmark
+    public String generate() {
+        return jwt.generateToken(42L, "alice");
+    }
+}
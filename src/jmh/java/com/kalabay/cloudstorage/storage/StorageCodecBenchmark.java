@@ -0,0 +1,116 @@
+package com.kalabay.cloudstorage.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Encode/decode throughput (MB/s of raw data) and size ratio for each codec on typical payloads.
+// Not a test; run with:
+//   mvn -q -Pjmh test-compile exec:java -Dexec.classpathScope=test \
+//       -Dexec.mainClass=com.kalabay.cloudstorage.storage.StorageCodecBenchmark
+public final class StorageCodecBenchmark {
+
+    private static final int SIZE = 32 * 1024 * 1024;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        Map<String, byte[]> corpora = new LinkedHashMap<>();
+        corpora.put("json-log", jsonLog());
+        corpora.put("csv", csv());
+        corpora.put("random", random());
+
+        System.out.printf("%-9s %-5s %5s %8s %11s %11s%n", "payload", "codec", "level", "ratio", "encode MB/s", "decode MB/s");
+        for (var corpus : corpora.entrySet()) {
+            for (StorageCodec codec : new StorageCodec[] {StorageCodec.GZIP, StorageCodec.ZSTD}) {
+                for (int level : codec == StorageCodec.GZIP ? new int[] {1, 6} : new int[] {1, 3, 9}) {
+                    run(corpus.getKey(), corpus.getValue(), codec, level);
+                }
+            }
+        }
+    }
+
+    private static void run(String name, byte[] raw, StorageCodec codec, int level) throws IOException {
+        byte[] encoded = encode(raw, codec, level);
+        long encodeNanos = Long.MAX_VALUE;
+        long decodeNanos = Long.MAX_VALUE;
+        // best of several rounds, the first ones double as warm-up
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            encode(raw, codec, level);
+            encodeNanos = Math.min(encodeNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            decode(encoded, codec);
+            decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+        }
+        double mb = raw.length / 1_000_000.0;
+        System.out.printf("%-9s %-5s %5d %7.2fx %11.0f %11.0f%n", name, codec.contentEncoding(), level,
+                (double) raw.length / encoded.length, mb / (encodeNanos / 1e9), mb / (decodeNanos / 1e9));
+    }
+
+    private static byte[] encode(byte[] raw, StorageCodec codec, int level) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(raw.length / 4);
+        try (OutputStream out = codec.encode(buffer, level)) {
+            out.write(raw);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static long decode(byte[] encoded, StorageCodec codec) throws IOException {
+        byte[] chunk = new byte[64 * 1024];
+        long total = 0;
+        try (InputStream in = codec.decode(new ByteArrayInputStream(encoded))) {
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                total += n;
+            }
+        }
+        return total;
+    }
+
+    private static byte[] jsonLog() {
+        Random random = new Random(42);
+        String[] levels = {"INFO", "INFO", "INFO", "WARN", "DEBUG", "ERROR"};
+        String[] paths = {"/api/files", "/api/folders/tree", "/api/files/uploads", "/api/public/files", "/api/auth/login"};
+        StringBuilder out = new StringBuilder(SIZE + 512);
+        long ts = 1_760_000_000_000L;
+        while (out.length() < SIZE) {
+            ts += random.nextInt(50);
+            out.append("{\"ts\":").append(ts)
+                    .append(",\"level\":\"").append(levels[random.nextInt(levels.length)])
+                    .append("\",\"path\":\"").append(paths[random.nextInt(paths.length)]).append('/').append(random.nextInt(100_000))
+                    .append("\",\"status\":").append(random.nextInt(10) == 0 ? 404 : 200)
+                    .append(",\"durationMs\":").append(random.nextInt(900))
+                    .append(",\"user\":\"user").append(random.nextInt(5_000)).append("\"}\n");
+        }
+        return out.substring(0, SIZE).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] csv() {
+        Random random = new Random(7);
+        StringBuilder out = new StringBuilder(SIZE + 256);
+        out.append("id,date,customer,amount,currency,country\n");
+        long id = 0;
+        while (out.length() < SIZE) {
+            out.append(++id).append(",2025-")
+                    .append(String.format("%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28)))
+                    .append(",customer-").append(random.nextInt(20_000))
+                    .append(',').append(random.nextInt(100_000) / 100.0)
+                    .append(random.nextBoolean() ? ",EUR," : ",USD,")
+                    .append(random.nextBoolean() ? "DE" : "KZ").append('\n');
+        }
+        return out.substring(0, SIZE).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] random() {
+        byte[] bytes = new byte[SIZE];
+        new Random(1).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -2,12 +2,32 @@ package com.kalabay.cloudstorage;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(scanBasePackages = "com.kalabay.cloudstorage")
+@EnableScheduling
 public class CloudStorageApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(CloudStorageApplication.class, args);
+		SpringApplication app = new SpringApplication(CloudStorageApplication.class);
+		app.addListeners((ApplicationListener<ApplicationEnvironmentPreparedEvent>) event -> raiseCarrierLimit(event.getEnvironment()));
+		app.run(args);
+	}
+
+	// with spring.threads.virtual.enabled, Tomcat 10.1 waits out a slow reader in Object.wait, which on
+	// JDK 21 holds the carrier thread; the scheduler adds carriers for that only up to this limit
+	// (256 by default), which would otherwise cap the downloads in flight. The scheduler reads it once,
+	// when the first virtual thread starts: this runs as soon as the configuration is known and before
+	// anything is started, but passing -Djdk.virtualThreadScheduler.maxPoolSize to the JVM is the
+	// reliable way, and wins over this
+	private static void raiseCarrierLimit(ConfigurableEnvironment environment) {
+		if (environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)
+				&& System.getProperty("jdk.virtualThreadScheduler.maxPoolSize") == null) {
+			System.setProperty("jdk.virtualThreadScheduler.maxPoolSize", "4096");
+		}
 	}
 
 }
@@ -0,0 +1,48 @@
+package com.kalabay.cloudstorage.common.io;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+public class BufferPool {
+
+    private final BlockingQueue<ByteBuffer> pool;
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final int bufferSize;
+    private final int bufferCount;
+
+    public BufferPool(
+            @Value("${storage.io.buffer-size:256KB}") DataSize bufferSize,
+            @Value("${storage.io.buffer-count:32}") int bufferCount
+    ) {
+        this.bufferSize = Math.toIntExact(bufferSize.toBytes());
+        this.bufferCount = bufferCount;
+        this.pool = new ArrayBlockingQueue<>(bufferCount);
+    }
+
+    // direct buffers are expensive to allocate and are only released by GC, so they are reused;
+    // once all of them are in use callers get a short-lived heap buffer instead of growing off-heap memory
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+        if (buffer != null) {
+            return buffer.clear();
+        }
+        if (allocated.incrementAndGet() <= bufferCount) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        allocated.decrementAndGet();
+        return ByteBuffer.allocate(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.isDirect()) {
+            pool.offer(buffer.clear());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.kalabay.cloudstorage.common.web;
+
+import com.kalabay.cloudstorage.common.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Opaque position in a sorted listing: the sort key and id of the last row returned. The phase lets one
+// cursor walk listings made of several parts (a directory's folders, then its files); a null key
+// means "from the start of that phase". Cursors are only valid with the sort they were issued for.
+public record Cursor(String phase, Object key, Long id) {
+
+    public static Cursor start(String phase) {
+        return new Cursor(phase, null, null);
+    }
+
+    public boolean atStart() {
+        return id == null;
+    }
+
+    public String encode(ListingSort sort) {
+        String value = sort + "|" + phase + "|" + (id != null ? id : "") + "|" + (key != null ? key : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Cursor decode(String token, ListingSort sort) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+
+        String[] parts;
+        try {
+            // the key is last and may itself contain '|'
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", 4);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+        if (parts.length != 4) {
+            throw new BadRequestException("Invalid cursor");
+        }
+        if (!parts[0].equals(sort.toString())) {
+            throw new BadRequestException("Cursor was issued for a different sort");
+        }
+        if (parts[2].isEmpty()) {
+            return start(parts[1]);
+        }
+
+        try {
+            return new Cursor(parts[1], sort.parseKey(parts[3]), Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+}
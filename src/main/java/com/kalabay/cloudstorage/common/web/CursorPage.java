@@ -0,0 +1,33 @@
+package com.kalabay.cloudstorage.common.web;
+
+import com.kalabay.cloudstorage.common.exception.BadRequestException;
+
+import java.util.List;
+import java.util.function.Function;
+
+public record CursorPage<T>(List<T> items, String nextCursor) {
+
+    public static final int MAX_LIMIT = 1000;
+
+    // rows are fetched with limit + 1, so an extra row means there is a next page
+    public static <T> CursorPage<T> of(List<Keyed<T>> rows, int limit, String phase, ListingSort sort) {
+        if (rows.size() <= limit) {
+            return new CursorPage<>(rows.stream().map(Keyed::item).toList(), null);
+        }
+        List<Keyed<T>> page = rows.subList(0, limit);
+        Keyed<T> last = page.get(limit - 1);
+        String next = new Cursor(phase, last.key(), last.id()).encode(sort);
+        return new CursorPage<>(page.stream().map(Keyed::item).toList(), next);
+    }
+
+    public static int checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        return limit;
+    }
+
+    public <R> CursorPage<R> map(Function<T, R> mapper) {
+        return new CursorPage<>(items.stream().map(mapper).toList(), nextCursor);
+    }
+}
@@ -0,0 +1,16 @@
+package com.kalabay.cloudstorage.common.web;
+
+import org.springframework.core.io.Resource;
+
+import java.time.Instant;
+
+public interface Download {
+    Resource resource();
+    String filename();
+    String contentType();
+    long sizeBytes();
+    // null when the body is sent as stored without a content coding
+    String contentEncoding();
+    String etag();
+    Instant lastModified();
+}
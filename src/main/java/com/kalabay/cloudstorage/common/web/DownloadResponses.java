@@ -0,0 +1,74 @@
+package com.kalabay.cloudstorage.common.web;
+
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+// 304 and Range (206, multipart/byteranges, 416) are handled by Spring MVC from the headers set here;
+// Spring ignores If-Range, so a non-matching one gets an InputStreamResource body, which skips range processing
+public final class DownloadResponses {
+
+    private DownloadResponses() {}
+
+    public static ResponseEntity<Resource> build(Download download, String range, String ifRange, CacheControl cacheControl) {
+        var response = headers(HttpStatus.OK, download, cacheControl);
+
+        if (range != null && ifRange != null && !ifRangeMatches(ifRange, download)) {
+            Resource resource = download.resource();
+            return response
+                    .contentLength(download.sizeBytes())
+                    .body(new InputStreamResource(resource::getInputStream));
+        }
+
+        return response.body(download.resource());
+    }
+
+    static ResponseEntity.BodyBuilder headers(HttpStatus status, Download download, CacheControl cacheControl) {
+        String encoded = URLEncoder.encode(download.filename(), StandardCharsets.UTF_8);
+        MediaType mediaType = download.contentType() != null
+                ? MediaType.parseMediaType(download.contentType())
+                : MediaType.APPLICATION_OCTET_STREAM;
+
+        var response = ResponseEntity.status(status)
+                .contentType(mediaType)
+                .eTag(download.etag())
+                .lastModified(download.lastModified())
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename*=UTF-8''" + encoded);
+
+        if (download.contentEncoding() != null) {
+            response.header(HttpHeaders.CONTENT_ENCODING, download.contentEncoding());
+        }
+        return response;
+    }
+
+    // RFC 9110 13.1.5: strong comparison for entity tags, exact match for dates
+    static boolean ifRangeMatches(String ifRange, Download download) {
+        String value = ifRange.trim();
+        if (value.startsWith("\"")) {
+            return value.equals(download.etag());
+        }
+        if (value.startsWith("W/")) {
+            return false;
+        }
+        try {
+            Instant date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return date.getEpochSecond() == download.lastModified().getEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+}
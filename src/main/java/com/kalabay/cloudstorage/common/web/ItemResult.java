@@ -0,0 +1,13 @@
+package com.kalabay.cloudstorage.common.web;
+
+// the outcome for one id of a bulk request; error is null when it went through
+public record ItemResult(Long id, String error) {
+
+    public static ItemResult done(Long id) {
+        return new ItemResult(id, null);
+    }
+
+    public static ItemResult failed(Long id, String error) {
+        return new ItemResult(id, error);
+    }
+}
@@ -0,0 +1,4 @@
+package com.kalabay.cloudstorage.common.web;
+
+// a listing row together with the sort key the database ordered it by
+public record Keyed<T>(T item, Object key, Long id) {}
@@ -0,0 +1,69 @@
+package com.kalabay.cloudstorage.common.web;
+
+import com.kalabay.cloudstorage.common.exception.BadRequestException;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+// sort=<field>,<asc|desc> as accepted by the listing endpoints; the sort key and the id together
+// give a total order, which is what keyset cursors page over
+public record ListingSort(Field field, boolean asc) {
+
+    public enum Field {
+        NAME("name"),
+        SIZE("size"),
+        CREATED_AT("createdAt");
+
+        private final String param;
+
+        Field(String param) {
+            this.param = param;
+        }
+
+        public String param() {
+            return param;
+        }
+
+        // name sorts case-insensitively; its key is lower(name) as computed by the database
+        Object parseKey(String value) {
+            return switch (this) {
+                case NAME -> value;
+                case SIZE -> Long.parseLong(value);
+                case CREATED_AT -> Instant.parse(value);
+            };
+        }
+    }
+
+    public static ListingSort parse(String sort) {
+        String[] parts = sort.split(",", 2);
+        String name = parts[0].trim();
+        String dir = parts.length > 1 ? parts[1].trim().toLowerCase(Locale.ROOT) : "asc";
+
+        boolean asc = switch (dir) {
+            case "asc" -> true;
+            case "desc" -> false;
+            default -> throw new BadRequestException("Sort direction must be asc|desc");
+        };
+
+        for (Field field : Field.values()) {
+            if (field.param.equals(name)) {
+                return new ListingSort(field, asc);
+            }
+        }
+        throw new BadRequestException("Unsupported sort field: " + name);
+    }
+
+    @Override
+    public String toString() {
+        return field.param + "," + (asc ? "asc" : "desc");
+    }
+
+    Object parseKey(String value) {
+        try {
+            return field.parseKey(value);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+}
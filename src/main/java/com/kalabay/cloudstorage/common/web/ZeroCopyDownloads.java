@@ -0,0 +1,113 @@
+package com.kalabay.cloudstorage.common.web;
+
+import com.kalabay.cloudstorage.storage.StorageResource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+
+// Large downloads that are stored as files (the local backend, sent in their stored coding) are handed to
+// Tomcat's sendfile: the servlet returns headers only and the connector's poller writes the file with
+// FileChannel.transferTo, so the bytes go from the page cache to the socket without passing through the
+// heap and no request thread is held while a slow client drains them. Conditional requests, multiple
+// ranges, HEAD and everything else go through DownloadResponses as before.
+@Component
+public class ZeroCopyDownloads {
+
+    // org.apache.coyote.Constants; set by Tomcat when the connector can send files (not over TLS)
+    private static final String SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String START = "org.apache.tomcat.sendfile.start";
+    private static final String END = "org.apache.tomcat.sendfile.end";
+    private static final List<String> CONDITIONAL = List.of(
+            HttpHeaders.IF_MATCH, HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.IF_UNMODIFIED_SINCE);
+
+    private final boolean enabled;
+    private final long minSize;
+    private final Counter bytes;
+
+    public ZeroCopyDownloads(
+            @Value("${storage.download.zero-copy:true}") boolean enabled,
+            @Value("${storage.download.zero-copy-min-size:256KB}") DataSize minSize,
+            MeterRegistry registry
+    ) {
+        this.enabled = enabled;
+        this.minSize = minSize.toBytes();
+        this.bytes = Counter.builder("files.download.zero_copy").baseUnit("bytes").register(registry);
+    }
+
+    public ResponseEntity<Resource> build(HttpServletRequest request, Download download, String range, String ifRange, CacheControl cacheControl) {
+        Path file = eligibleFile(request, download);
+        if (file == null) {
+            return DownloadResponses.build(download, range, ifRange, cacheControl);
+        }
+
+        long length = download.sizeBytes();
+        if (range == null || (ifRange != null && !DownloadResponses.ifRangeMatches(ifRange, download))) {
+            return send(request, file, 0, length, DownloadResponses.headers(HttpStatus.OK, download, cacheControl));
+        }
+
+        // a single satisfiable range; anything else (several ranges, 416) is left to Spring
+        long start;
+        long end;
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(range);
+            if (ranges.size() != 1) {
+                return DownloadResponses.build(download, range, ifRange, cacheControl);
+            }
+            start = ranges.getFirst().getRangeStart(length);
+            end = ranges.getFirst().getRangeEnd(length) + 1;
+        } catch (IllegalArgumentException e) {
+            return DownloadResponses.build(download, range, ifRange, cacheControl);
+        }
+        if (start >= end) {
+            return DownloadResponses.build(download, range, ifRange, cacheControl);
+        }
+        var response = DownloadResponses.headers(HttpStatus.PARTIAL_CONTENT, download, cacheControl)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+        return send(request, file, start, end, response);
+    }
+
+    private Path eligibleFile(HttpServletRequest request, Download download) {
+        if (!enabled
+                || download.sizeBytes() < minSize
+                || !HttpMethod.GET.matches(request.getMethod())
+                || !Boolean.TRUE.equals(request.getAttribute(SUPPORT))
+                || !(download.resource() instanceof StorageResource stored)) {
+            return null;
+        }
+        for (String header : CONDITIONAL) {
+            if (request.getHeader(header) != null) {
+                return null;
+            }
+        }
+        try {
+            return stored.localFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Tomcat sends [start, end) once the servlet returns; the body stays empty
+    private ResponseEntity<Resource> send(HttpServletRequest request, Path file, long start, long end, ResponseEntity.BodyBuilder response) {
+        request.setAttribute(FILENAME, file.toString());
+        request.setAttribute(START, start);
+        request.setAttribute(END, end);
+        bytes.increment(end - start);
+        return response.contentLength(end - start).build();
+    }
+}
@@ -1,17 +1,27 @@
 package com.kalabay.cloudstorage.dir;
 
+import com.kalabay.cloudstorage.common.web.Cursor;
+import com.kalabay.cloudstorage.common.web.CursorPage;
+import com.kalabay.cloudstorage.common.web.ListingSort;
+import com.kalabay.cloudstorage.dir.dto.BulkDeleteRequest;
+import com.kalabay.cloudstorage.dir.dto.BulkItem;
+import com.kalabay.cloudstorage.dir.dto.BulkMoveRequest;
 import com.kalabay.cloudstorage.dir.dto.DirResponse;
 import com.kalabay.cloudstorage.file.FileService;
 import com.kalabay.cloudstorage.file.dto.FileResponse;
 import com.kalabay.cloudstorage.folder.FolderService;
 import com.kalabay.cloudstorage.folder.dto.FolderResponse;
+import com.kalabay.cloudstorage.security.UserPrincipal;
+import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/dir")
@@ -25,64 +35,71 @@ public class DirectoryController {
         this.fileService = fileService;
     }
 
+    // folders come first, then files; one cursor walks both, so a page may end inside either part
     @GetMapping
-    public DirResponse dir(@RequestParam(value = "folderId", required = false) Long folderId, @RequestParam(value = "sort", required = false, defaultValue = "createdAt,desc") String sort, Authentication auth) {
-        String username = auth.getName();
-        List<FolderResponse> folders = folderService.listChildren(username, folderId)
-                .stream()
-                .map(FolderResponse::fromEntity)
-                .toList();
-        List<FileResponse> files = fileService.list(username, folderId)
-            .stream()
-            .map(FileResponse::fromEntity)
-            .toList();
-        ParsedSort parsed = parseSort(sort);
-        folders = sortFolders(folders, parsed);
-        files = sortFiles(files, parsed);
-        return new DirResponse(folderId, folders, files);
-    }
-
-    private List<FolderResponse> sortFolders(List<FolderResponse> items, ParsedSort sort) {
-        Comparator<FolderResponse> cmp = switch (sort.field) {
-            case "createdAt" -> Comparator.comparing(FolderResponse::createdAt, Comparator.nullsLast(Comparator.naturalOrder()));
-            case "name" -> Comparator.comparing(FolderResponse::name, String.CASE_INSENSITIVE_ORDER);
-            case "size" -> Comparator.comparing(FolderResponse::name, String.CASE_INSENSITIVE_ORDER);
-            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported sort field: " + sort.field);
-        };
+    public DirResponse dir(
+            @RequestParam(value = "folderId", required = false) Long folderId,
+            @RequestParam(value = "sort", required = false, defaultValue = "createdAt,desc") String sort,
+            @RequestParam(value = "limit", required = false, defaultValue = "100") int limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @AuthenticationPrincipal UserPrincipal user
+    ) {
+        Long ownerId = user.getId();
+        ListingSort parsed = ListingSort.parse(sort);
+        Cursor after = Cursor.decode(cursor, parsed);
+        CursorPage.checkLimit(limit);
 
-        if (!sort.asc) cmp = cmp.reversed();
-        return items.stream()
-                .sorted(cmp)
-                .toList();
-    }
+        List<FolderResponse> folders = List.of();
+        if (after == null || after.phase().equals(FolderService.LISTING_PHASE)) {
+            CursorPage<FolderResponse> page = folderService.listChildren(ownerId, folderId, parsed, after, limit)
+                    .map(FolderResponse::fromEntity);
+            folders = page.items();
+            if (page.nextCursor() != null) {
+                return new DirResponse(folderId, folders, List.of(), page.nextCursor());
+            }
+            after = null;
+        } else if (!after.phase().equals(FileService.LISTING_PHASE)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
 
-    private List<FileResponse> sortFiles(List<FileResponse> items, ParsedSort sort) {
-        Comparator<FileResponse> cmp = switch (sort.field) {
-            case "createdAt" -> Comparator.comparing(FileResponse::uploadedAt, Comparator.nullsLast(Comparator.naturalOrder()));
-            case "name" -> Comparator.comparing(FileResponse::filename, String.CASE_INSENSITIVE_ORDER);
-            case "size" -> Comparator.comparingLong(FileResponse::sizeBytes);
-            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported sort field: " + sort.field);
-        };
+        int remaining = limit - folders.size();
+        if (remaining == 0) {
+            return new DirResponse(folderId, folders, List.of(), Cursor.start(FileService.LISTING_PHASE).encode(parsed));
+        }
 
-        if (!sort.asc) cmp = cmp.reversed();
-        return items.stream()
-                .sorted(cmp)
-                .toList();
+        CursorPage<FileResponse> files = fileService.list(ownerId, folderId, parsed, after, remaining)
+                .map(FileResponse::fromEntity);
+        return new DirResponse(folderId, folders, files.items(), files.nextCursor());
     }
 
-    private ParsedSort parseSort(String sort) {
-        String[] parts = sort.split(",", 2);
-        String field = parts[0].trim();
-        String dir = parts.length > 1 ? parts[1].trim().toLowerCase() : "asc";
-
-        boolean asc = switch (dir) {
-            case "asc" -> true;
-            case "desc" -> false;
-            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Sort direction must be asc|desc");
-        };
+    // one result per id, files first; ids that fail (not found, cycle, name taken) do not stop the rest
+    @PostMapping("/move")
+    public List<BulkItem> move(@Valid @RequestBody BulkMoveRequest request, @AuthenticationPrincipal UserPrincipal user) {
+        List<BulkItem> items = new ArrayList<>();
+        fileService.moveAll(user.getId(), distinct(request.fileIds()), request.targetFolderId())
+                .forEach(r -> items.add(BulkItem.fromResult("file", r)));
+        folderService.moveAll(user.getId(), distinct(request.folderIds()), request.targetFolderId())
+                .forEach(r -> items.add(BulkItem.fromResult("folder", r)));
+        return items;
+    }
 
-        return new ParsedSort(field, asc);
+    @PostMapping("/delete")
+    public List<BulkItem> delete(@Valid @RequestBody BulkDeleteRequest request, @AuthenticationPrincipal UserPrincipal user) {
+        List<BulkItem> items = new ArrayList<>();
+        fileService.deleteAll(user.getId(), distinct(request.fileIds()))
+                .forEach(r -> items.add(BulkItem.fromResult("file", r)));
+        folderService.deleteAll(user.getId(), distinct(request.folderIds()))
+                .forEach(r -> items.add(BulkItem.fromResult("folder", r)));
+        return items;
     }
 
-    private record ParsedSort(String field, boolean asc) {}
-}
+    private static Set<Long> distinct(List<Long> ids) {
+        if (ids == null) {
+            return Set.of();
+        }
+        if (ids.contains(null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Ids must not be null");
+        }
+        return new LinkedHashSet<>(ids);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,10 @@
+package com.kalabay.cloudstorage.dir.dto;
+
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record BulkDeleteRequest(
+        @Size(max = 10000) List<Long> fileIds,
+        @Size(max = 10000) List<Long> folderIds
+) {}
@@ -0,0 +1,9 @@
+package com.kalabay.cloudstorage.dir.dto;
+
+import com.kalabay.cloudstorage.common.web.ItemResult;
+
+public record BulkItem(String type, Long id, boolean done, String error) {
+    public static BulkItem fromResult(String type, ItemResult r) {
+        return new BulkItem(type, r.id(), r.error() == null, r.error());
+    }
+}
@@ -0,0 +1,12 @@
+package com.kalabay.cloudstorage.dir.dto;
+
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+// targetFolderId null = root
+public record BulkMoveRequest(
+        @Size(max = 10000) List<Long> fileIds,
+        @Size(max = 10000) List<Long> folderIds,
+        Long targetFolderId
+) {}
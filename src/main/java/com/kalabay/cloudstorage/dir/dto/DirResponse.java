@@ -4,4 +4,4 @@ import com.kalabay.cloudstorage.file.dto.FileResponse;
 import com.kalabay.cloudstorage.folder.dto.FolderResponse;
 import java.util.List;
 
-public record DirResponse(Long folderId, List<FolderResponse> folders, List<FileResponse> files) {}
+public record DirResponse(Long folderId, List<FolderResponse> folders, List<FileResponse> files, String nextCursor) {}
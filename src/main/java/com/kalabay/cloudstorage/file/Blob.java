@@ -0,0 +1,39 @@
+package com.kalabay.cloudstorage.file;
+
+import com.kalabay.cloudstorage.storage.StorageCodec;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import java.time.Instant;
+
+@Entity
+@Table(name = "blobs")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Blob {
+
+    @Id
+    @Column(name = "storage_name", length = 64)
+    private String storageName;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    @Column(name = "ref_count", nullable = false)
+    private long refCount;
+
+    @Builder.Default
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private StorageCodec codec = StorageCodec.NONE;
+
+    @Column(name = "stored_size_bytes", nullable = false)
+    private long storedSizeBytes;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+}
@@ -0,0 +1,124 @@
+package com.kalabay.cloudstorage.file;
+
+import com.kalabay.cloudstorage.storage.StorageBackend;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.Future;
+
+// Removes the bytes of blobs whose last reference is gone. Deletes only write a tombstone,
+// so a slow or failing backend never holds up the API; failures are retried with backoff.
+@Component
+public class BlobReaper implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobReaper.class);
+    private static final int WARN_AFTER_ATTEMPTS = 5;
+
+    private final BlobTombstoneRepository tombstones;
+    private final StorageBackend storage;
+    private final TransactionTemplate transactions;
+    private final ExecutorService workers;
+    private final int batchSize;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    public BlobReaper(
+            BlobTombstoneRepository tombstones,
+            StorageBackend storage,
+            TransactionTemplate transactions,
+            @Value("${storage.reaper.parallelism:8}") int parallelism,
+            @Value("${storage.reaper.batch-size:200}") int batchSize,
+            @Value("${storage.reaper.initial-backoff:PT30S}") Duration initialBackoff,
+            @Value("${storage.reaper.max-backoff:PT1H}") Duration maxBackoff,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        this.tombstones = tombstones;
+        this.storage = storage;
+        this.transactions = transactions;
+        ThreadFactory threads = virtualThreads
+                ? Thread.ofVirtual().name("blob-reaper-", 0).factory()
+                : Thread.ofPlatform().name("blob-reaper-", 0).daemon().factory();
+        this.workers = Executors.newFixedThreadPool(parallelism, threads);
+        this.batchSize = batchSize;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.reaper.interval:PT5S}")
+    public void reap() {
+        // a full batch means there may be more due right now
+        Integer claimed;
+        do {
+            claimed = transactions.execute(status -> reapBatch());
+        } while (claimed != null && claimed == batchSize && !Thread.currentThread().isInterrupted());
+    }
+
+    // tombstone rows stay locked while their files are deleted, so a re-upload of the same content
+    // waits in BlobStore.commit() and then finds the file gone rather than losing it afterwards
+    private int reapBatch() {
+        List<BlobTombstone> batch = tombstones.claimDue(batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        List<Future<?>> deletions = new ArrayList<>(batch.size());
+        for (BlobTombstone tombstone : batch) {
+            deletions.add(workers.submit(() -> {
+                storage.delete(tombstone.getStorageName());
+                return null;
+            }));
+        }
+
+        List<String> reaped = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            BlobTombstone tombstone = batch.get(i);
+            try {
+                deletions.get(i).get();
+                reaped.add(tombstone.getStorageName());
+            } catch (ExecutionException e) {
+                scheduleRetry(tombstone, e.getCause());
+            } catch (InterruptedException e) {
+                // the rest stay due and are picked up on the next run
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        tombstones.deleteAllByIdInBatch(reaped);
+        return batch.size();
+    }
+
+    private void scheduleRetry(BlobTombstone tombstone, Throwable cause) {
+        int attempts = tombstone.getAttempts() + 1;
+        Duration backoff = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        if (backoff.compareTo(maxBackoff) > 0) {
+            backoff = maxBackoff;
+        }
+
+        String message = String.valueOf(cause);
+        tombstone.setAttempts(attempts);
+        tombstone.setNextAttemptAt(Instant.now().plus(backoff));
+        tombstone.setLastError(message.length() > 500 ? message.substring(0, 500) : message);
+
+        if (attempts >= WARN_AFTER_ATTEMPTS) {
+            log.warn("Deleting blob {} failed {} times, next attempt in {}", tombstone.getStorageName(), attempts, backoff, cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,73 @@
+package com.kalabay.cloudstorage.file;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface BlobRepository extends JpaRepository<Blob, String> {
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+        INSERT INTO blobs (storage_name, size_bytes, ref_count, codec, stored_size_bytes)
+        VALUES (:storageName, :size, 1, :codec, :storedSize)
+        ON CONFLICT (storage_name) DO UPDATE SET ref_count = blobs.ref_count + 1
+        """, nativeQuery = true)
+    int acquireOrCreate(@Param("storageName") String storageName, @Param("size") long size, @Param("codec") String codec, @Param("storedSize") long storedSize);
+
+    // no new reference: only locks the row, inserting an unreferenced one if there is none
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+        INSERT INTO blobs (storage_name, size_bytes, ref_count, codec, stored_size_bytes)
+        VALUES (:storageName, :size, 0, :codec, :storedSize)
+        ON CONFLICT (storage_name) DO UPDATE SET ref_count = blobs.ref_count
+        """, nativeQuery = true)
+    int lockOrCreate(@Param("storageName") String storageName, @Param("size") long size, @Param("codec") String codec, @Param("storedSize") long storedSize);
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+        UPDATE blobs
+        SET ref_count = ref_count + 1
+        WHERE storage_name = :storageName
+        """, nativeQuery = true)
+    int acquire(@Param("storageName") String storageName);
+
+    // must run while the file rows still exist; returns the blobs whose count went down. The subtrees are
+    // matched by path range, so one bind parameter per root; nested roots overlap, hence the semi-join
+    @Query(value = """
+        WITH refs AS (
+            SELECT fi.storage_name, COUNT(*) AS refs
+            FROM files fi
+            WHERE fi.folder_id IN (
+                SELECT d.id
+                FROM folders r
+                JOIN folders d ON d.path >= r.path AND d.path < left(r.path, -1) || '0'
+                WHERE r.id IN (:rootIds) AND r.owner_id = :ownerId)
+            GROUP BY fi.storage_name
+        )
+        UPDATE blobs b
+        SET ref_count = b.ref_count - refs.refs
+        FROM refs
+        WHERE b.storage_name = refs.storage_name
+        RETURNING b.storage_name
+        """, nativeQuery = true)
+    List<String> releaseInSubtrees(@Param("ownerId") Long ownerId, @Param("rootIds") Collection<Long> rootIds);
+
+    // moves unreferenced blobs into the reaper queue in the caller's transaction
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+        WITH gone AS (
+            DELETE FROM blobs
+            WHERE storage_name IN (:storageNames)
+              AND ref_count <= 0
+            RETURNING storage_name
+        )
+        INSERT INTO blob_tombstones (storage_name)
+        SELECT storage_name FROM gone
+        ON CONFLICT (storage_name) DO NOTHING
+        """, nativeQuery = true)
+    int entombUnreferenced(@Param("storageNames") Collection<String> storageNames);
+}
@@ -0,0 +1,438 @@
+package com.kalabay.cloudstorage.file;
+
+import com.kalabay.cloudstorage.common.exception.BadRequestException;
+import com.kalabay.cloudstorage.common.io.BufferPool;
+import com.kalabay.cloudstorage.storage.CompressionPolicy;
+import com.kalabay.cloudstorage.storage.StorageBackend;
+import com.kalabay.cloudstorage.storage.StorageCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class BlobStore {
+
+    private static final int ENTOMB_BATCH = 1000;
+
+    private final BlobRepository blobs;
+    private final BlobTombstoneRepository tombstones;
+    private final BufferPool buffers;
+    private final CompressionPolicy compression;
+    private final StorageBackend storage;
+    private final Path stagingDir;
+    private final long maxFileSize;
+    private final TransferMetrics metrics;
+    private final TransactionTemplate cleanup;
+
+    public BlobStore(
+            BlobRepository blobs,
+            BlobTombstoneRepository tombstones,
+            BufferPool buffers,
+            CompressionPolicy compression,
+            StorageBackend storage,
+            @Value("${storage.upload.staging-dir:./data/uploads}") String stagingDir,
+            @Value("${storage.upload.max-file-size:10GB}") DataSize maxFileSize,
+            TransferMetrics metrics,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.blobs = blobs;
+        this.tombstones = tombstones;
+        this.buffers = buffers;
+        this.compression = compression;
+        this.storage = storage;
+        this.stagingDir = Paths.get(stagingDir).toAbsolutePath().normalize();
+        this.maxFileSize = maxFileSize.toBytes();
+        this.metrics = metrics;
+        this.cleanup = new TransactionTemplate(transactionManager);
+        this.cleanup.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        try {
+            Files.createDirectories(this.stagingDir);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create storage directory", e);
+        }
+    }
+
+    // writes the stream to a staging file, hashing the raw bytes and encoding them on the way; no DB work,
+    // so callers may stream outside a transaction. sizeHint is the declared length or -1
+    public StagedBlob stage(InputStream body, String contentType, long sizeHint) {
+        StorageCodec codec = compression.select(contentType, sizeHint);
+        Path temp = newStagingFile();
+        boolean staged = false;
+
+        try (ReadableByteChannel source = Channels.newChannel(body)) {
+            StagedBlob blob = write(source, temp, codec, true);
+            if (blob.codec() != StorageCodec.NONE && !compression.worthKeeping(blob.sizeBytes(), blob.storedSizeBytes())) {
+                blob = decodeInPlace(blob);
+            }
+            staged = true;
+            metrics.uploaded(blob.sizeBytes());
+            return blob;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to store file", e);
+        } finally {
+            if (!staged) {
+                deleteQuietly(temp);
+            }
+        }
+    }
+
+    // takes over a file that is already complete on disk (e.g. an assembled upload session); it is hashed
+    // in place, or an encoded copy is made when the policy asks for one. The file itself is left alone in
+    // the latter case, so the caller can still fall back to it until the blob is committed
+    public StagedBlob adopt(Path file, String contentType) {
+        try {
+            long size = Files.size(file);
+            metrics.uploaded(size);
+            StorageCodec codec = compression.select(contentType, size);
+            if (codec == StorageCodec.NONE) {
+                try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+                    return write(source, null, StorageCodec.NONE, false).withPath(file);
+                }
+            }
+
+            Path temp = newStagingFile();
+            try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+                StagedBlob encoded = write(source, temp, codec, false);
+                if (!compression.worthKeeping(encoded.sizeBytes(), encoded.storedSizeBytes())) {
+                    deleteQuietly(temp);
+                    return new StagedBlob(file, encoded.digest(), encoded.sizeBytes(), StorageCodec.NONE, encoded.sizeBytes(), false);
+                }
+                return encoded;
+            } catch (IOException | RuntimeException e) {
+                deleteQuietly(temp);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read file", e);
+        }
+    }
+
+    // copies source into target (when given) through the codec, hashing the raw bytes; the buffer is
+    // filled completely before each write so the disk sees large sequential writes
+    private StagedBlob write(ReadableByteChannel source, Path target, StorageCodec codec, boolean limited) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = buffers.acquire();
+        FileChannel channel = null;
+        WritableByteChannel sink = null;
+        try {
+            if (target != null) {
+                channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                sink = codec == StorageCodec.NONE
+                        ? channel
+                        : Channels.newChannel(codec.encode(Channels.newOutputStream(channel), compression.level()));
+            }
+            long total = 0;
+            boolean eof = false;
+            while (!eof) {
+                while (buffer.hasRemaining()) {
+                    if (source.read(buffer) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                buffer.flip();
+                total += buffer.remaining();
+                if (limited && total > maxFileSize) {
+                    throw new BadRequestException("File too large");
+                }
+                digest.update(buffer.duplicate());
+                while (sink != null && buffer.hasRemaining()) {
+                    sink.write(buffer);
+                }
+                buffer.clear();
+            }
+            if (limited && total == 0) {
+                throw new BadRequestException("{file.upload.empty}");
+            }
+            if (sink != null) {
+                // finishes the encoding before the size is read
+                sink.close();
+            }
+            long stored = target != null ? Files.size(target) : total;
+            return new StagedBlob(target, HexFormat.of().formatHex(digest.digest()), total, codec, stored, false);
+        } finally {
+            buffers.release(buffer);
+            // encoders hold native memory, so they are closed on failure too
+            closeQuietly(sink);
+            closeQuietly(channel);
+        }
+    }
+
+    // the content turned out not to compress; store it raw instead
+    private StagedBlob decodeInPlace(StagedBlob encoded) throws IOException {
+        Path raw = newStagingFile();
+        try (InputStream in = encoded.codec().decode(Files.newInputStream(encoded.path()))) {
+            Files.copy(in, raw);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(raw);
+            throw e;
+        }
+        deleteQuietly(encoded.path());
+        return new StagedBlob(raw, encoded.digest(), encoded.sizeBytes(), StorageCodec.NONE, encoded.sizeBytes(), false);
+    }
+
+    // uploads the staged bytes under their digest unless storage has them already. Runs before the transaction
+    // that commits the blob, so a large upload holds neither a pooled connection nor the blob row lock. Until
+    // that commit the bytes belong to no row: a caller whose transaction fails hands the result to abandon()
+    public StagedBlob store(StagedBlob staged) {
+        try {
+            if (storage.exists(staged.digest())) {
+                return staged;
+            }
+            storage.put(staged.digest(), staged.path());
+            return staged.asStored();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to store file", e);
+        }
+    }
+
+    // store() for many blobs, uploaded concurrently; content that occurs twice is uploaded once. Returns them in
+    // input order, and abandons what it stored when one of them fails
+    public List<StagedBlob> storeAll(List<StagedBlob> staged) {
+        Map<String, Future<StagedBlob>> uploads = new LinkedHashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (StagedBlob blob : staged) {
+                uploads.computeIfAbsent(blob.digest(), digest -> executor.submit(() -> store(blob)));
+            }
+        }
+
+        Map<String, StagedBlob> stored = HashMap.newHashMap(uploads.size());
+        RuntimeException failure = null;
+        for (Map.Entry<String, Future<StagedBlob>> upload : uploads.entrySet()) {
+            try {
+                stored.put(upload.getKey(), upload.getValue().get());
+            } catch (ExecutionException e) {
+                failure = e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException("Failed to store file", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new IllegalStateException("Interrupted while storing files", e);
+            }
+        }
+        if (failure != null) {
+            abandon(List.copyOf(stored.values()));
+            throw failure;
+        }
+
+        List<StagedBlob> result = new ArrayList<>(staged.size());
+        Set<String> seen = new HashSet<>();
+        for (StagedBlob blob : staged) {
+            // the first one with a digest is the one that was uploaded; later copies still hold their bytes
+            result.add(seen.add(blob.digest()) ? stored.get(blob.digest()) : blob);
+        }
+        return result;
+    }
+
+    // Adds a reference to the blob with this content. The upsert takes the blob row lock, so a concurrent
+    // release() cannot delete the bytes underneath us. Without store() beforehand, the staged bytes are put in
+    // place here. The returned blob says how the content is actually stored, which may differ from the staged codec
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Blob commit(StagedBlob staged) {
+        blobs.acquireOrCreate(staged.digest(), staged.sizeBytes(), staged.codec().name(), staged.storedSizeBytes());
+        // same content deleted earlier and not reaped yet: keep it, or wait until the reaper is done with it
+        tombstones.cancel(staged.digest());
+        Blob blob = blobs.findById(staged.digest())
+                .orElseThrow(() -> new IllegalStateException("Blob row missing after upsert"));
+
+        List<StagedBlob> written = new ArrayList<>(1);
+        entombOnRollback(written);
+        try {
+            describe(blob, staged, settle(staged, written));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to store file", e);
+        }
+        return blob;
+    }
+
+    // commit() for many blobs at once: rows are locked in digest order, so two batches sharing content cannot
+    // deadlock, and storage is checked concurrently. Returns blobs in input order
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<Blob> commitAll(List<StagedBlob> staged) {
+        Map<String, StagedBlob> distinct = new TreeMap<>();
+        Map<String, Integer> refs = new HashMap<>();
+        for (StagedBlob blob : staged) {
+            distinct.putIfAbsent(blob.digest(), blob);
+            refs.merge(blob.digest(), 1, Integer::sum);
+        }
+        for (StagedBlob blob : distinct.values()) {
+            for (int n = refs.get(blob.digest()); n > 0; n--) {
+                blobs.acquireOrCreate(blob.digest(), blob.sizeBytes(), blob.codec().name(), blob.storedSizeBytes());
+            }
+            tombstones.cancel(blob.digest());
+        }
+        Map<String, Blob> rows = blobs.findAllById(distinct.keySet()).stream()
+                .collect(Collectors.toMap(Blob::getStorageName, Function.identity()));
+
+        List<StagedBlob> written = Collections.synchronizedList(new ArrayList<>());
+        // registered before the results are checked, since a failed put below rolls back the others too
+        entombOnRollback(written);
+        List<Future<Long>> checks = new ArrayList<>(distinct.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (StagedBlob blob : distinct.values()) {
+                checks.add(executor.submit(() -> settle(blob, written)));
+            }
+        }
+
+        int i = 0;
+        for (StagedBlob blob : distinct.values()) {
+            try {
+                describe(rows.get(blob.digest()), blob, checks.get(i++).get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Failed to store file", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while storing files", e);
+            }
+        }
+
+        return staged.stream().map(blob -> rows.get(blob.digest())).toList();
+    }
+
+    // With the row locked and its tombstone cancelled, nothing deletes the bytes any more; but the reaper may
+    // have done so between store() and the cancel. They are put back from the staged copy when there still is
+    // one. Returns the size of what is stored now
+    private long settle(StagedBlob staged, List<StagedBlob> written) throws IOException {
+        try {
+            return storage.size(staged.digest());
+        } catch (NoSuchFileException e) {
+            if (staged.stored() || !Files.exists(staged.path())) {
+                throw new IOException("Blob " + staged.digest() + " was removed before it was committed", e);
+            }
+            storage.put(staged.digest(), staged.path());
+            written.add(staged);
+            return staged.storedSizeBytes();
+        }
+    }
+
+    // Whatever was stored last defines the encoding: the row may have outlived its bytes, or a concurrent upload
+    // of the same content may have replaced them. Raw and encoded sizes of one content never match (see
+    // CompressionPolicy.worthKeeping), so a stored size equal to the staged one means the same encoding
+    private static void describe(Blob row, StagedBlob staged, long storedSize) {
+        if (storedSize == staged.storedSizeBytes()) {
+            row.setCodec(staged.codec());
+            row.setStoredSizeBytes(staged.storedSizeBytes());
+        }
+    }
+
+    // bytes written by a transaction that then rolls back belong to no row; they are queued for the reaper
+    // unless someone referenced the same content in the meantime. The upsert waits for any such uploader
+    // and only then lets entombUnreferenced look at the count
+    private void entombOnRollback(List<StagedBlob> written) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    entombIfUnreferenced(written);
+                }
+            }
+        });
+    }
+
+    // for blobs that store() uploaded but no transaction committed: they go to the reaper unless a file
+    // references the same content by now
+    public void abandon(List<StagedBlob> staged) {
+        entombIfUnreferenced(staged.stream().filter(StagedBlob::stored).toList());
+    }
+
+    private void entombIfUnreferenced(List<StagedBlob> written) {
+        if (written.isEmpty()) {
+            return;
+        }
+        // in digest order, like the upserts in commitAll()
+        List<StagedBlob> sorted = written.stream().sorted(Comparator.comparing(StagedBlob::digest)).toList();
+        cleanup.executeWithoutResult(tx -> {
+            for (StagedBlob blob : sorted) {
+                blobs.lockOrCreate(blob.digest(), blob.sizeBytes(), blob.codec().name(), blob.storedSizeBytes());
+            }
+            entombUnreferenced(sorted.stream().map(StagedBlob::digest).toList());
+        });
+    }
+
+    public void discard(StagedBlob staged) {
+        deleteQuietly(staged.path());
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean acquire(String storageName) {
+        return blobs.acquire(storageName) > 0;
+    }
+
+    // drops one reference per file in the folders and everything below them; call before the file rows are removed
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<String> releaseInSubtrees(Long ownerId, Collection<Long> rootIds) {
+        return blobs.releaseInSubtrees(ownerId, rootIds);
+    }
+
+    // call once the file rows are gone; batched to stay below the JDBC bind parameter limit
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void entombUnreferenced(List<String> storageNames) {
+        for (int from = 0; from < storageNames.size(); from += ENTOMB_BATCH) {
+            blobs.entombUnreferenced(storageNames.subList(from, Math.min(from + ENTOMB_BATCH, storageNames.size())));
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {}
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {}
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path newStagingFile() {
+        return stagingDir.resolve(UUID.randomUUID().toString().replace("-", "") + ".blob");
+    }
+
+    // stored: store() put the bytes under the digest, and path no longer holds them
+    public record StagedBlob(Path path, String digest, long sizeBytes, StorageCodec codec, long storedSizeBytes, boolean stored) {
+
+        StagedBlob withPath(Path path) {
+            return new StagedBlob(path, digest, sizeBytes, codec, storedSizeBytes, stored);
+        }
+
+        StagedBlob asStored() {
+            return new StagedBlob(path, digest, sizeBytes, codec, storedSizeBytes, true);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.kalabay.cloudstorage.file;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface BlobTombstoneRepository extends JpaRepository<BlobTombstone, String> {
+
+    // rows stay locked until the reaper's transaction ends, so other nodes skip them
+    @Query(value = """
+        SELECT *
+        FROM blob_tombstones t
+        WHERE t.next_attempt_at <= NOW()
+        ORDER BY t.next_attempt_at
+        LIMIT :limit
+        FOR UPDATE SKIP LOCKED
+        """, nativeQuery = true)
+    List<BlobTombstone> claimDue(@Param("limit") int limit);
+
+    // waits for a reaper that is deleting this blob right now, so the caller sees the file either kept or gone
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+        DELETE FROM blob_tombstones
+        WHERE storage_name = :storageName
+        """, nativeQuery = true)
+    int cancel(@Param("storageName") String storageName);
+}
@@ -0,0 +1,3 @@
+package com.kalabay.cloudstorage.file;
+
+public record DeletedFile(Long id, String storageName) {}
@@ -1,17 +1,24 @@
 package com.kalabay.cloudstorage.file;
 
 import com.kalabay.cloudstorage.common.exception.BadRequestException;
+import com.kalabay.cloudstorage.common.web.Cursor;
+import com.kalabay.cloudstorage.common.web.CursorPage;
+import com.kalabay.cloudstorage.common.web.ListingSort;
+import com.kalabay.cloudstorage.common.web.ZeroCopyDownloads;
+import com.kalabay.cloudstorage.file.dto.BatchUploadItem;
 import com.kalabay.cloudstorage.file.dto.FileResponse;
 import com.kalabay.cloudstorage.file.dto.MoveFileRequest;
+import com.kalabay.cloudstorage.file.dto.UploadByHashRequest;
+import com.kalabay.cloudstorage.security.UserPrincipal;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
 import org.springframework.core.io.Resource;
 import org.springframework.http.*;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.util.Comparator;
+import java.io.IOException;
 import java.util.List;
 
 @RestController
@@ -19,90 +26,92 @@ import java.util.List;
 public class FileController {
 
     private final FileService service;
+    private final ZeroCopyDownloads downloads;
 
-    public FileController(FileService service) {
+    public FileController(FileService service, ZeroCopyDownloads downloads) {
         this.service = service;
+        this.downloads = downloads;
     }
 
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @ResponseStatus(HttpStatus.CREATED)
     public FileResponse upload(
             @RequestPart("file") MultipartFile file,
-            Authentication auth,
+            @AuthenticationPrincipal UserPrincipal user,
             @RequestParam(value = "folderId", required = false) Long folderId
     ) {
-        StoredFile saved = service.upload(file, auth.getName(), folderId);
+        StoredFile saved = service.upload(file, user.getId(), folderId);
         return FileResponse.fromEntity(saved);
     }
 
-    @GetMapping
-    public List<FileResponse> list(
-            Authentication auth,
-            @RequestParam(value = "folderId", required = false) Long folderId,
-            @RequestParam(value = "sort", required = false, defaultValue = "createdAt,desc") String sort
+    // one result per part, in request order; parts that fail do not fail the rest
+    @PostMapping(value = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public List<BatchUploadItem> uploadBatch(
+            @RequestPart("files") List<MultipartFile> files,
+            @AuthenticationPrincipal UserPrincipal user,
+            @RequestParam(value = "folderId", required = false) Long folderId
     ) {
-        var parsed = parseSort(sort);
-
-        var list = service.list(auth.getName(), folderId)
+        return service.uploadBatch(files, user.getId(), folderId)
                 .stream()
-                .map(FileResponse::fromEntity)
+                .map(BatchUploadItem::fromResult)
                 .toList();
+    }
 
-        return sortFiles(list, parsed);
+    @PutMapping("/stream")
+    @ResponseStatus(HttpStatus.CREATED)
+    public FileResponse uploadStream(
+            @RequestParam("name") String name,
+            @RequestParam(value = "folderId", required = false) Long folderId,
+            HttpServletRequest request,
+            @AuthenticationPrincipal UserPrincipal user
+    ) throws IOException {
+        StoredFile saved = service.uploadStream(request.getInputStream(), name, request.getContentType(), request.getContentLengthLong(), user.getId(), folderId);
+        return FileResponse.fromEntity(saved);
     }
 
-    @GetMapping("/{id}")
-    public ResponseEntity<Resource> download(@PathVariable Long id, Authentication auth) {
-        FileService.FileDownload file = service.getFile(id, auth.getName());
+    @PostMapping("/by-hash")
+    @ResponseStatus(HttpStatus.CREATED)
+    public FileResponse uploadByHash(@Valid @RequestBody UploadByHashRequest request, @AuthenticationPrincipal UserPrincipal user) {
+        StoredFile saved = service.uploadByHash(user.getId(), request.sha256(), request.filename(), request.contentType(), request.folderId());
+        return FileResponse.fromEntity(saved);
+    }
 
-        String encodedFilename = URLEncoder.encode(file.filename(), StandardCharsets.UTF_8);
-        MediaType mediaType = file.contentType() != null
-                ? MediaType.parseMediaType(file.contentType())
-                : MediaType.APPLICATION_OCTET_STREAM;
+    @GetMapping
+    public CursorPage<FileResponse> list(
+            @AuthenticationPrincipal UserPrincipal user,
+            @RequestParam(value = "folderId", required = false) Long folderId,
+            @RequestParam(value = "sort", required = false, defaultValue = "createdAt,desc") String sort,
+            @RequestParam(value = "limit", required = false, defaultValue = "100") int limit,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        var parsed = ListingSort.parse(sort);
 
-        return ResponseEntity.ok()
-                .contentType(mediaType)
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename*=UTF-8''" + encodedFilename)
-                .body(file.resource());
+        return service.list(user.getId(), folderId, parsed, Cursor.decode(cursor, parsed), CursorPage.checkLimit(limit))
+                .map(FileResponse::fromEntity);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Resource> download(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @AuthenticationPrincipal UserPrincipal user,
+            HttpServletRequest request
+    ) {
+        FileService.FileDownload file = service.getFile(id, user.getId(), acceptEncoding);
+        return downloads.build(request, file, range, ifRange, CacheControl.noCache().cachePrivate());
     }
 
     @PatchMapping("/{id}/move")
-    public FileResponse move(@PathVariable Long id, @RequestBody MoveFileRequest request, Authentication auth) {
-        var moved = service.move(auth.getName(), id, request.folderId());
+    public FileResponse move(@PathVariable Long id, @RequestBody MoveFileRequest request, @AuthenticationPrincipal UserPrincipal user) {
+        var moved = service.move(user.getId(), id, request.folderId());
         return FileResponse.fromEntity(moved);
     }
 
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public void delete(@PathVariable Long id, Authentication auth) {
-        service.delete(id, auth.getName());
+    public void delete(@PathVariable Long id, @AuthenticationPrincipal UserPrincipal user) {
+        service.delete(id, user.getId());
     }
-
-    private List<FileResponse> sortFiles(List<FileResponse> items, ParsedSort sort) {
-        Comparator<FileResponse> cmp = switch (sort.field) {
-            case "createdAt" -> Comparator.comparing(FileResponse::uploadedAt, Comparator.nullsLast(Comparator.naturalOrder()));
-            case "name" -> Comparator.comparing(FileResponse::filename, String.CASE_INSENSITIVE_ORDER);
-            case "size" -> Comparator.comparingLong(FileResponse::sizeBytes);
-            default -> throw new BadRequestException("Unsupported sort field: " + sort.field);
-        };
-
-        if (!sort.asc) cmp = cmp.reversed();
-        return items.stream().sorted(cmp).toList();
-    }
-
-    private ParsedSort parseSort(String sort) {
-        String[] parts = sort.split(",", 2);
-        String field = parts[0].trim();
-        String dir = parts.length > 1 ? parts[1].trim().toLowerCase() : "asc";
-
-        boolean asc = switch (dir) {
-            case "asc" -> true;
-            case "desc" -> false;
-            default -> throw new BadRequestException("Sort direction must be asc|desc");
-        };
-
-        return new ParsedSort(field, asc);
-    }
-
-    private record ParsedSort(String field, boolean asc) {}
 }
@@ -1,5 +1,7 @@
 package com.kalabay.cloudstorage.file;
 
+import com.kalabay.cloudstorage.folder.ArchiveEntry;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 
@@ -9,23 +11,24 @@ import java.util.Collection;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
-public interface FileRepository extends JpaRepository<StoredFile, Long> {
-    List<StoredFile> findAllByOwner_UsernameOrderByUploadedAtDesc(String username);
-
-    List<StoredFile> findAllByOwner_UsernameAndFolder_IdOrderByUploadedAtDesc(String username, Long folderId);
-
-    List<StoredFile> findAllByOwner_UsernameAndFolderIsNullOrderByUploadedAtDesc(String username);
-
-    Optional<StoredFile> findByIdAndOwner_Username(Long id, String username);
-
-    List<StoredFile> findAllByOwner_UsernameAndFolder_IdIn(String username, Collection<Long> folderIds);
-
-    @Query(value = """
-        SELECT fi.storage_name
-        FROM files fi
-        JOIN users u ON u.id = fi.owner_id
-        WHERE u.username = :username
-          AND fi.folder_id IN (:folderIds)
-        """, nativeQuery = true)
-    List<String> findStorageNamesInFolders(@Param("username") String username, @Param("folderIds") Collection<Long> folderIds);
-}
\ No newline at end of file
+public interface FileRepository extends JpaRepository<StoredFile, Long>, FileRepositoryCustom {
+    Optional<StoredFile> findByIdAndOwner_Id(Long id, Long ownerId);
+
+    Optional<StoredFile> findFirstByOwner_IdAndStorageName(Long ownerId, String storageName);
+
+    // keyset batches in (folder, id) order, so one folder's files arrive together
+    @Query("""
+        SELECT new com.kalabay.cloudstorage.folder.ArchiveEntry(
+            f.id, f.folder.id, f.originalName, f.storageName, f.contentType, f.sizeBytes, f.codec, f.storedSizeBytes, f.uploadedAt)
+        FROM StoredFile f
+        WHERE f.folder.id IN :folderIds
+          AND (f.folder.id > :afterFolderId OR (f.folder.id = :afterFolderId AND f.id > :afterId))
+        ORDER BY f.folder.id, f.id
+        """)
+    List<ArchiveEntry> findArchiveBatch(
+            @Param("folderIds") Collection<Long> folderIds,
+            @Param("afterFolderId") long afterFolderId,
+            @Param("afterId") long afterId,
+            Limit limit
+    );
+}
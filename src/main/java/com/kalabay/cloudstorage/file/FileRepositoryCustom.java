@@ -0,0 +1,27 @@
+package com.kalabay.cloudstorage.file;
+
+import com.kalabay.cloudstorage.common.web.Cursor;
+import com.kalabay.cloudstorage.common.web.Keyed;
+import com.kalabay.cloudstorage.common.web.ListingSort;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface FileRepositoryCustom {
+
+    // inserts all rows in one JDBC batch and fills in the generated id and upload time
+    void insertAll(List<StoredFile> files);
+
+    // moves the user's files among ids in one statement and returns the ids it moved
+    List<Long> moveOwned(Long ownerId, Collection<Long> ids, Long folderId);
+
+    // deletes the user's files among ids and drops a blob reference for each, in one statement; unreferenced
+    // blobs still have to be entombed afterwards
+    List<DeletedFile> deleteOwned(Long ownerId, Collection<Long> ids);
+
+    // one page of a folder's files (folderId null = root) in SQL order, starting after the cursor
+    List<Keyed<StoredFile>> findPage(Long ownerId, Long folderId, ListingSort sort, Cursor after, int limit);
+
+    // one page of matches anywhere in the user's namespace, same ordering and cursors as findPage
+    List<Keyed<StoredFile>> search(Long ownerId, FileSearch search, ListingSort sort, Cursor after, int limit);
+}
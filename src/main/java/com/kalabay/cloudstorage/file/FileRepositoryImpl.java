@@ -0,0 +1,246 @@
+package com.kalabay.cloudstorage.file;
+
+import com.kalabay.cloudstorage.common.web.Cursor;
+import com.kalabay.cloudstorage.common.web.Keyed;
+import com.kalabay.cloudstorage.common.web.ListingSort;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+class FileRepositoryImpl implements FileRepositoryCustom {
+
+    private static final String INSERT = """
+        INSERT INTO files (owner_id, folder_id, original_name, storage_name, content_type, size_bytes, codec, stored_size_bytes)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+
+    private static final String MOVE_OWNED = """
+        UPDATE files
+        SET folder_id = CAST(:folderId AS BIGINT)
+        WHERE owner_id = :ownerId AND id IN (:ids)
+        RETURNING id
+        """;
+
+    // the rows go and their blobs lose a reference each in one statement, so a concurrent delete of the
+    // same file cannot release it twice
+    private static final String DELETE_OWNED = """
+        WITH gone AS (
+            DELETE FROM files
+            WHERE owner_id = :ownerId AND id IN (:ids)
+            RETURNING id, storage_name
+        ), released AS (
+            UPDATE blobs b
+            SET ref_count = b.ref_count - refs.refs
+            FROM (SELECT storage_name, COUNT(*) AS refs FROM gone GROUP BY storage_name) refs
+            WHERE b.storage_name = refs.storage_name
+        )
+        SELECT id, storage_name FROM gone
+        """;
+
+    private final JdbcTemplate jdbc;
+    private final EntityManager em;
+
+    FileRepositoryImpl(JdbcTemplate jdbc, EntityManager em) {
+        this.jdbc = jdbc;
+        this.em = em;
+    }
+
+    // @Modifying only allows a row count as the result, so what its flushAutomatically and clearAutomatically
+    // do is done here: pending changes reach the database first, and no entity loaded before the statement
+    // is served stale after it
+    @Override
+    public List<Long> moveOwned(Long ownerId, Collection<Long> ids, Long folderId) {
+        em.flush();
+        List<?> rows = em.createNativeQuery(MOVE_OWNED)
+                .setParameter("ownerId", ownerId)
+                .setParameter("ids", ids)
+                .setParameter("folderId", folderId)
+                .getResultList();
+        em.clear();
+        return rows.stream().map(id -> ((Number) id).longValue()).toList();
+    }
+
+    @Override
+    public List<DeletedFile> deleteOwned(Long ownerId, Collection<Long> ids) {
+        em.flush();
+        List<?> rows = em.createNativeQuery(DELETE_OWNED)
+                .setParameter("ownerId", ownerId)
+                .setParameter("ids", ids)
+                .getResultList();
+        em.clear();
+        return rows.stream()
+                .map(row -> (Object[]) row)
+                .map(row -> new DeletedFile(((Number) row[0]).longValue(), (String) row[1]))
+                .toList();
+    }
+
+    // (key, id) row comparison and ORDER BY match the listing indexes, so a page is an index range scan
+    @Override
+    public List<Keyed<StoredFile>> findPage(Long ownerId, Long folderId, ListingSort sort, Cursor after, int limit) {
+        String key = sortKey(sort);
+        boolean seek = after != null && !after.atStart();
+
+        String jpql = "SELECT f, " + key + " FROM StoredFile f"
+                + " WHERE f.owner.id = :ownerId"
+                + (folderId != null ? " AND f.folder.id = :folderId" : " AND f.folder IS NULL")
+                + (seek ? seek(key, sort) : "")
+                + orderBy(key, sort);
+
+        TypedQuery<Object[]> query = em.createQuery(jpql, Object[].class)
+                .setParameter("ownerId", ownerId)
+                .setMaxResults(limit);
+        if (folderId != null) {
+            query.setParameter("folderId", folderId);
+        }
+        if (seek) {
+            query.setParameter("key", after.key()).setParameter("id", after.id());
+        }
+
+        return keyed(query.getResultList());
+    }
+
+    // the LIKE on lower(original_name) is what idx_files_search_name indexes; the planner picks between
+    // it and an ordered idx_files_search_* walk depending on how many of the user's files match
+    @Override
+    public List<Keyed<StoredFile>> search(Long ownerId, FileSearch search, ListingSort sort, Cursor after, int limit) {
+        String key = sortKey(sort);
+        boolean seek = after != null && !after.atStart();
+        boolean typeRange = search.contentType() != null && search.contentType().endsWith("/*");
+
+        StringBuilder jpql = new StringBuilder("SELECT f, ").append(key).append(" FROM StoredFile f")
+                .append(" WHERE f.owner.id = :ownerId")
+                .append(" AND lower(f.originalName) LIKE lower(:pattern) ESCAPE '\\'");
+        if (search.contentType() != null) {
+            jpql.append(typeRange ? " AND f.contentType LIKE :contentType ESCAPE '\\'" : " AND f.contentType = :contentType");
+        }
+        if (search.minSize() != null) {
+            jpql.append(" AND f.sizeBytes >= :minSize");
+        }
+        if (search.maxSize() != null) {
+            jpql.append(" AND f.sizeBytes <= :maxSize");
+        }
+        if (search.uploadedFrom() != null) {
+            jpql.append(" AND f.uploadedAt >= :uploadedFrom");
+        }
+        if (search.uploadedTo() != null) {
+            jpql.append(" AND f.uploadedAt < :uploadedTo");
+        }
+        if (seek) {
+            jpql.append(seek(key, sort));
+        }
+        jpql.append(orderBy(key, sort));
+
+        String text = escapeLike(search.text());
+        TypedQuery<Object[]> query = em.createQuery(jpql.toString(), Object[].class)
+                .setParameter("ownerId", ownerId)
+                .setParameter("pattern", search.prefix() ? text + "%" : "%" + text + "%")
+                .setMaxResults(limit);
+        if (search.contentType() != null) {
+            query.setParameter("contentType", typeRange
+                    ? escapeLike(search.contentType().substring(0, search.contentType().length() - 1)) + "%"
+                    : search.contentType());
+        }
+        if (search.minSize() != null) {
+            query.setParameter("minSize", search.minSize());
+        }
+        if (search.maxSize() != null) {
+            query.setParameter("maxSize", search.maxSize());
+        }
+        if (search.uploadedFrom() != null) {
+            query.setParameter("uploadedFrom", search.uploadedFrom());
+        }
+        if (search.uploadedTo() != null) {
+            query.setParameter("uploadedTo", search.uploadedTo());
+        }
+        if (seek) {
+            query.setParameter("key", after.key()).setParameter("id", after.id());
+        }
+
+        return keyed(query.getResultList());
+    }
+
+    private static String sortKey(ListingSort sort) {
+        return switch (sort.field()) {
+            case NAME -> "lower(f.originalName)";
+            case SIZE -> "f.sizeBytes";
+            case CREATED_AT -> "f.uploadedAt";
+        };
+    }
+
+    private static String seek(String key, ListingSort sort) {
+        return " AND (" + key + ", f.id) " + (sort.asc() ? ">" : "<") + " (:key, :id)";
+    }
+
+    private static String orderBy(String key, ListingSort sort) {
+        String dir = sort.asc() ? "ASC" : "DESC";
+        return " ORDER BY " + key + " " + dir + ", f.id " + dir;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static List<Keyed<StoredFile>> keyed(List<Object[]> rows) {
+        return rows.stream()
+                .map(row -> {
+                    StoredFile file = (StoredFile) row[0];
+                    return new Keyed<>(file, row[1], file.getId());
+                })
+                .toList();
+    }
+
+    // files.id is an IDENTITY column, which makes Hibernate insert row by row; plain JDBC can batch it.
+    // Runs on the connection of the surrounding JPA transaction
+    @Override
+    public void insertAll(List<StoredFile> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbc.batchUpdate(
+                connection -> connection.prepareStatement(INSERT, new String[] {"id", "uploaded_at"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        StoredFile file = files.get(i);
+                        ps.setLong(1, file.getOwner().getId());
+                        if (file.getFolder() != null) {
+                            ps.setLong(2, file.getFolder().getId());
+                        } else {
+                            ps.setNull(2, Types.BIGINT);
+                        }
+                        ps.setString(3, file.getOriginalName());
+                        ps.setString(4, file.getStorageName());
+                        ps.setString(5, file.getContentType());
+                        ps.setLong(6, file.getSizeBytes());
+                        ps.setString(7, file.getCodec().name());
+                        ps.setLong(8, file.getStoredSizeBytes());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return files.size();
+                    }
+                },
+                keys
+        );
+
+        List<Map<String, Object>> generated = keys.getKeyList();
+        for (int i = 0; i < files.size(); i++) {
+            Map<String, Object> row = generated.get(i);
+            files.get(i).setId(((Number) row.get("id")).longValue());
+            files.get(i).setUploadedAt(((Timestamp) row.get("uploaded_at")).toInstant());
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.kalabay.cloudstorage.file;
+
+import java.time.Instant;
+
+// text is matched case-insensitively against the file name; null filters are not applied.
+// contentType is either a full type or a "type/*" range
+public record FileSearch(
+        String text,
+        boolean prefix,
+        String contentType,
+        Long minSize,
+        Long maxSize,
+        Instant uploadedFrom,
+        Instant uploadedTo
+) {}
@@ -1,132 +1,382 @@
 package com.kalabay.cloudstorage.file;
 
+import com.kalabay.cloudstorage.common.exception.ApiException;
 import com.kalabay.cloudstorage.common.exception.BadRequestException;
 import com.kalabay.cloudstorage.common.exception.NotFoundException;
+import com.kalabay.cloudstorage.common.web.Cursor;
+import com.kalabay.cloudstorage.common.web.CursorPage;
+import com.kalabay.cloudstorage.common.web.Download;
+import com.kalabay.cloudstorage.common.web.ItemResult;
+import com.kalabay.cloudstorage.common.web.ListingSort;
 import com.kalabay.cloudstorage.folder.Folder;
 import com.kalabay.cloudstorage.folder.FolderRepository;
+import com.kalabay.cloudstorage.share.ShareTokenCache;
+import com.kalabay.cloudstorage.storage.StorageBackend;
+import com.kalabay.cloudstorage.storage.StoredContent;
 import com.kalabay.cloudstorage.user.User;
 import com.kalabay.cloudstorage.user.UserRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.file.*;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.*;
 
 @Service
 public class FileService {
 
+    public static final String LISTING_PHASE = "files";
+    public static final String SEARCH_PHASE = "search";
+
     private final FileRepository files;
     private final UserRepository users;
     private final FolderRepository folders;
-    private final Path rootDir;
+    private final BlobStore blobs;
+    private final TransactionTemplate transactions;
+    private final StorageBackend storage;
+    private final ShareTokenCache shareTokens;
+    private final long maxFileSize;
+    private final int maxBatchFiles;
+    private final int batchConcurrency;
+    private final TransferMetrics metrics;
 
-    public FileService(FileRepository files, UserRepository users, FolderRepository folders, @Value("${storage.root-dir:./data/storage}") String rootDir) {
+    public FileService(
+            FileRepository files,
+            UserRepository users,
+            FolderRepository folders,
+            BlobStore blobs,
+            TransactionTemplate transactions,
+            StorageBackend storage,
+            ShareTokenCache shareTokens,
+            @Value("${storage.upload.max-file-size:10GB}") DataSize maxFileSize,
+            @Value("${storage.upload.max-batch-files:1000}") int maxBatchFiles,
+            @Value("${storage.upload.batch-concurrency:16}") int batchConcurrency,
+            TransferMetrics metrics
+    ) {
         this.files = files;
         this.users = users;
         this.folders = folders;
-        this.rootDir = Paths.get(rootDir)
-                .toAbsolutePath()
-                .normalize();
+        this.blobs = blobs;
+        this.transactions = transactions;
+        this.storage = storage;
+        this.shareTokens = shareTokens;
+        this.maxFileSize = maxFileSize.toBytes();
+        this.maxBatchFiles = maxBatchFiles;
+        this.batchConcurrency = batchConcurrency;
+        this.metrics = metrics;
+    }
+
+    // not @Transactional: staging hashes and encodes the whole file, which must not hold a pooled connection
+    public StoredFile upload(MultipartFile multipart, Long ownerId, Long folderId) {
+        if (multipart == null || multipart.isEmpty()) {
+            throw new BadRequestException("{file.upload.empty}");
+        }
+
+        String originalName = multipart.getOriginalFilename();
+        if (originalName == null || originalName.isBlank()) {
+            throw new BadRequestException("{file.upload.filename}");
+        }
+
+        User owner = users.getReferenceById(ownerId);
+
+        Folder folder = null;
+        if (folderId != null) {
+            folder = folders.findByIdAndOwner_Id(folderId, ownerId)
+                    .orElseThrow(() -> new NotFoundException("Folder not found"));
+        }
 
+        BlobStore.StagedBlob staged;
         try {
-            Files.createDirectories(this.rootDir);
+            staged = blobs.stage(multipart.getInputStream(), multipart.getContentType(), multipart.getSize());
         } catch (IOException e) {
-            throw new IllegalStateException("Cannot create storage directory", e);
+            throw new IllegalStateException("Failed to store file", e);
+        }
+
+        try {
+            return commit(owner, folder, originalName, multipart.getContentType(), staged);
+        } finally {
+            blobs.discard(staged);
         }
     }
 
-    @Transactional
-    public StoredFile upload(MultipartFile multipart, String username, Long folderId) {
-        if (multipart == null || multipart.isEmpty()) {
+    // not @Transactional: owner and folder are looked up once, the parts are staged and stored concurrently on
+    // virtual threads, and only the final blob commit and one batched insert run in a transaction. A part that fails
+    // to stage is reported in its result without failing the others
+    public List<BatchUploadResult> uploadBatch(List<MultipartFile> parts, Long ownerId, Long folderId) {
+        if (parts == null || parts.isEmpty()) {
             throw new BadRequestException("{file.upload.empty}");
         }
+        if (parts.size() > maxBatchFiles) {
+            throw new BadRequestException("At most " + maxBatchFiles + " files per request");
+        }
 
-        String originalName = multipart.getOriginalFilename();
+        User owner = users.getReferenceById(ownerId);
+
+        Folder folder = null;
+        if (folderId != null) {
+            folder = folders.findByIdAndOwner_Id(folderId, ownerId)
+                    .orElseThrow(() -> new NotFoundException("Folder not found"));
+        }
+
+        // bounded so one request cannot take every staging buffer
+        Semaphore permits = new Semaphore(batchConcurrency);
+        List<Future<BlobStore.StagedBlob>> staging = new ArrayList<>(parts.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (MultipartFile part : parts) {
+                staging.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return stagePart(part);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+
+        BatchUploadResult[] results = new BatchUploadResult[parts.size()];
+        List<BlobStore.StagedBlob> staged = new ArrayList<>(parts.size());
+        List<StoredFile> pending = new ArrayList<>(parts.size());
+        List<Integer> positions = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            MultipartFile part = parts.get(i);
+            try {
+                BlobStore.StagedBlob blob = staging.get(i).get();
+                staged.add(blob);
+                positions.add(i);
+                pending.add(StoredFile.builder()
+                        .owner(owner)
+                        .folder(folder)
+                        .originalName(part.getOriginalFilename().trim())
+                        .contentType(part.getContentType())
+                        .sizeBytes(blob.sizeBytes())
+                        .build());
+            } catch (ExecutionException e) {
+                String message = e.getCause() instanceof ApiException api ? api.getMessage() : "Failed to store file";
+                results[i] = BatchUploadResult.failed(part.getOriginalFilename(), message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                staged.forEach(blobs::discard);
+                throw new IllegalStateException("Interrupted while storing files", e);
+            }
+        }
+
+        try {
+            if (!pending.isEmpty()) {
+                List<BlobStore.StagedBlob> stored = blobs.storeAll(staged);
+                try {
+                    transactions.executeWithoutResult(status -> {
+                        List<Blob> committed = blobs.commitAll(stored);
+                        for (int i = 0; i < pending.size(); i++) {
+                            Blob blob = committed.get(i);
+                            pending.get(i).setStorageName(blob.getStorageName());
+                            pending.get(i).setCodec(blob.getCodec());
+                            pending.get(i).setStoredSizeBytes(blob.getStoredSizeBytes());
+                        }
+                        files.insertAll(pending);
+                    });
+                } catch (RuntimeException e) {
+                    blobs.abandon(stored);
+                    throw e;
+                }
+            }
+        } finally {
+            staged.forEach(blobs::discard);
+        }
+
+        for (int i = 0; i < pending.size(); i++) {
+            results[positions.get(i)] = BatchUploadResult.created(pending.get(i));
+        }
+        return List.of(results);
+    }
+
+    private BlobStore.StagedBlob stagePart(MultipartFile part) throws IOException {
+        String originalName = part.getOriginalFilename();
         if (originalName == null || originalName.isBlank()) {
             throw new BadRequestException("{file.upload.filename}");
         }
+        if (part.isEmpty()) {
+            throw new BadRequestException("{file.upload.empty}");
+        }
+        try (InputStream body = part.getInputStream()) {
+            return blobs.stage(body, part.getContentType(), part.getSize());
+        }
+    }
+
+    // not @Transactional: the body is streamed without holding a pooled connection
+    public StoredFile uploadStream(InputStream body, String fileName, String contentType, long contentLength, Long ownerId, Long folderId) {
+        if (fileName == null || fileName.isBlank()) {
+            throw new BadRequestException("{file.upload.filename}");
+        }
+        if (contentLength == 0) {
+            throw new BadRequestException("{file.upload.empty}");
+        }
+        if (contentLength > maxFileSize) {
+            throw new BadRequestException("File too large");
+        }
 
-        User owner = users.findByUsername(username)
-                .orElseThrow(() -> new NotFoundException("User not found"));
+        User owner = users.getReferenceById(ownerId);
 
         Folder folder = null;
         if (folderId != null) {
-            folder = folders.findByIdAndOwner_Username(folderId, username)
+            folder = folders.findByIdAndOwner_Id(folderId, ownerId)
                     .orElseThrow(() -> new NotFoundException("Folder not found"));
         }
 
-        String storageName = UUID.randomUUID().toString().replace("-", "");
-        Path target = rootDir.resolve(storageName);
+        BlobStore.StagedBlob staged = blobs.stage(body, contentType, contentLength);
+        try {
+            return commit(owner, folder, fileName.trim(), contentType, staged);
+        } finally {
+            blobs.discard(staged);
+        }
+    }
 
+    // the bytes go to storage before the transaction, which then only adds the blob reference and the file row
+    private StoredFile commit(User owner, Folder folder, String originalName, String contentType, BlobStore.StagedBlob staged) {
+        BlobStore.StagedBlob stored = blobs.store(staged);
         try {
-            Files.copy(multipart.getInputStream(), target, StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-            throw new IllegalStateException("Failed to store file", e);
+            return transactions.execute(status -> save(owner, folder, originalName, contentType, stored));
+        } catch (RuntimeException e) {
+            blobs.abandon(List.of(stored));
+            throw e;
         }
+    }
+
+    // lets a client skip the transfer when it already stored the same bytes; limited to the caller's own
+    // files so that knowing a hash is never enough to obtain someone else's content
+    @Transactional
+    public StoredFile uploadByHash(Long ownerId, String sha256, String fileName, String contentType, Long folderId) {
+        if (fileName == null || fileName.isBlank()) {
+            throw new BadRequestException("{file.upload.filename}");
+        }
+        String digest = sha256 != null ? sha256.toLowerCase(Locale.ROOT) : "";
+        if (!digest.matches("^[0-9a-f]{64}$")) {
+            throw new BadRequestException("sha256 must be 64 hex characters");
+        }
+
+        StoredFile existing = files.findFirstByOwner_IdAndStorageName(ownerId, digest)
+                .orElseThrow(() -> new NotFoundException("Content not found"));
+
+        Folder folder = null;
+        if (folderId != null) {
+            folder = folders.findByIdAndOwner_Id(folderId, ownerId)
+                    .orElseThrow(() -> new NotFoundException("Folder not found"));
+        }
+
+        if (!blobs.acquire(digest)) {
+            throw new NotFoundException("Content not found");
+        }
+
+        StoredFile file = StoredFile.builder()
+                .owner(existing.getOwner())
+                .folder(folder)
+                .originalName(fileName.trim())
+                .storageName(digest)
+                .contentType(contentType != null ? contentType : existing.getContentType())
+                .sizeBytes(existing.getSizeBytes())
+                .codec(existing.getCodec())
+                .storedSizeBytes(existing.getStoredSizeBytes())
+                .build();
+
+        return files.save(file);
+    }
+
+    private StoredFile save(User owner, Folder folder, String originalName, String contentType, BlobStore.StagedBlob staged) {
+        Blob blob = blobs.commit(staged);
 
         StoredFile file = StoredFile.builder()
                 .owner(owner)
                 .folder(folder)
                 .originalName(originalName)
-                .storageName(storageName)
-                .contentType(multipart.getContentType())
-                .sizeBytes(multipart.getSize())
+                .storageName(blob.getStorageName())
+                .contentType(contentType)
+                .sizeBytes(staged.sizeBytes())
+                .codec(blob.getCodec())
+                .storedSizeBytes(blob.getStoredSizeBytes())
                 .build();
 
         return files.save(file);
     }
 
     @Transactional(readOnly = true)
-    public List<StoredFile> list(String username, Long folderId) {
-        if (folderId == null) {
-            return files.findAllByOwner_UsernameAndFolderIsNullOrderByUploadedAtDesc(username);
+    public CursorPage<StoredFile> list(Long ownerId, Long folderId, ListingSort sort, Cursor after, int limit) {
+        return CursorPage.of(files.findPage(ownerId, folderId, sort, after, limit + 1), limit, LISTING_PHASE, sort);
+    }
+
+    @Transactional(readOnly = true)
+    public CursorPage<StoredFile> search(Long ownerId, FileSearch search, ListingSort sort, Cursor after, int limit) {
+        String text = search.text() != null ? search.text().strip() : "";
+        // a substring needs a whole trigram to be looked up in the index; a prefix is anchored at the start
+        int minLength = search.prefix() ? 1 : 3;
+        if (text.length() < minLength || text.length() > 255) {
+            throw new BadRequestException("Search text must be between " + minLength + " and 255 characters");
+        }
+        if (search.minSize() != null && search.maxSize() != null && search.minSize() > search.maxSize()) {
+            throw new BadRequestException("minSize must not be greater than maxSize");
         }
-        return files.findAllByOwner_UsernameAndFolder_IdOrderByUploadedAtDesc(username, folderId);
+        if (search.uploadedFrom() != null && search.uploadedTo() != null && !search.uploadedFrom().isBefore(search.uploadedTo())) {
+            throw new BadRequestException("uploadedFrom must be before uploadedTo");
+        }
+
+        FileSearch normalized = new FileSearch(text, search.prefix(), search.contentType(), search.minSize(),
+                search.maxSize(), search.uploadedFrom(), search.uploadedTo());
+        return CursorPage.of(files.search(ownerId, normalized, sort, after, limit + 1), limit, SEARCH_PHASE, sort);
     }
 
     @Transactional(readOnly = true)
-    public FileDownload getFile(Long id, String username) {
-        StoredFile file = files.findByIdAndOwner_Username(id, username)
+    public FileDownload getFile(Long id, Long ownerId, String acceptEncoding) {
+        StoredFile file = files.findByIdAndOwner_Id(id, ownerId)
                 .orElseThrow(() -> new NotFoundException("File not found"));
 
-        Path path = rootDir.resolve(file.getStorageName());
-        try {
-            Resource resource = new UrlResource(path.toUri());
-            if (!resource.exists() || !resource.isReadable()) {
-                throw new IllegalStateException("File not readable");
-            }
-            return new FileDownload(resource, file.getOriginalName(), file.getContentType());
-        } catch (MalformedURLException e) {
-            throw new IllegalStateException("File path invalid", e);
-        }
+        // the storage is not probed here, so a 304 answer never touches the disk
+        StoredContent content = content(storage, file, acceptEncoding);
+        metrics.downloadedByOwner(content.length());
+        return new FileDownload(content.resource(), file.getOriginalName(), file.getContentType(), content.length(),
+                content.contentEncoding(), etag(file.getStorageName(), content.contentEncoding()), file.getUploadedAt());
     }
 
-    @Transactional
-    public void delete(Long id, String username) {
-        StoredFile file = files.findByIdAndOwner_Username(id, username)
-                .orElseThrow(() -> new NotFoundException("File not found"));
+    // blobs are content-addressed and never rewritten, so the storage name is a strong validator
+    // the encoded bytes are a different representation and need their own validator
+    public static String etag(String storageName, String contentEncoding) {
+        String suffix = contentEncoding != null ? "-" + contentEncoding : "";
+        return "\"" + storageName + suffix + "\"";
+    }
 
-        Path path = rootDir.resolve(file.getStorageName());
-        try {
-            Files.deleteIfExists(path);
-        } catch (IOException e) {}
+    public static StoredContent content(StorageBackend storage, StoredFile file, String acceptEncoding) {
+        return StoredContent.negotiate(storage, file.getStorageName(), file.getCodec(), file.getSizeBytes(), file.getStoredSizeBytes(), acceptEncoding);
+    }
+
+    // one statement deletes the row and releases its blob, so the blob row is locked before the totals trigger
+    // locks the folder chain, the order an upload of the same content takes them in
+    @Transactional
+    public void delete(Long id, Long ownerId) {
+        List<DeletedFile> deleted = files.deleteOwned(ownerId, List.of(id));
+        if (deleted.isEmpty()) {
+            throw new NotFoundException("File not found");
+        }
 
-        files.delete(file);
+        blobs.entombUnreferenced(List.of(deleted.getFirst().storageName()));
+        shareTokens.invalidateFile(id);
     }
 
     @Transactional
-    public StoredFile move(String username, Long fileId, Long folderId) {
-        StoredFile file = files.findByIdAndOwner_Username(fileId, username)
+    public StoredFile move(Long ownerId, Long fileId, Long folderId) {
+        StoredFile file = files.findByIdAndOwner_Id(fileId, ownerId)
                 .orElseThrow(() -> new NotFoundException("File not found"));
         Folder folder = null;
         if (folderId != null) {
-            folder = folders.findByIdAndOwner_Username(folderId, username)
+            folder = folders.findByIdAndOwner_Id(folderId, ownerId)
                     .orElseThrow(() -> new NotFoundException("Folder not found"));
         }
 
@@ -134,5 +384,52 @@ public class FileService {
         return files.save(file);
     }
 
-    public record FileDownload(Resource resource, String filename, String contentType) {}
+    // one UPDATE for all of them; ids the user does not own come back as not found
+    @Transactional
+    public List<ItemResult> moveAll(Long ownerId, Collection<Long> fileIds, Long folderId) {
+        if (fileIds.isEmpty()) {
+            return List.of();
+        }
+        if (folderId != null) {
+            folders.findByIdAndOwner_Id(folderId, ownerId)
+                    .orElseThrow(() -> new NotFoundException("Folder not found"));
+        }
+
+        Set<Long> moved = new HashSet<>(files.moveOwned(ownerId, fileIds, folderId));
+        return fileIds.stream()
+                .map(id -> moved.contains(id) ? ItemResult.done(id) : ItemResult.failed(id, "File not found"))
+                .toList();
+    }
+
+    @Transactional
+    public List<ItemResult> deleteAll(Long ownerId, Collection<Long> fileIds) {
+        if (fileIds.isEmpty()) {
+            return List.of();
+        }
+
+        List<DeletedFile> deleted = files.deleteOwned(ownerId, fileIds);
+        blobs.entombUnreferenced(deleted.stream().map(DeletedFile::storageName).distinct().toList());
+
+        Set<Long> gone = HashSet.newHashSet(deleted.size());
+        for (DeletedFile file : deleted) {
+            gone.add(file.id());
+            shareTokens.invalidateFile(file.id());
+        }
+        return fileIds.stream()
+                .map(id -> gone.contains(id) ? ItemResult.done(id) : ItemResult.failed(id, "File not found"))
+                .toList();
+    }
+
+    public record BatchUploadResult(String filename, StoredFile file, String error) {
+
+        static BatchUploadResult created(StoredFile file) {
+            return new BatchUploadResult(file.getOriginalName(), file, null);
+        }
+
+        static BatchUploadResult failed(String filename, String error) {
+            return new BatchUploadResult(filename, null, error);
+        }
+    }
+
+    public record FileDownload(Resource resource, String filename, String contentType, long sizeBytes, String contentEncoding, String etag, Instant lastModified) implements Download {}
 }
\ No newline at end of file
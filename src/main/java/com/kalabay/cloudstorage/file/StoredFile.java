@@ -2,6 +2,7 @@ package com.kalabay.cloudstorage.file;
 
 import com.kalabay.cloudstorage.user.User;
 import com.kalabay.cloudstorage.folder.Folder;
+import com.kalabay.cloudstorage.storage.StorageCodec;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
@@ -31,7 +32,7 @@ public class StoredFile {
     @Column(name = "original_name", nullable = false, length = 255)
     private String originalName;
 
-    @Column(name = "storage_name", nullable = false, unique = true, length = 64)
+    @Column(name = "storage_name", nullable = false, length = 64)
     private String storageName;
 
     @Column(name = "content_type", length = 255)
@@ -40,6 +41,14 @@ public class StoredFile {
     @Column(name = "size_bytes", nullable = false)
     private long sizeBytes;
 
+    @Builder.Default
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private StorageCodec codec = StorageCodec.NONE;
+
+    @Column(name = "stored_size_bytes", nullable = false)
+    private long storedSizeBytes;
+
     @CreationTimestamp
     @Column(name = "uploaded_at", nullable = false, updatable = false)
     private Instant uploadedAt;
@@ -0,0 +1,35 @@
+package com.kalabay.cloudstorage.file;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+// Sizes of what goes in and out through the API, whichever endpoint carried it; their latency is
+// http.server.requests. Downloads are recorded at the size offered, so a 304 or a Range request counts
+// more than was sent; storage.bytes has what was actually read.
+@Component
+public class TransferMetrics {
+
+    private final DistributionSummary uploads;
+    private final DistributionSummary ownerDownloads;
+    private final DistributionSummary shareDownloads;
+
+    public TransferMetrics(MeterRegistry registry) {
+        this.uploads = DistributionSummary.builder("files.upload.size").baseUnit("bytes").register(registry);
+        this.ownerDownloads = DistributionSummary.builder("files.download.size").tag("access", "owner").baseUnit("bytes").register(registry);
+        this.shareDownloads = DistributionSummary.builder("files.download.size").tag("access", "share").baseUnit("bytes").register(registry);
+    }
+
+    // raw bytes, before any encoding
+    public void uploaded(long bytes) {
+        uploads.record(bytes);
+    }
+
+    public void downloadedByOwner(long bytes) {
+        ownerDownloads.record(bytes);
+    }
+
+    public void downloadedByShare(long bytes) {
+        shareDownloads.record(bytes);
+    }
+}
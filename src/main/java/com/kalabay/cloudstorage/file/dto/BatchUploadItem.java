@@ -0,0 +1,10 @@
+package com.kalabay.cloudstorage.file.dto;
+
+import com.kalabay.cloudstorage.file.FileService;
+
+public record BatchUploadItem(String filename, boolean created, FileResponse file, String error) {
+    public static BatchUploadItem fromResult(FileService.BatchUploadResult r) {
+        FileResponse file = r.file() != null ? FileResponse.fromEntity(r.file()) : null;
+        return new BatchUploadItem(r.filename(), file != null, file, r.error());
+    }
+}
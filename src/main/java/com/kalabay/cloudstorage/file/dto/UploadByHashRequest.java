@@ -0,0 +1,14 @@
+package com.kalabay.cloudstorage.file.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+
+public record UploadByHashRequest(
+        @NotBlank
+        @Pattern(regexp = "^[0-9a-fA-F]{64}$", message = "{file.sha256.pattern}")
+        String sha256,
+        @NotBlank(message = "{file.upload.filename}")
+        String filename,
+        String contentType,
+        Long folderId
+) {}
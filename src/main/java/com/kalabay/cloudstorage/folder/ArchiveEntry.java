@@ -0,0 +1,17 @@
+package com.kalabay.cloudstorage.folder;
+
+import com.kalabay.cloudstorage.storage.StorageCodec;
+
+import java.time.Instant;
+
+public record ArchiveEntry(
+        Long id,
+        Long folderId,
+        String originalName,
+        String storageName,
+        String contentType,
+        long sizeBytes,
+        StorageCodec codec,
+        long storedSizeBytes,
+        Instant uploadedAt
+) {}
@@ -4,6 +4,8 @@ import com.kalabay.cloudstorage.user.User;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Generated;
+import org.hibernate.generator.EventType;
 
 import java.time.Instant;
 
@@ -34,4 +36,18 @@ public class Folder {
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private Instant createdAt;
+
+    // '/<root id>/.../<own id>/', maintained by database triggers on insert and parent change
+    @Generated(event = {EventType.INSERT, EventType.UPDATE})
+    @Column(nullable = false, length = 2048, insertable = false, updatable = false)
+    private String path;
+
+    // every file below this folder at any depth, maintained by database triggers
+    @Builder.Default
+    @Column(name = "total_size_bytes", nullable = false, insertable = false, updatable = false)
+    private long totalSizeBytes = 0;
+
+    @Builder.Default
+    @Column(name = "total_file_count", nullable = false, insertable = false, updatable = false)
+    private long totalFileCount = 0;
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+package com.kalabay.cloudstorage.folder;
+
+import com.kalabay.cloudstorage.common.exception.NotFoundException;
+import com.kalabay.cloudstorage.file.FileRepository;
+import com.kalabay.cloudstorage.storage.StorageBackend;
+import com.kalabay.cloudstorage.storage.StoredContent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Streams a folder subtree as a ZIP straight into the response. Folder paths are resolved up front
+// (one small row per folder); files are read in keyset batches and copied one at a time, so memory
+// does not grow with the number of files and nothing is staged on disk. ZipOutputStream switches
+// to ZIP64 by itself once an entry or the archive passes 4 GiB or 65535 entries.
+@Service
+public class FolderArchiveService {
+
+    private static final int FOLDER_CHUNK = 1000;
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    private final FolderRepository folders;
+    private final FileRepository files;
+    private final StorageBackend storage;
+    private final int batchSize;
+    private final int level;
+    private final List<MediaType> storedTypes;
+
+    public FolderArchiveService(
+            FolderRepository folders,
+            FileRepository files,
+            StorageBackend storage,
+            @Value("${storage.archive.batch-size:500}") int batchSize,
+            @Value("${storage.archive.level:1}") int level,
+            @Value("${storage.archive.stored-content-types:image/*,video/*,audio/*,application/zip,application/gzip,application/x-gzip,application/zstd,application/x-7z-compressed,application/vnd.rar,application/x-rar-compressed,application/x-bzip2,application/x-xz,application/pdf}") List<String> storedTypes
+    ) {
+        this.folders = folders;
+        this.files = files;
+        this.storage = storage;
+        this.batchSize = batchSize;
+        this.level = level;
+        this.storedTypes = MediaType.parseMediaTypes(storedTypes);
+    }
+
+    // runs before anything is written, so a missing folder is still an ordinary 404
+    public Archive prepare(Long ownerId, Long folderId) {
+        List<FolderNode> nodes = folders.findSubtree(ownerId, folderId);
+        if (nodes.isEmpty()) {
+            throw new NotFoundException("Folder not found");
+        }
+
+        Map<Long, String> paths = new LinkedHashMap<>();
+        paths.put(folderId, "");
+        for (FolderNode node : nodes) {
+            if (!node.getId().equals(folderId)) {
+                paths.put(node.getId(), paths.get(node.getParentId()) + entryName(node.getName()) + "/");
+            }
+        }
+        return new Archive(nodes.get(0).getName(), paths);
+    }
+
+    public void write(Archive archive, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, COPY_BUFFER));
+        byte[] buffer = new byte[COPY_BUFFER];
+
+        // directory entries first, so empty folders survive the round trip
+        for (String path : archive.paths().values()) {
+            if (!path.isEmpty()) {
+                zip.putNextEntry(new ZipEntry(path));
+                zip.closeEntry();
+            }
+        }
+
+        List<Long> folderIds = new ArrayList<>(archive.paths().keySet());
+        for (int from = 0; from < folderIds.size(); from += FOLDER_CHUNK) {
+            List<Long> chunk = folderIds.subList(from, Math.min(from + FOLDER_CHUNK, folderIds.size()));
+            writeFiles(zip, archive, chunk, buffer);
+        }
+
+        zip.finish();
+        zip.flush();
+    }
+
+    private void writeFiles(ZipOutputStream zip, Archive archive, List<Long> folderIds, byte[] buffer) throws IOException {
+        long afterFolderId = 0;
+        long afterId = 0;
+        Set<String> names = new HashSet<>();
+
+        while (true) {
+            // no surrounding transaction: each batch is loaded and released on its own
+            List<ArchiveEntry> batch = files.findArchiveBatch(folderIds, afterFolderId, afterId, Limit.of(batchSize));
+            for (ArchiveEntry file : batch) {
+                if (file.folderId() != afterFolderId) {
+                    names.clear();
+                }
+                afterFolderId = file.folderId();
+                afterId = file.id();
+
+                ZipEntry entry = new ZipEntry(archive.paths().get(file.folderId()) + uniqueName(names, entryName(file.originalName())));
+                entry.setLastModifiedTime(FileTime.from(file.uploadedAt()));
+                // level 0 keeps already-compressed media as stored deflate blocks: no CPU spent and
+                // no second pass for the CRC that a STORED entry would need up front
+                zip.setLevel(isPrecompressed(file.contentType()) ? Deflater.NO_COMPRESSION : level);
+                zip.putNextEntry(entry);
+
+                StoredContent content = StoredContent.negotiate(storage, file.storageName(), file.codec(), file.sizeBytes(), file.storedSizeBytes(), null);
+                try (InputStream in = content.resource().getInputStream()) {
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        zip.write(buffer, 0, n);
+                    }
+                }
+                zip.closeEntry();
+            }
+            if (batch.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private boolean isPrecompressed(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            MediaType type = MediaType.parseMediaType(contentType);
+            return storedTypes.stream().anyMatch(candidate -> candidate.includes(type));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    // entry names come from user input; keep each one a single path segment
+    private static String entryName(String name) {
+        String cleaned = name.replace('/', '_').replace('\\', '_').strip();
+        if (cleaned.isEmpty() || cleaned.equals(".") || cleaned.equals("..")) {
+            return "_";
+        }
+        return cleaned;
+    }
+
+    // files in one folder may share a name; ZIP entries may not
+    private static String uniqueName(Set<String> taken, String name) {
+        if (taken.add(name)) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int i = 1; ; i++) {
+            String candidate = base + " (" + i + ")" + extension;
+            if (taken.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    public record Archive(String name, Map<Long, String> paths) {}
+}
@@ -1,12 +1,21 @@
 package com.kalabay.cloudstorage.folder;
 
+import com.kalabay.cloudstorage.common.web.Cursor;
+import com.kalabay.cloudstorage.common.web.CursorPage;
+import com.kalabay.cloudstorage.common.web.ListingSort;
 import com.kalabay.cloudstorage.folder.dto.*;
+import com.kalabay.cloudstorage.security.UserPrincipal;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.Comparator;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
@@ -14,46 +23,46 @@ import java.util.List;
 public class FolderController {
 
     private final FolderService service;
+    private final FolderArchiveService archives;
 
-    public FolderController(FolderService service) {
+    public FolderController(FolderService service, FolderArchiveService archives) {
         this.service = service;
+        this.archives = archives;
     }
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public FolderResponse create(@Valid @RequestBody CreateFolderRequest request, Authentication auth) {
-        var folder = service.create(auth.getName(), request.name(), request.parentId());
+    public FolderResponse create(@Valid @RequestBody CreateFolderRequest request, @AuthenticationPrincipal UserPrincipal user) {
+        var folder = service.create(user.getId(), request.name(), request.parentId());
         return FolderResponse.fromEntity(folder);
     }
 
     @GetMapping
-    public List<FolderResponse> listChildren(
+    public CursorPage<FolderResponse> listChildren(
             @RequestParam(value = "parentId", required = false) Long parentId,
             @RequestParam(value = "sort", required = false, defaultValue = "createdAt,desc") String sort,
-            Authentication auth
+            @RequestParam(value = "limit", required = false, defaultValue = "100") int limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @AuthenticationPrincipal UserPrincipal user
     ) {
-        var parsed = parseSort(sort);
+        var parsed = ListingSort.parse(sort);
 
-        var list = service.listChildren(auth.getName(), parentId)
-                .stream()
-                .map(FolderResponse::fromEntity)
-                .toList();
-
-        return sortFolders(list, parsed);
+        return service.listChildren(user.getId(), parentId, parsed, Cursor.decode(cursor, parsed), CursorPage.checkLimit(limit))
+                .map(FolderResponse::fromEntity);
     }
 
     @GetMapping("/tree")
-    public List<FolderTreeNode> tree(Authentication auth) {
-        return service.getTree(auth.getName());
+    public List<FolderTreeNode> tree(@AuthenticationPrincipal UserPrincipal user) {
+        return service.getTree(user.getId());
     }
 
     @PatchMapping("/{id}")
     public FolderResponse rename(
             @PathVariable Long id,
             @Valid @RequestBody RenameFolderRequest request,
-            Authentication auth
+            @AuthenticationPrincipal UserPrincipal user
     ) {
-        var folder = service.rename(auth.getName(), id, request.name());
+        var folder = service.rename(user.getId(), id, request.name());
         return FolderResponse.fromEntity(folder);
     }
 
@@ -61,47 +70,32 @@ public class FolderController {
     public FolderResponse move(
             @PathVariable Long id,
             @RequestBody MoveFolderRequest request,
-            Authentication auth
+            @AuthenticationPrincipal UserPrincipal user
     ) {
-        var folder = service.move(auth.getName(), id, request.parentId());
+        var folder = service.move(user.getId(), id, request.parentId());
         return FolderResponse.fromEntity(folder);
     }
 
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public void delete(@PathVariable Long id, Authentication auth) {
-        service.delete(auth.getName(), id);
+    public void delete(@PathVariable Long id, @AuthenticationPrincipal UserPrincipal user) {
+        service.delete(user.getId(), id);
     }
 
     @GetMapping("/{id}/path")
-    public List<FolderPathItem> path(@PathVariable Long id, Authentication auth) {
-        return service.getPath(auth.getName(), id);
-    }
-
-    private List<FolderResponse> sortFolders(List<FolderResponse> items, ParsedSort sort) {
-        Comparator<FolderResponse> cmp = switch (sort.field) {
-            case "createdAt" -> Comparator.comparing(FolderResponse::createdAt, Comparator.nullsLast(Comparator.naturalOrder()));
-            case "name" -> Comparator.comparing(FolderResponse::name, String.CASE_INSENSITIVE_ORDER);
-            default -> throw new IllegalArgumentException("Unsupported sort field: " + sort.field);
-        };
-
-        if (!sort.asc) cmp = cmp.reversed();
-        return items.stream().sorted(cmp).toList();
+    public List<FolderPathItem> path(@PathVariable Long id, @AuthenticationPrincipal UserPrincipal user) {
+        return service.getPath(user.getId(), id);
     }
 
-    private ParsedSort parseSort(String sort) {
-        String[] parts = sort.split(",", 2);
-        String field = parts[0].trim();
-        String dir = parts.length > 1 ? parts[1].trim().toLowerCase() : "asc";
-
-        boolean asc = switch (dir) {
-            case "asc" -> true;
-            case "desc" -> false;
-            default -> throw new IllegalArgumentException("Sort direction must be asc|desc");
-        };
+    // written straight to the servlet stream: no async timeout, and errors before the first byte are still JSON
+    @GetMapping("/{id}/archive")
+    public void archive(@PathVariable Long id, @AuthenticationPrincipal UserPrincipal user, HttpServletResponse response) throws IOException {
+        var archive = archives.prepare(user.getId(), id);
+        String encoded = URLEncoder.encode(archive.name() + ".zip", StandardCharsets.UTF_8);
 
-        return new ParsedSort(field, asc);
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename*=UTF-8''" + encoded);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noStore().getHeaderValue());
+        archives.write(archive, response.getOutputStream());
     }
-
-    private record ParsedSort(String field, boolean asc) {}
 }
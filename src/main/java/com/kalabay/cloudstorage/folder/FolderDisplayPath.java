@@ -0,0 +1,6 @@
+package com.kalabay.cloudstorage.folder;
+
+public interface FolderDisplayPath {
+    Long getId();
+    String getPath();
+}
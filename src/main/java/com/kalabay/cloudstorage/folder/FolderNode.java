@@ -0,0 +1,7 @@
+package com.kalabay.cloudstorage.folder;
+
+public interface FolderNode {
+    Long getId();
+    Long getParentId();
+    String getName();
+}
@@ -0,0 +1,3 @@
+package com.kalabay.cloudstorage.folder;
+
+public record FolderPlacement(Long id, Long parentId, String name, String path) {}
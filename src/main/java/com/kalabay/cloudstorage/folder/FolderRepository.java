@@ -5,45 +5,102 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface FolderRepository extends JpaRepository<Folder, Long> {
+public interface FolderRepository extends JpaRepository<Folder, Long>, FolderRepositoryCustom {
 
-    List<Folder> findAllByOwner_UsernameAndParentIsNullOrderByCreatedAtAsc(String username);
+    // plain rows instead of managed entities: no persistence context snapshots, no parent proxies
+    @Query("""
+        SELECT new com.kalabay.cloudstorage.folder.FolderTreeRow(f.id, f.parent.id, f.name, f.createdAt)
+        FROM Folder f
+        WHERE f.owner.id = :ownerId
+        ORDER BY f.createdAt, f.id
+        """)
+    List<FolderTreeRow> findTreeRows(@Param("ownerId") Long ownerId);
 
-    List<Folder> findAllByOwner_UsernameAndParent_IdOrderByCreatedAtAsc(String username, Long parentId);
+    Optional<Folder> findByIdAndOwner_Id(Long id, Long ownerId);
 
-    List<Folder> findAllByOwner_UsernameOrderByCreatedAtAsc(String username);
+    boolean existsByOwner_IdAndParentIsNullAndName(Long ownerId, String name);
 
-    Optional<Folder> findByIdAndOwner_Username(Long id, String username);
+    boolean existsByOwner_IdAndParent_IdAndName(Long ownerId, Long parentId, String name);
 
-    boolean existsByOwner_UsernameAndParentIsNullAndName(String username, String name);
+    @Query("""
+        SELECT new com.kalabay.cloudstorage.folder.FolderPlacement(f.id, f.parent.id, f.name, f.path)
+        FROM Folder f
+        WHERE f.owner.id = :ownerId AND f.id IN :ids
+        """)
+    List<FolderPlacement> findPlacements(@Param("ownerId") Long ownerId, @Param("ids") Collection<Long> ids);
 
-    boolean existsByOwner_UsernameAndParent_IdAndName(String username, Long parentId, String name);
+    @Query("SELECT f.name FROM Folder f WHERE f.owner.id = :ownerId AND f.parent IS NULL AND f.name IN :names")
+    List<String> findRootNames(@Param("ownerId") Long ownerId, @Param("names") Collection<String> names);
 
+    @Query("SELECT f.name FROM Folder f WHERE f.owner.id = :ownerId AND f.parent.id = :parentId AND f.name IN :names")
+    List<String> findChildNames(@Param("ownerId") Long ownerId, @Param("parentId") Long parentId, @Param("names") Collection<String> names);
+
+    @Query("SELECT f.id FROM Folder f WHERE f.owner.id = :ownerId AND f.id IN :ids")
+    List<Long> findOwnedIds(@Param("ownerId") Long ownerId, @Param("ids") Collection<Long> ids);
+
+    // locks the folders and their ancestors root first, the order the totals triggers lock in (V15); a move or
+    // delete takes these before it locks the folders themselves, or it would hold them while waiting for the
+    // ancestors an upload below them already has
+    @Query(value = "SELECT folders_lock_chains(ARRAY(SELECT f.id FROM folders f WHERE f.id IN (:ids)))", nativeQuery = true)
+    int lockChains(@Param("ids") Collection<Long> ids);
+
+    // the path triggers rewrite each moved folder's subtree by its old path range, so the ids must not
+    // contain a folder together with one of its descendants
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = """
+        UPDATE folders
+        SET parent_id = CAST(:parentId AS BIGINT)
+        WHERE owner_id = :ownerId AND id IN (:ids)
+        """, nativeQuery = true)
+    int moveOwned(@Param("ownerId") Long ownerId, @Param("ids") Collection<Long> ids, @Param("parentId") Long parentId);
+
+    // descendants share the root's path prefix: one range scan on idx_folders_path; parents come before their children
+    @Query(value = """
+        SELECT d.id AS "id", d.parent_id AS "parentId", d.name AS "name"
+        FROM folders r
+        JOIN folders d ON d.path >= r.path AND d.path < left(r.path, -1) || '0'
+        WHERE r.id = :rootId AND r.owner_id = :ownerId
+        ORDER BY length(d.path)
+        """, nativeQuery = true)
+    List<FolderNode> findSubtree(@Param("ownerId") Long ownerId, @Param("rootId") Long rootId);
+
+    // breadcrumbs: the ancestor ids are spelled out in the path, so this is primary key lookups only
     @Query(value = """
-        WITH RECURSIVE subtree AS (
-            SELECT f.id
-            FROM folders f
-            JOIN users u ON u.id = f.owner_id
-            WHERE f.id = :rootId AND u.username = :username
-            UNION ALL
-            SELECT c.id
-            FROM folders c
-            JOIN subtree s ON c.parent_id = s.id
-        )
-        SELECT id FROM subtree
+        SELECT a.id AS "id", a.parent_id AS "parentId", a.name AS "name"
+        FROM folders c
+        JOIN folders a ON a.id = ANY (CAST(string_to_array(trim(BOTH '/' FROM c.path), '/') AS BIGINT[]))
+        WHERE c.id = :folderId AND c.owner_id = :ownerId
+        ORDER BY length(a.path)
         """, nativeQuery = true)
-    List<Long> findSubtreeIds(@Param("username") String username, @Param("rootId") Long rootId);
+    List<FolderNode> findAncestry(@Param("ownerId") Long ownerId, @Param("folderId") Long folderId);
+
+    // '/'-joined names from the root down, for several folders in one round trip
+    @Query(value = """
+        SELECT c.id AS "id", string_agg(a.name, '/' ORDER BY length(a.path)) AS "path"
+        FROM folders c
+        JOIN folders a ON a.id = ANY (CAST(string_to_array(trim(BOTH '/' FROM c.path), '/') AS BIGINT[]))
+        WHERE c.id IN (:ids) AND c.owner_id = :ownerId
+        GROUP BY c.id
+        """, nativeQuery = true)
+    List<FolderDisplayPath> findDisplayPaths(@Param("ownerId") Long ownerId, @Param("ids") Collection<Long> ids);
 
     @Modifying(flushAutomatically = true, clearAutomatically = true)
     @Query(value = """
         DELETE FROM folders f
-        USING users u
         WHERE f.id = :rootId
-          AND f.owner_id = u.id
-          AND u.username = :username
+          AND f.owner_id = :ownerId
+        """, nativeQuery = true)
+    int deleteOwnedRoot(@Param("ownerId") Long ownerId, @Param("rootId") Long rootId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = """
+        DELETE FROM folders f
+        WHERE f.id IN (:rootIds)
+          AND f.owner_id = :ownerId
         """, nativeQuery = true)
-    int deleteOwnedRoot(@Param("username") String username, @Param("rootId") Long rootId);
+    int deleteOwnedRoots(@Param("ownerId") Long ownerId, @Param("rootIds") Collection<Long> rootIds);
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.kalabay.cloudstorage.folder;
+
+import com.kalabay.cloudstorage.common.web.Cursor;
+import com.kalabay.cloudstorage.common.web.Keyed;
+import com.kalabay.cloudstorage.common.web.ListingSort;
+
+import java.util.List;
+
+public interface FolderRepositoryCustom {
+
+    // one page of a folder's children (parentId null = top level) in SQL order, starting after the cursor
+    List<Keyed<Folder>> findChildrenPage(Long ownerId, Long parentId, ListingSort sort, Cursor after, int limit);
+}
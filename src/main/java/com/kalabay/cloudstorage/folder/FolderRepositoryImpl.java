@@ -0,0 +1,52 @@
+package com.kalabay.cloudstorage.folder;
+
+import com.kalabay.cloudstorage.common.web.Cursor;
+import com.kalabay.cloudstorage.common.web.Keyed;
+import com.kalabay.cloudstorage.common.web.ListingSort;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+import java.util.List;
+
+class FolderRepositoryImpl implements FolderRepositoryCustom {
+
+    private final EntityManager em;
+
+    FolderRepositoryImpl(EntityManager em) {
+        this.em = em;
+    }
+
+    @Override
+    public List<Keyed<Folder>> findChildrenPage(Long ownerId, Long parentId, ListingSort sort, Cursor after, int limit) {
+        String key = switch (sort.field()) {
+            case NAME -> "lower(f.name)";
+            case SIZE -> "f.totalSizeBytes";
+            case CREATED_AT -> "f.createdAt";
+        };
+        String dir = sort.asc() ? "ASC" : "DESC";
+        boolean seek = after != null && !after.atStart();
+
+        String jpql = "SELECT f, " + key + " FROM Folder f"
+                + " WHERE f.owner.id = :ownerId"
+                + (parentId != null ? " AND f.parent.id = :parentId" : " AND f.parent IS NULL")
+                + (seek ? " AND (" + key + ", f.id) " + (sort.asc() ? ">" : "<") + " (:key, :id)" : "")
+                + " ORDER BY " + key + " " + dir + ", f.id " + dir;
+
+        TypedQuery<Object[]> query = em.createQuery(jpql, Object[].class)
+                .setParameter("ownerId", ownerId)
+                .setMaxResults(limit);
+        if (parentId != null) {
+            query.setParameter("parentId", parentId);
+        }
+        if (seek) {
+            query.setParameter("key", after.key()).setParameter("id", after.id());
+        }
+
+        return query.getResultList().stream()
+                .map(row -> {
+                    Folder folder = (Folder) row[0];
+                    return new Keyed<>(folder, row[1], folder.getId());
+                })
+                .toList();
+    }
+}
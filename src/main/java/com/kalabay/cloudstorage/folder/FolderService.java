@@ -3,63 +3,83 @@ package com.kalabay.cloudstorage.folder;
 import com.kalabay.cloudstorage.common.exception.BadRequestException;
 import com.kalabay.cloudstorage.common.exception.ConflictException;
 import com.kalabay.cloudstorage.common.exception.NotFoundException;
+import com.kalabay.cloudstorage.common.web.Cursor;
+import com.kalabay.cloudstorage.common.web.CursorPage;
+import com.kalabay.cloudstorage.common.web.ItemResult;
+import com.kalabay.cloudstorage.common.web.ListingSort;
+import com.kalabay.cloudstorage.file.BlobStore;
 import com.kalabay.cloudstorage.file.FileRepository;
 import com.kalabay.cloudstorage.folder.dto.FolderPathItem;
 import com.kalabay.cloudstorage.folder.dto.FolderTreeNode;
+import com.kalabay.cloudstorage.share.FileShareRepository;
+import com.kalabay.cloudstorage.share.ShareTokenCache;
 import com.kalabay.cloudstorage.user.User;
 import com.kalabay.cloudstorage.user.UserRepository;
-import org.springframework.beans.factory.annotation.Value;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.io.IOException;
-import java.nio.file.*;
 import java.util.*;
 
 @Service
 public class FolderService {
 
+    public static final String LISTING_PHASE = "folders";
+
     private final FolderRepository folders;
     private final UserRepository users;
     private final FileRepository files;
-    private final Path storageRoot;
+    private final BlobStore blobs;
+    private final FolderTreeCache treeCache;
+    private final FileShareRepository shares;
+    private final ShareTokenCache shareTokens;
+
+    // only cache misses build a tree, so these describe the misses
+    private final Timer treeQuery;
+    private final Timer treeAssembly;
+    private final DistributionSummary treeSize;
 
     public FolderService(
             FolderRepository folders,
             UserRepository users,
             FileRepository files,
-            @Value("${storage.root-dir:./data/storage}") String rootDir
+            BlobStore blobs,
+            FolderTreeCache treeCache,
+            FileShareRepository shares,
+            ShareTokenCache shareTokens,
+            MeterRegistry registry
     ) {
         this.folders = folders;
         this.users = users;
         this.files = files;
-        this.storageRoot = Paths.get(rootDir).toAbsolutePath().normalize();
-
-        try {
-            Files.createDirectories(this.storageRoot);
-        } catch (IOException e) {
-            throw new IllegalStateException("Cannot create storage directory", e);
-        }
+        this.blobs = blobs;
+        this.treeCache = treeCache;
+        this.shares = shares;
+        this.shareTokens = shareTokens;
+        this.treeQuery = Timer.builder("folders.tree.build").tag("phase", "query").register(registry);
+        this.treeAssembly = Timer.builder("folders.tree.build").tag("phase", "assemble").register(registry);
+        this.treeSize = DistributionSummary.builder("folders.tree.size").baseUnit("folders").register(registry);
     }
 
     @Transactional
-    public Folder create(String username, String name, Long parentId) {
+    public Folder create(Long ownerId, String name, Long parentId) {
         // DTO validation уже есть, но этот гард полезен, если вызов идёт не из контроллера
         if (name == null || name.isBlank()) {
             throw new BadRequestException("Folder name cannot be empty");
         }
 
-        User owner = users.findByUsername(username)
-                .orElseThrow(() -> new NotFoundException("User not found"));
+        User owner = users.getReferenceById(ownerId);
 
         Folder parent = null;
         if (parentId != null) {
-            parent = folders.findByIdAndOwner_Username(parentId, username)
+            parent = folders.findByIdAndOwner_Id(parentId, ownerId)
                     .orElseThrow(() -> new NotFoundException("Parent folder not found"));
         }
 
         String trimmed = name.trim();
-        ensureUniqueName(username, parent, trimmed);
+        ensureUniqueName(ownerId, parent, trimmed);
 
         Folder folder = Folder.builder()
                 .owner(owner)
@@ -67,65 +87,62 @@ public class FolderService {
                 .name(trimmed)
                 .build();
 
+        treeCache.invalidate(ownerId);
         return folders.save(folder);
     }
 
     @Transactional(readOnly = true)
-    public List<Folder> listChildren(String username, Long parentId) {
-        if (parentId == null) {
-            return folders.findAllByOwner_UsernameAndParentIsNullOrderByCreatedAtAsc(username);
+    public CursorPage<Folder> listChildren(Long ownerId, Long parentId, ListingSort sort, Cursor after, int limit) {
+        if (parentId != null) {
+            folders.findByIdAndOwner_Id(parentId, ownerId)
+                    .orElseThrow(() -> new NotFoundException("Parent folder not found"));
         }
 
-        folders.findByIdAndOwner_Username(parentId, username)
-                .orElseThrow(() -> new NotFoundException("Parent folder not found"));
-
-        return folders.findAllByOwner_UsernameAndParent_IdOrderByCreatedAtAsc(username, parentId);
+        return CursorPage.of(folders.findChildrenPage(ownerId, parentId, sort, after, limit + 1), limit, LISTING_PHASE, sort);
     }
 
-    @Transactional(readOnly = true)
-    public List<FolderTreeNode> getTree(String username) {
-        var all = folders.findAllByOwner_UsernameOrderByCreatedAtAsc(username);
-
-        Map<Long, FolderTreeNode> nodes = new LinkedHashMap<>();
-        List<FolderTreeNode> roots = new ArrayList<>();
-
-        all.forEach(folder -> {
-            Long parentId = folder.getParent() != null ? folder.getParent().getId() : null;
-            FolderTreeNode node = new FolderTreeNode(
-                    folder.getId(),
-                    folder.getName(),
-                    parentId,
-                    folder.getCreatedAt(),
-                    new ArrayList<>()
-            );
-            nodes.put(folder.getId(), node);
+    // no transaction here: a cache hit never touches a connection
+    public List<FolderTreeNode> getTree(Long ownerId) {
+        return treeCache.get(ownerId, () -> {
+            List<FolderTreeRow> rows = treeQuery.record(() -> folders.findTreeRows(ownerId));
+            treeSize.record(rows.size());
+            return treeAssembly.record(() -> buildTree(rows));
         });
+    }
 
-        all.forEach(folder -> {
-            FolderTreeNode node = nodes.get(folder.getId());
-            Long parentId = folder.getParent() != null ? folder.getParent().getId() : null;
+    static FolderTreeCache.Snapshot buildTree(List<FolderTreeRow> rows) {
+        Map<Long, FolderTreeNode> nodes = HashMap.newHashMap(rows.size());
+        long weight = 0;
+        for (FolderTreeRow row : rows) {
+            nodes.put(row.id(), new FolderTreeNode(row.id(), row.name(), row.parentId(), row.createdAt(), new ArrayList<>(0)));
+            weight += FolderTreeCache.weigh(row);
+        }
 
-            if (parentId == null) {
+        // rows come in creation order, so children keep that order under each parent
+        List<FolderTreeNode> roots = new ArrayList<>();
+        for (FolderTreeRow row : rows) {
+            FolderTreeNode node = nodes.get(row.id());
+            if (row.parentId() == null) {
                 roots.add(node);
             } else {
-                FolderTreeNode parentNode = nodes.get(parentId);
+                FolderTreeNode parentNode = nodes.get(row.parentId());
                 if (parentNode != null) {
                     parentNode.children().add(node);
                 }
             }
-        });
+        }
 
-        return roots;
+        return new FolderTreeCache.Snapshot(roots, weight);
     }
 
     @Transactional
-    public Folder rename(String username, Long folderId, String newName) {
+    public Folder rename(Long ownerId, Long folderId, String newName) {
         // DTO validation должна ловить, но пусть будет и здесь
         if (newName == null || newName.isBlank()) {
             throw new BadRequestException("Folder name cannot be empty");
         }
 
-        Folder folder = folders.findByIdAndOwner_Username(folderId, username)
+        Folder folder = folders.findByIdAndOwner_Id(folderId, ownerId)
                 .orElseThrow(() -> new NotFoundException("Folder not found"));
 
         String trimmed = newName.trim();
@@ -133,29 +150,27 @@ public class FolderService {
             return folder;
         }
 
-        ensureUniqueName(username, folder.getParent(), trimmed);
+        ensureUniqueName(ownerId, folder.getParent(), trimmed);
         folder.setName(trimmed);
+        treeCache.invalidate(ownerId);
 
         return folders.save(folder);
     }
 
     @Transactional
-    public Folder move(String username, Long folderId, Long newParentId) {
-        Folder folder = folders.findByIdAndOwner_Username(folderId, username)
+    public Folder move(Long ownerId, Long folderId, Long newParentId) {
+        Folder folder = folders.findByIdAndOwner_Id(folderId, ownerId)
                 .orElseThrow(() -> new NotFoundException("Folder not found"));
 
         Folder newParent = null;
         if (newParentId != null) {
-            newParent = folders.findByIdAndOwner_Username(newParentId, username)
+            newParent = folders.findByIdAndOwner_Id(newParentId, ownerId)
                     .orElseThrow(() -> new NotFoundException("Target parent folder not found"));
 
             // запрет на перенос в самого себя/потомка
-            Folder cursor = newParent;
-            while (cursor != null) {
-                if (cursor.getId().equals(folder.getId())) {
-                    throw new BadRequestException("Cannot move folder into itself or its descendant");
-                }
-                cursor = cursor.getParent();
+            // (the path trigger repeats the check under a row lock, which catches concurrent crossing moves)
+            if (newParent.getPath().startsWith(folder.getPath())) {
+                throw new BadRequestException("Cannot move folder into itself or its descendant");
             }
         }
 
@@ -164,52 +179,163 @@ public class FolderService {
             return folder;
         }
 
-        ensureUniqueName(username, newParent, folder.getName());
+        ensureUniqueName(ownerId, newParent, folder.getName());
+        folders.lockChains(newParentId != null ? List.of(folderId, newParentId) : List.of(folderId));
         folder.setParent(newParent);
+        treeCache.invalidate(ownerId);
 
         return folders.save(folder);
     }
 
     @Transactional
-    public void delete(String username, Long folderId) {
-        // subtree ids + ownership check
-        List<Long> ids = folders.findSubtreeIds(username, folderId);
-        if (ids.isEmpty()) {
+    public void delete(Long ownerId, Long folderId) {
+        List<Long> root = List.of(folderId);
+        if (folders.findOwnedIds(ownerId, root).isEmpty()) {
             throw new NotFoundException("Folder not found");
         }
 
-        // delete physical files first
-        List<String> storageNames = files.findStorageNamesInFolders(username, ids);
-        for (String storageName : storageNames) {
-            try {
-                Files.deleteIfExists(storageRoot.resolve(storageName));
-            } catch (IOException ignored) {}
-        }
+        // one set-based decrement while the file rows still exist
+        List<String> released = blobs.releaseInSubtrees(ownerId, root);
+        shareTokens.invalidateTokens(shares.findTokensInSubtrees(ownerId, root));
 
         // delete root folder (DB cascade should remove subtree)
-        int deleted = folders.deleteOwnedRoot(username, folderId);
+        treeCache.invalidate(ownerId);
+        folders.lockChains(root);
+        int deleted = folders.deleteOwnedRoot(ownerId, folderId);
         if (deleted == 0) {
             throw new NotFoundException("Folder not found");
         }
+
+        // blobs go only after the file rows that reference them; the reaper removes the bytes
+        blobs.entombUnreferenced(released);
+    }
+
+    // Checks every folder against the same rules as move(), then moves the ones that pass with as few
+    // UPDATEs as the selection allows: one, unless some selected folders sit inside other selected ones
+    @Transactional
+    public List<ItemResult> moveAll(Long ownerId, Collection<Long> folderIds, Long newParentId) {
+        if (folderIds.isEmpty()) {
+            return List.of();
+        }
+
+        String targetPath = null;
+        if (newParentId != null) {
+            targetPath = folders.findByIdAndOwner_Id(newParentId, ownerId)
+                    .orElseThrow(() -> new NotFoundException("Target parent folder not found"))
+                    .getPath();
+        }
+
+        Map<Long, FolderPlacement> found = HashMap.newHashMap(folderIds.size());
+        for (FolderPlacement row : folders.findPlacements(ownerId, folderIds)) {
+            found.put(row.id(), row);
+        }
+        Set<String> names = new HashSet<>();
+        for (FolderPlacement row : found.values()) {
+            names.add(row.name());
+        }
+        Set<String> taken = names.isEmpty() ? new HashSet<>() : new HashSet<>(newParentId == null
+                ? folders.findRootNames(ownerId, names)
+                : folders.findChildNames(ownerId, newParentId, names));
+
+        List<ItemResult> results = new ArrayList<>(folderIds.size());
+        Map<Long, FolderPlacement> moving = new LinkedHashMap<>();
+        for (Long id : folderIds) {
+            FolderPlacement row = found.get(id);
+            if (row == null) {
+                results.add(ItemResult.failed(id, "Folder not found"));
+            } else if (Objects.equals(row.parentId(), newParentId)) {
+                results.add(ItemResult.done(id));
+            } else if (targetPath != null && targetPath.startsWith(row.path())) {
+                results.add(ItemResult.failed(id, "Cannot move folder into itself or its descendant"));
+            } else if (!taken.add(row.name())) {
+                results.add(ItemResult.failed(id, "Folder with the same name already exists at this level"));
+            } else {
+                moving.put(id, row);
+                results.add(ItemResult.done(id));
+            }
+        }
+
+        // a folder inside another moving one goes first, in its own statement, so the outer folder's
+        // subtree rewrite no longer covers it
+        TreeMap<Integer, List<Long>> byNesting = new TreeMap<>(Comparator.reverseOrder());
+        for (FolderPlacement row : moving.values()) {
+            int nesting = 0;
+            for (String ancestor : row.path().substring(1, row.path().length() - 1).split("/")) {
+                if (!ancestor.equals(row.id().toString()) && moving.containsKey(Long.valueOf(ancestor))) {
+                    nesting++;
+                }
+            }
+            byNesting.computeIfAbsent(nesting, level -> new ArrayList<>()).add(row.id());
+        }
+        if (!moving.isEmpty()) {
+            List<Long> chains = new ArrayList<>(moving.keySet());
+            if (newParentId != null) {
+                chains.add(newParentId);
+            }
+            folders.lockChains(chains);
+        }
+        for (List<Long> ids : byNesting.values()) {
+            folders.moveOwned(ownerId, ids, newParentId);
+        }
+
+        if (!moving.isEmpty()) {
+            treeCache.invalidate(ownerId);
+        }
+        return results;
+    }
+
+    @Transactional
+    public List<ItemResult> deleteAll(Long ownerId, Collection<Long> folderIds) {
+        if (folderIds.isEmpty()) {
+            return List.of();
+        }
+
+        Set<Long> roots = new HashSet<>(folders.findOwnedIds(ownerId, folderIds));
+        if (!roots.isEmpty()) {
+            List<String> released = blobs.releaseInSubtrees(ownerId, roots);
+            shareTokens.invalidateTokens(shares.findTokensInSubtrees(ownerId, roots));
+
+            treeCache.invalidate(ownerId);
+            folders.lockChains(roots);
+            folders.deleteOwnedRoots(ownerId, roots);
+            blobs.entombUnreferenced(released);
+        }
+
+        return folderIds.stream()
+                .map(id -> roots.contains(id) ? ItemResult.done(id) : ItemResult.failed(id, "Folder not found"))
+                .toList();
     }
 
     @Transactional(readOnly = true)
-    public List<FolderPathItem> getPath(String username, Long folderId) {
-        Folder current = folders.findByIdAndOwner_Username(folderId, username)
-                .orElseThrow(() -> new NotFoundException("Folder not found"));
+    public List<FolderPathItem> getPath(Long ownerId, Long folderId) {
+        List<FolderNode> ancestry = folders.findAncestry(ownerId, folderId);
+        if (ancestry.isEmpty()) {
+            throw new NotFoundException("Folder not found");
+        }
+
+        return ancestry.stream()
+                .map(node -> new FolderPathItem(node.getId(), node.getName()))
+                .toList();
+    }
+
+    // folder id -> "/A/B"; ids the user does not own are left out
+    @Transactional(readOnly = true)
+    public Map<Long, String> getDisplayPaths(Long ownerId, Collection<Long> folderIds) {
+        if (folderIds.isEmpty()) {
+            return Map.of();
+        }
 
-        LinkedList<FolderPathItem> path = new LinkedList<>();
-        while (current != null) {
-            path.addFirst(new FolderPathItem(current.getId(), current.getName()));
-            current = current.getParent();
+        Map<Long, String> paths = HashMap.newHashMap(folderIds.size());
+        for (FolderDisplayPath row : folders.findDisplayPaths(ownerId, folderIds)) {
+            paths.put(row.getId(), "/" + row.getPath());
         }
-        return path;
+        return paths;
     }
 
-    private void ensureUniqueName(String username, Folder parent, String name) {
+    private void ensureUniqueName(Long ownerId, Folder parent, String name) {
         boolean exists = (parent == null)
-                ? folders.existsByOwner_UsernameAndParentIsNullAndName(username, name)
-                : folders.existsByOwner_UsernameAndParent_IdAndName(username, parent.getId(), name);
+                ? folders.existsByOwner_IdAndParentIsNullAndName(ownerId, name)
+                : folders.existsByOwner_IdAndParent_IdAndName(ownerId, parent.getId(), name);
 
         if (exists) {
             throw new ConflictException("Folder with the same name already exists at this level");
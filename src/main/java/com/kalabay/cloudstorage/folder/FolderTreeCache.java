@@ -0,0 +1,153 @@
+package com.kalabay.cloudstorage.folder;
+
+import com.kalabay.cloudstorage.folder.dto.FolderTreeNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Per-user snapshots of the folder tree, bounded by entry count and by an estimate of their heap
+// size, least recently used first out. Snapshots are shared between requests and must not be modified.
+@Component
+public class FolderTreeCache {
+
+    // record + boxed ids + Instant + children list + String header, roughly
+    private static final long NODE_OVERHEAD = 160;
+    private static final int GENERATION_STRIPES = 1024;
+
+    // a lock rather than synchronized: a virtual thread waiting on a monitor pins its carrier on JDK 21
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    // bumped on every invalidation, so a tree loaded before a write is never stored after it
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final int maxEntries;
+    private final long maxWeight;
+    private long weight;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public FolderTreeCache(
+            MeterRegistry registry,
+            @Value("${cache.folder-tree.max-entries:10000}") int maxEntries,
+            @Value("${cache.folder-tree.max-size:64MB}") DataSize maxSize
+    ) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxSize.toBytes();
+        this.hits = Counter.builder("cache.gets").tag("cache", "folderTree").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("cache.gets").tag("cache", "folderTree").tag("result", "miss").register(registry);
+        this.evictions = Counter.builder("cache.evictions").tag("cache", "folderTree").register(registry);
+        Gauge.builder("cache.size", this, FolderTreeCache::size).tag("cache", "folderTree").register(registry);
+        Gauge.builder("cache.weight", this, FolderTreeCache::weight).tag("cache", "folderTree").baseUnit("bytes").register(registry);
+    }
+
+    public List<FolderTreeNode> get(Long ownerId, Supplier<Snapshot> loader) {
+        long generation;
+        lock.lock();
+        try {
+            Entry entry = entries.get(ownerId);
+            if (entry != null) {
+                hits.increment();
+                return entry.roots();
+            }
+            generation = generations.get(stripe(ownerId));
+        } finally {
+            lock.unlock();
+        }
+        misses.increment();
+
+        // loaded outside the lock; concurrent misses for one user may both load, which is harmless
+        Snapshot snapshot = loader.get();
+        long entryWeight = NODE_OVERHEAD + snapshot.weight();
+        lock.lock();
+        try {
+            if (generations.get(stripe(ownerId)) == generation && entryWeight <= maxWeight) {
+                Entry previous = entries.put(ownerId, new Entry(snapshot.roots(), entryWeight));
+                weight += entryWeight - (previous != null ? previous.weight() : 0);
+                trim();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return snapshot.roots();
+    }
+
+    // Drops the user's tree now and again once the surrounding transaction commits: a request that
+    // reads in between still sees the old rows and may cache them, the second call removes that copy.
+    public void invalidate(Long ownerId) {
+        discard(ownerId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    discard(ownerId);
+                }
+            });
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long weight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void discard(Long ownerId) {
+        lock.lock();
+        try {
+            generations.incrementAndGet(stripe(ownerId));
+            Entry removed = entries.remove(ownerId);
+            if (removed != null) {
+                weight -= removed.weight();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Long, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private static int stripe(Long ownerId) {
+        return Math.floorMod(ownerId.hashCode(), GENERATION_STRIPES);
+    }
+
+    public static long weigh(FolderTreeRow row) {
+        return NODE_OVERHEAD + row.name().length();
+    }
+
+    public record Snapshot(List<FolderTreeNode> roots, long weight) {}
+
+    private record Entry(List<FolderTreeNode> roots, long weight) {}
+}
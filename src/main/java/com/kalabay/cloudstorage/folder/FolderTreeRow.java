@@ -0,0 +1,5 @@
+package com.kalabay.cloudstorage.folder;
+
+import java.time.Instant;
+
+public record FolderTreeRow(Long id, Long parentId, String name, Instant createdAt) {}
@@ -3,9 +3,9 @@ package com.kalabay.cloudstorage.folder.dto;
 import com.kalabay.cloudstorage.folder.Folder;
 import java.time.Instant;
 
-public record FolderResponse(Long id, String name, Long parentId, Instant createdAt) {
+public record FolderResponse(Long id, String name, Long parentId, Instant createdAt, long sizeBytes, long fileCount) {
     public static FolderResponse fromEntity(Folder folder) {
         Long parentId = folder.getParent() != null ? folder.getParent().getId() : null;
-        return new FolderResponse(folder.getId(), folder.getName(), parentId, folder.getCreatedAt());
+        return new FolderResponse(folder.getId(), folder.getName(), parentId, folder.getCreatedAt(), folder.getTotalSizeBytes(), folder.getTotalFileCount());
     }
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.kalabay.cloudstorage.search;
+
+import com.kalabay.cloudstorage.common.exception.BadRequestException;
+import com.kalabay.cloudstorage.common.web.Cursor;
+import com.kalabay.cloudstorage.common.web.CursorPage;
+import com.kalabay.cloudstorage.common.web.ListingSort;
+import com.kalabay.cloudstorage.file.FileSearch;
+import com.kalabay.cloudstorage.file.FileService;
+import com.kalabay.cloudstorage.file.StoredFile;
+import com.kalabay.cloudstorage.folder.FolderService;
+import com.kalabay.cloudstorage.search.dto.SearchResultResponse;
+import com.kalabay.cloudstorage.security.UserPrincipal;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping("/api/search")
+public class SearchController {
+
+    private final FileService fileService;
+    private final FolderService folderService;
+
+    public SearchController(FileService fileService, FolderService folderService) {
+        this.fileService = fileService;
+        this.folderService = folderService;
+    }
+
+    @GetMapping
+    public CursorPage<SearchResultResponse> search(
+            @RequestParam("q") String q,
+            @RequestParam(value = "match", required = false, defaultValue = "contains") String match,
+            @RequestParam(value = "contentType", required = false) String contentType,
+            @RequestParam(value = "minSize", required = false) Long minSize,
+            @RequestParam(value = "maxSize", required = false) Long maxSize,
+            @RequestParam(value = "uploadedFrom", required = false) Instant uploadedFrom,
+            @RequestParam(value = "uploadedTo", required = false) Instant uploadedTo,
+            @RequestParam(value = "sort", required = false, defaultValue = "createdAt,desc") String sort,
+            @RequestParam(value = "limit", required = false, defaultValue = "100") int limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @AuthenticationPrincipal UserPrincipal user
+    ) {
+        boolean prefix = switch (match) {
+            case "contains" -> false;
+            case "prefix" -> true;
+            default -> throw new BadRequestException("match must be contains|prefix");
+        };
+        Long ownerId = user.getId();
+        ListingSort parsed = ListingSort.parse(sort);
+        FileSearch search = new FileSearch(q, prefix, contentType, minSize, maxSize, uploadedFrom, uploadedTo);
+
+        CursorPage<StoredFile> page = fileService.search(ownerId, search, parsed, Cursor.decode(cursor, parsed), CursorPage.checkLimit(limit));
+
+        Set<Long> folderIds = page.items().stream()
+                .map(file -> file.getFolder() != null ? file.getFolder().getId() : null)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, String> paths = folderService.getDisplayPaths(ownerId, folderIds);
+
+        return page.map(file -> SearchResultResponse.fromEntity(file,
+                file.getFolder() != null ? paths.get(file.getFolder().getId()) : "/"));
+    }
+}
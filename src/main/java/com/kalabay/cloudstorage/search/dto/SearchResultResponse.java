@@ -0,0 +1,21 @@
+package com.kalabay.cloudstorage.search.dto;
+
+import com.kalabay.cloudstorage.file.StoredFile;
+
+import java.time.Instant;
+
+// folderPath is "/" for files at the root, otherwise the folder names from the root down
+public record SearchResultResponse(
+        Long id,
+        String filename,
+        long sizeBytes,
+        String contentType,
+        Instant uploadedAt,
+        Long folderId,
+        String folderPath
+) {
+    public static SearchResultResponse fromEntity(StoredFile f, String folderPath) {
+        Long folderId = f.getFolder() != null ? f.getFolder().getId() : null;
+        return new SearchResultResponse(f.getId(), f.getOriginalName(), f.getSizeBytes(), f.getContentType(), f.getUploadedAt(), folderId, folderPath);
+    }
+}
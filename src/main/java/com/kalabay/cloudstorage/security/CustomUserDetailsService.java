@@ -16,11 +16,10 @@ public class CustomUserDetailsService implements UserDetailsService {
     }
 
     @Override
-    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+    public UserPrincipal loadUserByUsername(String username) throws UsernameNotFoundException {
         var user = repo.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
-        return User.withUsername(user.getUsername()).password(user.getPasswordHash())
-                .authorities(List.of(new SimpleGrantedAuthority("ROLE_USER")))
-                .build();
+        return new UserPrincipal(user.getId(), user.getUsername(), user.getPasswordHash(),
+                List.of(new SimpleGrantedAuthority("ROLE_USER")));
     }
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+package com.kalabay.cloudstorage.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Users loaded for token authentication, so a request with a valid token usually needs no query.
+// Entries live for a fixed time after loading and the least recently used go first once full;
+// anything that changes a user evicts it (see UserCacheEvictor).
+@Component
+public class PrincipalCache implements UserCache {
+
+    // every authenticated request passes through here; see FolderTreeCache on why this is not synchronized
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public PrincipalCache(
+            MeterRegistry registry,
+            @Value("${cache.principals.max-entries:10000}") int maxEntries,
+            @Value("${cache.principals.ttl:PT5M}") Duration ttl
+    ) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.hits = Counter.builder("cache.gets").tag("cache", "principals").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("cache.gets").tag("cache", "principals").tag("result", "miss").register(registry);
+        this.evictions = Counter.builder("cache.evictions").tag("cache", "principals").register(registry);
+        Gauge.builder("cache.size", this, PrincipalCache::size).tag("cache", "principals").register(registry);
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(username);
+            if (entry != null && entry.expiresAt() > System.currentTimeMillis()) {
+                hits.increment();
+                return entry.user();
+            }
+            if (entry != null) {
+                entries.remove(username);
+            }
+            misses.increment();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        lock.lock();
+        try {
+            entries.put(user.getUsername(), new Entry(user, System.currentTimeMillis() + ttlMillis));
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        lock.lock();
+        try {
+            entries.remove(username);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // evicts now and again when the surrounding transaction ends, so a request that loaded the
+    // old row in between does not keep it cached. Entries are also matched by id, since after a
+    // rename the cached user is still under its previous name
+    public void invalidate(Long userId, String username) {
+        discard(userId, username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    discard(userId, username);
+                }
+            });
+        }
+    }
+
+    private void discard(Long userId, String username) {
+        lock.lock();
+        try {
+            entries.remove(username);
+            entries.values().removeIf(entry -> entry.user() instanceof UserPrincipal principal && userId.equals(principal.getId()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record Entry(UserDetails user, long expiresAt) {}
+}
@@ -1,6 +1,7 @@
 package com.kalabay.cloudstorage.security;
 
 import com.kalabay.cloudstorage.security.jwt.JwtAuthenticationFilter;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -39,6 +40,8 @@ public class SecurityConfig {
                 )
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/api/health", "/api/users/**", "/error", "/api/public/**").permitAll()
+                        // only reachable on management.server.port, which is not published
+                        .requestMatchers(EndpointRequest.toAnyEndpoint()).permitAll()
                         .anyRequest().authenticated()
                 )
                 .exceptionHandling(e -> e
@@ -0,0 +1,21 @@
+package com.kalabay.cloudstorage.security;
+
+import com.kalabay.cloudstorage.user.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+// JPA callbacks on User. Not a component: Hibernate asks Spring to create and wire it
+public class UserCacheEvictor {
+
+    private final PrincipalCache principals;
+
+    public UserCacheEvictor(PrincipalCache principals) {
+        this.principals = principals;
+    }
+
+    @PostUpdate
+    @PostRemove
+    void evict(User user) {
+        principals.invalidate(user.getId(), user.getUsername());
+    }
+}
@@ -0,0 +1,21 @@
+package com.kalabay.cloudstorage.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+// the authenticated user as seen by controllers; services take the id and filter on owner_id with it
+public class UserPrincipal extends User {
+
+    private final Long id;
+
+    public UserPrincipal(Long id, String username, String password, Collection<? extends GrantedAuthority> authorities) {
+        super(username, password, authorities);
+        this.id = id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
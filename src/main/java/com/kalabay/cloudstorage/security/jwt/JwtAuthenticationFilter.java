@@ -1,10 +1,13 @@
 package com.kalabay.cloudstorage.security.jwt;
 
 import com.kalabay.cloudstorage.security.CustomUserDetailsService;
+import com.kalabay.cloudstorage.security.PrincipalCache;
+import com.kalabay.cloudstorage.security.UserPrincipal;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -19,10 +22,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwt;
     private final CustomUserDetailsService users;
+    private final PrincipalCache principals;
+    private final WebAuthenticationDetailsSource details = new WebAuthenticationDetailsSource();
 
-    public JwtAuthenticationFilter(JwtService jwt, CustomUserDetailsService users) {
+    public JwtAuthenticationFilter(JwtService jwt, CustomUserDetailsService users, PrincipalCache principals) {
         this.jwt = jwt;
         this.users = users;
+        this.principals = principals;
     }
 
     @Override
@@ -33,10 +39,18 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         if (token != null && SecurityContextHolder.getContext().getAuthentication() == null) {
             try {
-                String username = jwt.validateAndGetUsername(token);
-                UserDetails userDetails = users.loadUserByUsername(username);
+                JwtService.TokenSubject subject = jwt.validate(token);
+                UserDetails userDetails = principals.getUserFromCache(subject.username());
+                if (userDetails == null) {
+                    userDetails = users.loadUserByUsername(subject.username());
+                    principals.putUserInCache(userDetails);
+                }
+                // a token for a deleted user must not authenticate a new account that took the name
+                if (subject.userId() != null && !subject.userId().equals(((UserPrincipal) userDetails).getId())) {
+                    throw new BadCredentialsException("Token does not match the user");
+                }
                 var auth = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-                auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                auth.setDetails(details.buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(auth);
             } catch (Exception ignored) {
             }
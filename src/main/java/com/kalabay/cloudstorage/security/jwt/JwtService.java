@@ -1,59 +1,91 @@
 package com.kalabay.cloudstorage.security.jwt;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+
+import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class JwtService {
 
-    private final byte[] secretKey;
+    private static final String USER_ID_CLAIM = "uid";
+
+    // both are immutable and thread-safe, so they are built once instead of per token
+    private final SecretKey secretKey;
+    private final JwtParser parser;
     private final long expMinutes;
     private final String issuer;
 
-    public JwtService(@Value("${jwt.secret}") String secret, @Value("${jwt.expMinutes:60}") long expMinutes, @Value("${jwt.issuer:cloud-storage}") String issuer) {
+    // every authenticated request pays for one validation
+    private final Timer validated;
+    private final Timer expired;
+    private final Timer rejected;
+
+    public JwtService(@Value("${jwt.secret}") String secret, @Value("${jwt.expMinutes:60}") long expMinutes, @Value("${jwt.issuer:cloud-storage}") String issuer, MeterRegistry registry) {
         if (secret == null || secret.isBlank()) {
             throw new IllegalStateException("jwt.secret must be set");
         }
-        this.secretKey = (secret.matches("^[A-Za-z0-9+/=]+$") && secret.length() % 4 == 0) ? Decoders.BASE64.decode(secret) : secret.getBytes(StandardCharsets.UTF_8);
-        if (this.secretKey.length < 32) {
+        byte[] keyBytes = (secret.matches("^[A-Za-z0-9+/=]+$") && secret.length() % 4 == 0) ? Decoders.BASE64.decode(secret) : secret.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length < 32) {
             throw new IllegalStateException("jwt.secret must be at least 32 bytes");
         }
+        this.secretKey = Keys.hmacShaKeyFor(keyBytes);
+        this.parser = Jwts.parser().verifyWith(secretKey).build();
         this.expMinutes = expMinutes;
         this.issuer = issuer;
+        this.validated = Timer.builder("jwt.validation").tag("outcome", "valid").register(registry);
+        this.expired = Timer.builder("jwt.validation").tag("outcome", "expired").register(registry);
+        this.rejected = Timer.builder("jwt.validation").tag("outcome", "invalid").register(registry);
     }
 
-    public String generateToken(String username) {
+    public String generateToken(Long userId, String username) {
         Instant now = Instant.now();
         return Jwts.builder()
                 .subject(username)
+                .claim(USER_ID_CLAIM, userId)
                 .issuer(issuer)
                 .issuedAt(Date.from(now))
                 .expiration(Date.from(now.plus(Duration.ofMinutes(expMinutes))))
-                .signWith(Keys.hmacShaKeyFor(secretKey))
+                .signWith(secretKey)
                 .compact();
     }
 
-    public String validateAndGetUsername(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(Keys.hmacShaKeyFor(secretKey))
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        if (claims.getExpiration() != null && claims.getExpiration().before(new Date())) {
-            throw new io.jsonwebtoken.ExpiredJwtException(null, claims, "Token expired");
+    // userId is null in tokens issued before it was added
+    public TokenSubject validate(String token) {
+        long start = System.nanoTime();
+        Timer outcome = rejected;
+        try {
+            Claims claims = parser.parseSignedClaims(token).getPayload();
+            if (claims.getExpiration() != null && claims.getExpiration().before(new Date())) {
+                throw new ExpiredJwtException(null, claims, "Token expired");
+            }
+            TokenSubject subject = new TokenSubject(claims.getSubject(), claims.get(USER_ID_CLAIM, Long.class));
+            outcome = validated;
+            return subject;
+        } catch (ExpiredJwtException e) {
+            outcome = expired;
+            throw e;
+        } finally {
+            outcome.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
-        return claims.getSubject(); 
     }
 
     public long getExpiresInSeconds() {
         return expMinutes * 60;
     }
+
+    public record TokenSubject(String username, Long userId) {}
 }
\ No newline at end of file
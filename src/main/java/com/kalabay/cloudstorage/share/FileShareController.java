@@ -1,9 +1,10 @@
 package com.kalabay.cloudstorage.share;
 
+import com.kalabay.cloudstorage.security.UserPrincipal;
 import com.kalabay.cloudstorage.share.dto.CreateShareRequest;
 import com.kalabay.cloudstorage.share.dto.ShareResponse;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import jakarta.validation.Valid;
@@ -21,9 +22,9 @@ public class FileShareController {
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public ShareResponse create(@PathVariable Long fileId, @Valid @RequestBody CreateShareRequest request, Authentication auth) {
+    public ShareResponse create(@PathVariable Long fileId, @Valid @RequestBody CreateShareRequest request, @AuthenticationPrincipal UserPrincipal user) {
         try {
-            var share = service.createShare(auth.getName(), fileId, request.expiresAt());
+            var share = service.createShare(user.getId(), fileId, request.expiresAt());
             return ShareResponse.fromEntity(share);
         } catch (IllegalArgumentException e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
@@ -33,9 +34,9 @@ public class FileShareController {
     }
 
     @GetMapping
-    public List<ShareResponse> list(@PathVariable Long fileId, Authentication auth) {
+    public List<ShareResponse> list(@PathVariable Long fileId, @AuthenticationPrincipal UserPrincipal user) {
         try {
-            return service.listSharesForFile(auth.getName(), fileId)
+            return service.listSharesForFile(user.getId(), fileId)
                     .stream()
                     .map(ShareResponse::fromEntity)
                     .toList();
@@ -49,10 +50,10 @@ public class FileShareController {
     public void revoke(
             @PathVariable Long fileId,
             @PathVariable Long shareId,
-            Authentication auth
+            @AuthenticationPrincipal UserPrincipal user
     ) {
         try {
-            service.revoke(auth.getName(), shareId);
+            service.revoke(user.getId(), shareId);
         } catch (IllegalArgumentException e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
         }
@@ -1,15 +1,40 @@
 package com.kalabay.cloudstorage.share;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface FileShareRepository extends JpaRepository<FileShare, Long> {
 
-    Optional<FileShare> findByToken(String token);
+    // one row with what a download needs, instead of the share plus a lazy load of its file
+    @Query("""
+        SELECT new com.kalabay.cloudstorage.share.ResolvedShare(
+            f.id, f.storageName, f.codec, f.sizeBytes, f.storedSizeBytes, f.originalName, f.contentType, f.uploadedAt, s.expiresAt, s.revoked)
+        FROM FileShare s
+        JOIN s.file f
+        WHERE s.token = :token
+        """)
+    Optional<ResolvedShare> findResolvedByToken(@Param("token") String token);
 
-    List<FileShare> findAllByFile_IdAndFile_Owner_UsernameOrderByCreatedAtDesc(Long fileId, String username);
+    // tokens that go away with the files in these folders and below, for cache eviction; the subtrees are
+    // matched by path range, so one bind parameter per root
+    @Query(value = """
+        SELECT s.token
+        FROM file_shares s
+        JOIN files fi ON fi.id = s.file_id
+        WHERE fi.folder_id IN (
+            SELECT d.id
+            FROM folders r
+            JOIN folders d ON d.path >= r.path AND d.path < left(r.path, -1) || '0'
+            WHERE r.id IN (:rootIds) AND r.owner_id = :ownerId)
+        """, nativeQuery = true)
+    List<String> findTokensInSubtrees(@Param("ownerId") Long ownerId, @Param("rootIds") Collection<Long> rootIds);
 
-    Optional<FileShare> findByIdAndFile_Owner_Username(Long shareId, String username);
+    List<FileShare> findAllByFile_IdAndFile_Owner_IdOrderByCreatedAtDesc(Long fileId, Long ownerId);
+
+    Optional<FileShare> findByIdAndFile_Owner_Id(Long shareId, Long ownerId);
 }
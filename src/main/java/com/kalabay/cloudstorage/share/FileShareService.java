@@ -1,15 +1,17 @@
 package com.kalabay.cloudstorage.share;
 
+import com.kalabay.cloudstorage.common.web.Download;
 import com.kalabay.cloudstorage.file.FileRepository;
+import com.kalabay.cloudstorage.file.FileService;
 import com.kalabay.cloudstorage.file.StoredFile;
-import org.springframework.beans.factory.annotation.Value;
+import com.kalabay.cloudstorage.file.TransferMetrics;
+import com.kalabay.cloudstorage.storage.StorageBackend;
+import com.kalabay.cloudstorage.storage.StoredContent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import java.net.MalformedURLException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
@@ -19,19 +21,36 @@ public class FileShareService {
 
     private final FileShareRepository shares;
     private final FileRepository files;
-    private final Path storageRoot;
-
-    public FileShareService(FileShareRepository shares, FileRepository files, @Value("${storage.root-dir:./data/storage}") String rootDir) {
+    private final StorageBackend storage;
+    private final ShareTokenCache tokenCache;
+    private final TransferMetrics metrics;
+
+    // public link lookups by what they came to; cache.gets{cache=shareTokens} has how many hit the cache
+    private final Counter served;
+    private final Counter notFound;
+    private final Counter revoked;
+    private final Counter expired;
+
+    public FileShareService(FileShareRepository shares, FileRepository files, StorageBackend storage, ShareTokenCache tokenCache,
+                            TransferMetrics metrics, MeterRegistry registry) {
         this.shares = shares;
         this.files = files;
-        this.storageRoot = Paths.get(rootDir)
-                .toAbsolutePath()
-                .normalize();
+        this.storage = storage;
+        this.tokenCache = tokenCache;
+        this.metrics = metrics;
+        this.served = resolutions(registry, "served");
+        this.notFound = resolutions(registry, "not_found");
+        this.revoked = resolutions(registry, "revoked");
+        this.expired = resolutions(registry, "expired");
+    }
+
+    private static Counter resolutions(MeterRegistry registry, String outcome) {
+        return Counter.builder("shares.resolutions").tag("outcome", outcome).register(registry);
     }
 
     @Transactional
-    public FileShare createShare(String username, Long fileId, Instant expiresAt) {
-        StoredFile file = files.findByIdAndOwner_Username(fileId, username)
+    public FileShare createShare(Long ownerId, Long fileId, Instant expiresAt) {
+        StoredFile file = files.findByIdAndOwner_Id(fileId, ownerId)
                 .orElseThrow(() -> new IllegalArgumentException("File not found"));
         if (expiresAt != null && !expiresAt.isAfter(Instant.now())) {
             throw new IllegalStateException("expiresAt must be in the future");
@@ -52,51 +71,50 @@ public class FileShareService {
     }
 
     @Transactional(readOnly = true)
-    public List<FileShare> listSharesForFile(String username, Long fileId) {
-        files.findByIdAndOwner_Username(fileId, username)
+    public List<FileShare> listSharesForFile(Long ownerId, Long fileId) {
+        files.findByIdAndOwner_Id(fileId, ownerId)
                 .orElseThrow(() -> new IllegalArgumentException("File not found"));
 
-        return shares.findAllByFile_IdAndFile_Owner_UsernameOrderByCreatedAtDesc(fileId, username);
+        return shares.findAllByFile_IdAndFile_Owner_IdOrderByCreatedAtDesc(fileId, ownerId);
     }
 
     @Transactional
-    public void revoke(String username, Long shareId) {
-        FileShare share = shares.findByIdAndFile_Owner_Username(shareId, username)
+    public void revoke(Long ownerId, Long shareId) {
+        FileShare share = shares.findByIdAndFile_Owner_Id(shareId, ownerId)
                 .orElseThrow(() -> new IllegalArgumentException("Share not found"));
 
         if (!share.isRevoked()) {
             share.setRevoked(true);
             shares.save(share);
+            tokenCache.invalidateToken(share.getToken());
         }
     }
 
-    @Transactional(readOnly = true)
-    public PublicDownload resolvePublicDownload(String token) {
-        FileShare share = shares.findByToken(token)
-                .orElseThrow(() -> new IllegalArgumentException("Share not found"));
+    // no transaction here: a cache hit never touches a connection
+    public PublicDownload resolvePublicDownload(String token, String acceptEncoding) {
+        ResolvedShare share = tokenCache.get(token, () -> shares.findResolvedByToken(token).orElse(null));
+        if (share == null) {
+            notFound.increment();
+            throw new IllegalArgumentException("Share not found");
+        }
 
-        if (share.isRevoked()) {
+        if (share.revoked()) {
+            revoked.increment();
             throw new IllegalStateException("Share revoked");
         }
 
-        Instant expiresAt = share.getExpiresAt();
+        Instant expiresAt = share.expiresAt();
         if (expiresAt != null && !expiresAt.isAfter(Instant.now())) {
+            expired.increment();
             throw new IllegalStateException("Share expired");
         }
 
-        StoredFile file = share.getFile();
-        Path path = storageRoot.resolve(file.getStorageName());
-
-        try {
-            Resource resource = new UrlResource(path.toUri());
-            if (!resource.exists() || !resource.isReadable()) {
-                throw new IllegalStateException("File not readable");
-            }
-            return new PublicDownload(resource, file.getOriginalName(), file.getContentType());
-        } catch (MalformedURLException e) {
-            throw new IllegalStateException("Invalid file URL", e);
-        }
+        StoredContent content = StoredContent.negotiate(storage, share.storageName(), share.codec(), share.sizeBytes(), share.storedSizeBytes(), acceptEncoding);
+        served.increment();
+        metrics.downloadedByShare(content.length());
+        return new PublicDownload(content.resource(), share.filename(), share.contentType(), content.length(),
+                content.contentEncoding(), FileService.etag(share.storageName(), content.contentEncoding()), share.uploadedAt());
     }
 
-    public record PublicDownload(Resource resource, String filename, String contentType) {}
+    public record PublicDownload(Resource resource, String filename, String contentType, long sizeBytes, String contentEncoding, String etag, Instant lastModified) implements Download {}
 }
\ No newline at end of file
@@ -1,34 +1,33 @@
 package com.kalabay.cloudstorage.share;
 
+import com.kalabay.cloudstorage.common.web.ZeroCopyDownloads;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.core.io.Resource;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-
 @RestController
 @RequestMapping("/api/public/files")
 public class PublicShareController {
 
     private final FileShareService service;
+    private final ZeroCopyDownloads downloads;
 
-    public PublicShareController(FileShareService service) {
+    public PublicShareController(FileShareService service, ZeroCopyDownloads downloads) {
         this.service = service;
+        this.downloads = downloads;
     }
 
     @GetMapping("/{token}")
-    public ResponseEntity<Resource> download(@PathVariable String token) {
-        var download = service.resolvePublicDownload(token);
-
-        String encoded = URLEncoder.encode(download.filename(), StandardCharsets.UTF_8);
-        MediaType mediaType = download.contentType() != null
-                ? MediaType.parseMediaType(download.contentType())
-                : MediaType.APPLICATION_OCTET_STREAM;
-
-        return ResponseEntity.ok()
-                .contentType(mediaType)
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename*=UTF-8''" + encoded)
-                .body(download.resource());
+    public ResponseEntity<Resource> download(
+            @PathVariable String token,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletRequest request
+    ) {
+        var download = service.resolvePublicDownload(token, acceptEncoding);
+        // no-cache: shared caches may keep the body but must revalidate, so revocation still applies
+        return downloads.build(request, download, range, ifRange, CacheControl.noCache());
     }
 }
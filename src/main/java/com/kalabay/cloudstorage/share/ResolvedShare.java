@@ -0,0 +1,19 @@
+package com.kalabay.cloudstorage.share;
+
+import com.kalabay.cloudstorage.storage.StorageCodec;
+
+import java.time.Instant;
+
+// everything a public download needs from a share and its file, detached from the persistence context
+public record ResolvedShare(
+        Long fileId,
+        String storageName,
+        StorageCodec codec,
+        long sizeBytes,
+        long storedSizeBytes,
+        String filename,
+        String contentType,
+        Instant uploadedAt,
+        Instant expiresAt,
+        boolean revoked
+) {}
@@ -0,0 +1,176 @@
+package com.kalabay.cloudstorage.share;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Resolved public share links, so a popular link is served without touching the database. Revoked
+// links are kept too (they answer without a query as well); expiry is checked on every hit from the
+// cached expiresAt. Revoking a share or deleting its file evicts it; the ttl bounds anything else.
+@Component
+public class ShareTokenCache {
+
+    // see FolderTreeCache on why this is not synchronized
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<Long, Set<String>> tokensByFile = new HashMap<>();
+    // bumped on every invalidation, so a share loaded before a write is never stored after it
+    private final AtomicLong generation = new AtomicLong();
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public ShareTokenCache(
+            MeterRegistry registry,
+            @Value("${cache.share-tokens.max-entries:50000}") int maxEntries,
+            @Value("${cache.share-tokens.ttl:PT10M}") Duration ttl
+    ) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.hits = Counter.builder("cache.gets").tag("cache", "shareTokens").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("cache.gets").tag("cache", "shareTokens").tag("result", "miss").register(registry);
+        this.evictions = Counter.builder("cache.evictions").tag("cache", "shareTokens").register(registry);
+        Gauge.builder("cache.size", this, ShareTokenCache::size).tag("cache", "shareTokens").register(registry);
+    }
+
+    // the loader runs outside the lock and returns null for an unknown token, which is not cached
+    public ResolvedShare get(String token, Supplier<ResolvedShare> loader) {
+        long loadedAt;
+        lock.lock();
+        try {
+            Entry entry = entries.get(token);
+            if (entry != null && entry.expiresAt() > System.currentTimeMillis()) {
+                hits.increment();
+                return entry.share();
+            }
+            if (entry != null) {
+                remove(token);
+            }
+            misses.increment();
+            loadedAt = generation.get();
+        } finally {
+            lock.unlock();
+        }
+
+        ResolvedShare share = loader.get();
+        if (share == null) {
+            return null;
+        }
+
+        lock.lock();
+        try {
+            if (generation.get() == loadedAt) {
+                remove(token);
+                entries.put(token, new Entry(share, System.currentTimeMillis() + ttlMillis));
+                tokensByFile.computeIfAbsent(share.fileId(), id -> new HashSet<>(2)).add(token);
+                trim();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return share;
+    }
+
+    // evicts now and again when the surrounding transaction ends, so a request that loaded the
+    // old row in between does not keep it cached
+    public void invalidateToken(String token) {
+        evict(() -> discardTokens(List.of(token)));
+    }
+
+    public void invalidateTokens(Collection<String> tokens) {
+        if (!tokens.isEmpty()) {
+            evict(() -> discardTokens(tokens));
+        }
+    }
+
+    public void invalidateFile(Long fileId) {
+        evict(() -> discardFile(fileId));
+    }
+
+    private void evict(Runnable discard) {
+        discard.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    discard.run();
+                }
+            });
+        }
+    }
+
+    private void discardTokens(Collection<String> tokens) {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            for (String token : tokens) {
+                remove(token);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void discardFile(Long fileId) {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            Set<String> tokens = tokensByFile.get(fileId);
+            if (tokens != null) {
+                for (String token : List.copyOf(tokens)) {
+                    remove(token);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(String token) {
+        Entry removed = entries.remove(token);
+        if (removed != null) {
+            unindex(token, removed.share().fileId());
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            Map.Entry<String, Entry> next = eldest.next();
+            eldest.remove();
+            unindex(next.getKey(), next.getValue().share().fileId());
+            evictions.increment();
+        }
+    }
+
+    private void unindex(String token, Long fileId) {
+        Set<String> tokens = tokensByFile.get(fileId);
+        if (tokens != null && tokens.remove(token) && tokens.isEmpty()) {
+            tokensByFile.remove(fileId);
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record Entry(ResolvedShare share, long expiresAt) {}
+}
@@ -0,0 +1,89 @@
+package com.kalabay.cloudstorage.storage;
+
+import java.nio.ByteBuffer;
+
+// A fixed amount of direct memory cut into equal blocks, allocated once: the heap only holds the
+// buffer headers, and memory freed by an eviction is reused at once instead of waiting for a GC to
+// release a direct buffer. Blocks are addressed by number; reads and writes use absolute indexes, so
+// concurrent readers never share a buffer position. Allocation is not thread-safe; the owner serializes it.
+final class BlockArena {
+
+    // a direct buffer is indexed by int, and smaller segments keep one failed allocation from being all of it
+    private static final int MAX_SEGMENT = 256 * 1024 * 1024;
+
+    private final ByteBuffer[] segments;
+    private final int blockSize;
+    private final int blocksPerSegment;
+    private final int[] free;
+    private int freeCount;
+
+    BlockArena(long capacity, int blockSize) {
+        this.blockSize = blockSize;
+        this.blocksPerSegment = MAX_SEGMENT / blockSize;
+        int blocks = Math.toIntExact(capacity / blockSize);
+        this.segments = new ByteBuffer[(blocks + blocksPerSegment - 1) / blocksPerSegment];
+        for (int i = 0; i < segments.length; i++) {
+            int count = Math.min(blocksPerSegment, blocks - i * blocksPerSegment);
+            segments[i] = ByteBuffer.allocateDirect(count * blockSize);
+        }
+        this.free = new int[blocks];
+        for (int i = 0; i < blocks; i++) {
+            free[i] = blocks - 1 - i;
+        }
+        this.freeCount = blocks;
+    }
+
+    int blockSize() {
+        return blockSize;
+    }
+
+    int blocks() {
+        return free.length;
+    }
+
+    int freeBlocks() {
+        return freeCount;
+    }
+
+    int blocksFor(long bytes) {
+        return Math.toIntExact((bytes + blockSize - 1) / blockSize);
+    }
+
+    // null when fewer than count blocks are free
+    int[] allocate(int count) {
+        if (count > freeCount) {
+            return null;
+        }
+        int[] blocks = new int[count];
+        for (int i = 0; i < count; i++) {
+            blocks[i] = free[--freeCount];
+        }
+        return blocks;
+    }
+
+    void release(int[] blocks) {
+        for (int block : blocks) {
+            free[freeCount++] = block;
+        }
+    }
+
+    void write(int block, int offset, byte[] source, int from, int length) {
+        segment(block).put(position(block, offset), source, from, length);
+    }
+
+    void read(int block, int offset, byte[] target, int from, int length) {
+        segment(block).get(position(block, offset), target, from, length);
+    }
+
+    byte read(int block, int offset) {
+        return segment(block).get(position(block, offset));
+    }
+
+    private ByteBuffer segment(int block) {
+        return segments[block / blocksPerSegment];
+    }
+
+    private int position(int block, int offset) {
+        return (block % blocksPerSegment) * blockSize + offset;
+    }
+}
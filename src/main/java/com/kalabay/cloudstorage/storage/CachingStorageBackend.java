@@ -0,0 +1,461 @@
+package com.kalabay.cloudstorage.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Small, popular blobs (logos, configs, thumbnails) kept in off-heap memory in front of the storage
+// backend, so serving them again reads neither the disk nor the bucket. Blobs are content-addressed and
+// never rewritten, so an entry only goes stale when its blob is deleted, which evicts it.
+//
+// Admission is TinyLFU: every read counts towards a key's frequency, and once the memory is full a
+// blob only gets in if it is read more often than each of the least recently used entries it would
+// push out. A burst of one-off downloads therefore cannot flush the hot set.
+public class CachingStorageBackend implements StorageBackend {
+
+    private static final int OVERSIZED_KEYS = 10_000;
+    private static final int SPARE_CHUNKS = 64;
+
+    private final StorageBackend delegate;
+    private final BlockArena arena;
+    private final long maxFileSize;
+
+    // see FolderTreeCache on why this is not synchronized
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final FrequencySketch sketch;
+    private final Set<String> loading = new HashSet<>();
+    // sizes never change, so a blob found too large once is not asked about again
+    private final Set<String> oversized = Collections.newSetFromMap(new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > OVERSIZED_KEYS;
+        }
+    });
+    // bumped on every delete, so a blob loaded before the delete is never stored after it
+    private long generation;
+    private long weight;
+
+    // copy buffers between the arena and a response, reused so that a hit allocates nothing sizeable
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(SPARE_CHUNKS);
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter admitted;
+    private final Counter rejected;
+
+    public CachingStorageBackend(StorageBackend delegate, long maxSize, long maxFileSize, int blockSize, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.arena = new BlockArena(maxSize, blockSize);
+        this.maxFileSize = maxFileSize;
+        this.sketch = new FrequencySketch(arena.blocks());
+        this.hits = Counter.builder("cache.gets").tag("cache", "hotBlobs").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("cache.gets").tag("cache", "hotBlobs").tag("result", "miss").register(registry);
+        this.evictions = Counter.builder("cache.evictions").tag("cache", "hotBlobs").register(registry);
+        this.admitted = Counter.builder("cache.admissions").tag("cache", "hotBlobs").tag("result", "admitted").register(registry);
+        this.rejected = Counter.builder("cache.admissions").tag("cache", "hotBlobs").tag("result", "rejected").register(registry);
+        Gauge.builder("cache.size", this, CachingStorageBackend::size).tag("cache", "hotBlobs").register(registry);
+        Gauge.builder("cache.weight", this, CachingStorageBackend::weight).tag("cache", "hotBlobs").baseUnit("bytes").register(registry);
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        delegate.put(key, source);
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return get(key, -1);
+    }
+
+    @Override
+    public InputStream get(String key, long size) throws IOException {
+        Entry entry = acquire(key);
+        if (entry == null) {
+            entry = load(key, size);
+        }
+        return entry != null ? new CachedStream(entry, 0, entry.length) : delegate.get(key, size);
+    }
+
+    // ranges are served from a cached blob but never load one
+    @Override
+    public InputStream openRange(String key, long offset, long length) throws IOException {
+        Entry entry = acquire(key);
+        if (entry == null) {
+            return delegate.openRange(key, offset, length);
+        }
+        long from = Math.min(offset, entry.length);
+        return new CachedStream(entry, (int) from, (int) Math.min(entry.length, from + length));
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return peek(key) >= 0 || delegate.exists(key);
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        long size = peek(key);
+        return size >= 0 ? size : delegate.size(key);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        lock.lock();
+        try {
+            generation++;
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                discard(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+        delegate.delete(key);
+    }
+
+    @Override
+    public Path localFile(String key) throws IOException {
+        return delegate.localFile(key);
+    }
+
+    // counts the read towards the key's frequency; the entry stays allocated until it is released
+    private Entry acquire(String key) {
+        lock.lock();
+        try {
+            sketch.increment(key);
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            entry.readers++;
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Entry entry) {
+        lock.lock();
+        try {
+            if (--entry.readers == 0 && entry.evicted) {
+                arena.release(entry.blocks);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the entry's length, or -1 when the key is not cached; not counted as a read
+    private long peek(String key) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            return entry != null ? entry.length : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // reads the blob into the arena when the admission policy lets it in; null when it does not, or
+    // when another request is loading it already. knownSize is the stored size, or -1 to look it up.
+    // The returned entry is acquired
+    private Entry load(String key, long knownSize) throws IOException {
+        lock.lock();
+        try {
+            if (oversized.contains(key) || loading.contains(key)) {
+                return null;
+            }
+            // looking the size up is a stat or a HEAD request, so a blob that could not push anything out
+            // is turned away before that
+            if (!mayEvictFor(key)) {
+                rejected.increment();
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        long size = knownSize >= 0 ? knownSize : delegate.size(key);
+        int[] blocks;
+        long loadedAt;
+        lock.lock();
+        try {
+            if (size > maxFileSize) {
+                oversized.add(key);
+                return null;
+            }
+            if (entries.containsKey(key) || !loading.add(key)) {
+                return null;
+            }
+            blocks = makeRoom(key, arena.blocksFor(size)) ? arena.allocate(arena.blocksFor(size)) : null;
+            if (blocks == null) {
+                loading.remove(key);
+                rejected.increment();
+                return null;
+            }
+            loadedAt = generation;
+        } finally {
+            lock.unlock();
+        }
+
+        boolean complete;
+        try {
+            complete = copyIn(key, blocks, size);
+        } catch (IOException | RuntimeException e) {
+            lock.lock();
+            try {
+                loading.remove(key);
+                arena.release(blocks);
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+
+        lock.lock();
+        try {
+            loading.remove(key);
+            if (!complete || generation != loadedAt) {
+                arena.release(blocks);
+                return null;
+            }
+            Entry entry = new Entry(blocks, (int) size);
+            entry.readers = 1;
+            entries.put(key, entry);
+            weight += size;
+            admitted.increment();
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // whether there is free memory, or an entry the candidate would win against; makeRoom() decides once
+    // the size is known
+    private boolean mayEvictFor(String key) {
+        if (arena.freeBlocks() > 0) {
+            return true;
+        }
+        int candidate = sketch.frequency(key);
+        for (Map.Entry<String, Entry> eldest : entries.entrySet()) {
+            if (eldest.getValue().readers == 0) {
+                return sketch.frequency(eldest.getKey()) < candidate;
+            }
+        }
+        return false;
+    }
+
+    // TinyLFU: evicts least recently used entries until the blob fits, as long as each of them is read
+    // less often than the candidate; entries being read right now are passed over
+    private boolean makeRoom(String key, int needed) {
+        if (needed > arena.blocks()) {
+            return false;
+        }
+        int free = arena.freeBlocks();
+        if (free >= needed) {
+            return true;
+        }
+
+        int candidate = sketch.frequency(key);
+        List<String> victims = new ArrayList<>();
+        for (Map.Entry<String, Entry> eldest : entries.entrySet()) {
+            if (eldest.getValue().readers > 0) {
+                continue;
+            }
+            if (sketch.frequency(eldest.getKey()) >= candidate) {
+                return false;
+            }
+            victims.add(eldest.getKey());
+            free += eldest.getValue().blocks.length;
+            if (free >= needed) {
+                break;
+            }
+        }
+        if (free < needed) {
+            return false;
+        }
+        for (String victim : victims) {
+            discard(entries.remove(victim));
+            evictions.increment();
+        }
+        return true;
+    }
+
+    // blocks still being read are returned by the last reader instead
+    private void discard(Entry entry) {
+        entry.evicted = true;
+        weight -= entry.length;
+        if (entry.readers == 0) {
+            arena.release(entry.blocks);
+        }
+    }
+
+    // false when the blob turns out not to be the given size; the caller then reads it uncached
+    private boolean copyIn(String key, int[] blocks, long size) throws IOException {
+        byte[] chunk = borrowChunk();
+        try (InputStream in = delegate.get(key, size)) {
+            long copied = 0;
+            for (int block : blocks) {
+                int length = (int) Math.min(arena.blockSize(), size - copied);
+                int filled = in.readNBytes(chunk, 0, length);
+                if (filled < length) {
+                    return false;
+                }
+                arena.write(block, 0, chunk, 0, filled);
+                copied += filled;
+            }
+            return in.read() < 0;
+        } finally {
+            returnChunk(chunk);
+        }
+    }
+
+    private byte[] borrowChunk() {
+        byte[] chunk = chunks.poll();
+        return chunk != null ? chunk : new byte[arena.blockSize()];
+    }
+
+    private void returnChunk(byte[] chunk) {
+        chunks.offer(chunk);
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long weight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // readers and evicted are guarded by the lock
+    private static final class Entry {
+        final int[] blocks;
+        final int length;
+        int readers;
+        boolean evicted;
+
+        Entry(int[] blocks, int length) {
+            this.blocks = blocks;
+            this.length = length;
+        }
+    }
+
+    // reads [position, end) of a cached blob straight from the arena; closing it releases the entry
+    private final class CachedStream extends InputStream {
+
+        private final Entry entry;
+        private final int end;
+        private int position;
+        private boolean closed;
+
+        private CachedStream(Entry entry, int position, int end) {
+            this.entry = entry;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            ensureOpen();
+            if (position >= end) {
+                return -1;
+            }
+            int size = arena.blockSize();
+            byte b = arena.read(entry.blocks[position / size], position % size);
+            position++;
+            return b & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            Objects.checkFromIndexSize(offset, length, buffer.length);
+            ensureOpen();
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int size = arena.blockSize();
+            int total = Math.min(length, end - position);
+            int copied = 0;
+            while (copied < total) {
+                int inBlock = position % size;
+                int n = Math.min(total - copied, size - inBlock);
+                arena.read(entry.blocks[position / size], inBlock, buffer, offset + copied, n);
+                position += n;
+                copied += n;
+            }
+            return copied;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            ensureOpen();
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += (int) skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            ensureOpen();
+            return end - position;
+        }
+
+        // a block at a time through a pooled chunk, instead of InputStream's fresh buffer per call
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            ensureOpen();
+            long transferred = 0;
+            byte[] chunk = borrowChunk();
+            try {
+                int n;
+                while ((n = read(chunk, 0, chunk.length)) > 0) {
+                    out.write(chunk, 0, n);
+                    transferred += n;
+                }
+            } finally {
+                returnChunk(chunk);
+            }
+            return transferred;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(entry);
+            }
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+        }
+    }
+}
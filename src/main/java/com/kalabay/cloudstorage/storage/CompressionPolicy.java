@@ -0,0 +1,63 @@
+package com.kalabay.cloudstorage.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+
+// Decides which codec a new blob is stored with. Only types that are known to compress well are
+// tried, since already-compressed media (images, video, archives) would just cost CPU.
+@Component
+public class CompressionPolicy {
+
+    private final StorageCodec codec;
+    private final int level;
+    private final long minSize;
+    private final double maxRatio;
+    private final List<MediaType> contentTypes;
+
+    public CompressionPolicy(
+            @Value("${storage.compression.codec:gzip}") String codec,
+            @Value("${storage.compression.level:-1}") int level,
+            @Value("${storage.compression.min-size:4KB}") DataSize minSize,
+            @Value("${storage.compression.max-ratio:0.9}") double maxRatio,
+            @Value("${storage.compression.content-types:text/*,application/json,application/*+json,application/x-ndjson,application/xml,application/*+xml,application/javascript,application/yaml,application/sql,application/csv}") List<String> contentTypes
+    ) {
+        this.codec = StorageCodec.fromName(codec);
+        this.level = level;
+        this.minSize = minSize.toBytes();
+        this.maxRatio = maxRatio;
+        this.contentTypes = MediaType.parseMediaTypes(contentTypes);
+    }
+
+    // sizeHint is the declared length, or -1 when the body is streamed without one
+    public StorageCodec select(String contentType, long sizeHint) {
+        if (codec == StorageCodec.NONE || contentType == null || (sizeHint >= 0 && sizeHint < minSize)) {
+            return StorageCodec.NONE;
+        }
+        MediaType type;
+        try {
+            type = MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            return StorageCodec.NONE;
+        }
+        for (MediaType candidate : contentTypes) {
+            if (candidate.includes(type)) {
+                return codec;
+            }
+        }
+        return StorageCodec.NONE;
+    }
+
+    public int level() {
+        return level;
+    }
+
+    // compressed copies that barely save space are not worth decoding on every read
+    public boolean worthKeeping(long sizeBytes, long storedSizeBytes) {
+        return sizeBytes >= minSize && storedSizeBytes <= sizeBytes * maxRatio;
+    }
+}
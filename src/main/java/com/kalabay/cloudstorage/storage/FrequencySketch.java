@@ -0,0 +1,72 @@
+package com.kalabay.cloudstorage.storage;
+
+// TinyLFU's popularity estimate: a count-min sketch of 4-bit counters, four per key, sixteen to a long.
+// After ten increments per slot every counter is halved, so the counts follow what is popular now
+// rather than what was popular once. Not thread-safe; the owner serializes access.
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {0x97cb3127L, 0xab3c6a2fL, 0xf5b7c11bL, 0x8a9a1d1dL};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        int length = Integer.highestOneBit(Math.max(64, expectedEntries - 1) << 1);
+        this.table = new long[length];
+        this.mask = length - 1;
+        this.sampleSize = 10 * length;
+    }
+
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int depth = 0; depth < SEEDS.length; depth++) {
+            long slot = table[index(hash, depth)];
+            frequency = Math.min(frequency, (int) ((slot >>> offset(hash, depth)) & MAX_COUNT));
+        }
+        return frequency;
+    }
+
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int depth = 0; depth < SEEDS.length; depth++) {
+            int index = index(hash, depth);
+            int offset = offset(hash, depth);
+            if (((table[index] >>> offset) & MAX_COUNT) != MAX_COUNT) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private int index(int hash, int depth) {
+        long h = (hash + SEEDS[depth]) * SEEDS[depth];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    // each depth takes its counter from a different quarter of the long
+    private static int offset(int hash, int depth) {
+        return ((depth << 2) + ((hash >>> (depth << 3)) & 3)) << 2;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
@@ -0,0 +1,180 @@
+package com.kalabay.cloudstorage.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.regex.Pattern;
+
+// Blobs live under <root>/ab/cd/<key>. Keys are SHA-256 digests or random hex, so their first
+// characters already spread evenly and are used as the shard directly.
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local", matchIfMissing = true)
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalStorageBackend.class);
+    private static final Pattern KEY = Pattern.compile("^[0-9a-f]{4,64}$");
+
+    private final Path rootDir;
+    private final boolean migrateFlatLayout;
+
+    // true until the flat layout has been migrated; while set, lookups also try <root>/<key>
+    private volatile boolean flatFallback = true;
+
+    public LocalStorageBackend(
+            @Value("${storage.root-dir:./data/storage}") String rootDir,
+            @Value("${storage.local.migrate-flat-layout:true}") boolean migrateFlatLayout
+    ) {
+        this.rootDir = Paths.get(rootDir).toAbsolutePath().normalize();
+        this.migrateFlatLayout = migrateFlatLayout;
+
+        try {
+            Files.createDirectories(this.rootDir);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create storage directory", e);
+        }
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        Path target = shardedPath(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // staging dir on another filesystem
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return Channels.newInputStream(open(key));
+    }
+
+    @Override
+    public InputStream openRange(String key, long offset, long length) throws IOException {
+        FileChannel channel = open(key);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new BoundedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(shardedPath(key)) || (flatFallback && Files.exists(flatPath(key)));
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return Files.size(locate(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        // flat first: a file the migration moves in between is then caught at its sharded path
+        if (flatFallback) {
+            Files.deleteIfExists(flatPath(key));
+        }
+        Files.deleteIfExists(shardedPath(key));
+    }
+
+    @Override
+    public Path localFile(String key) {
+        Path path = locate(key);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startFlatLayoutMigration() {
+        if (!migrateFlatLayout) {
+            return;
+        }
+        Thread.ofPlatform()
+                .name("storage-layout-migration")
+                .daemon()
+                .start(this::migrateFlatLayout);
+    }
+
+    // moves <root>/<key> files into their shard while the application keeps serving;
+    // readers fall back to the flat path until this finishes
+    public int migrateFlatLayout() {
+        int moved = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(rootDir, Files::isRegularFile)) {
+            for (Path entry : entries) {
+                String key = entry.getFileName().toString();
+                if (!KEY.matcher(key).matches()) {
+                    continue;
+                }
+                Path target = shardedPath(key);
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(entry, target, StandardCopyOption.ATOMIC_MOVE);
+                    moved++;
+                } catch (NoSuchFileException ignored) {
+                    // deleted concurrently
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Flat storage layout migration stopped after {} files", moved, e);
+            return moved;
+        }
+
+        flatFallback = false;
+        if (moved > 0) {
+            log.info("Moved {} files from the flat storage layout into shard directories", moved);
+        }
+        return moved;
+    }
+
+    private FileChannel open(String key) throws IOException {
+        try {
+            return FileChannel.open(locate(key), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            if (!flatFallback) {
+                throw e;
+            }
+            // moved by the migration between locate() and open()
+            return FileChannel.open(shardedPath(key), StandardOpenOption.READ);
+        }
+    }
+
+    private Path locate(String key) {
+        Path sharded = shardedPath(key);
+        if (!flatFallback || Files.exists(sharded)) {
+            return sharded;
+        }
+        Path flat = flatPath(key);
+        // the migration may move the file between the two checks, in which case it is sharded now
+        return Files.exists(flat) ? flat : sharded;
+    }
+
+    private Path shardedPath(String key) {
+        checkKey(key);
+        return rootDir.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    private Path flatPath(String key) {
+        checkKey(key);
+        return rootDir.resolve(key);
+    }
+
+    private static void checkKey(String key) {
+        if (key == null || !KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid storage key");
+        }
+    }
+}
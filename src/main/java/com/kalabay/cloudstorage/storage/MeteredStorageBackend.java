@@ -0,0 +1,158 @@
+package com.kalabay.cloudstorage.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Times every storage call (storage.requests, by operation and outcome) and counts the bytes moved
+// (storage.bytes). get and openRange are timed up to the open stream; the bytes are counted as the
+// caller reads them, so a download's disk or S3 share shows up next to http.server.requests.
+public class MeteredStorageBackend implements StorageBackend {
+
+    private final StorageBackend delegate;
+    private final Counter bytesRead;
+    private final Counter bytesWritten;
+    // registered once; time() runs on every storage call
+    private final Timers puts;
+    private final Timers gets;
+    private final Timers rangeOpens;
+    private final Timers existsChecks;
+    private final Timers sizeLookups;
+    private final Timers deletes;
+    private final Timers localFileLookups;
+
+    public MeteredStorageBackend(StorageBackend delegate, String backend, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.puts = Timers.register(registry, backend, "put");
+        this.gets = Timers.register(registry, backend, "get");
+        this.rangeOpens = Timers.register(registry, backend, "openRange");
+        this.existsChecks = Timers.register(registry, backend, "exists");
+        this.sizeLookups = Timers.register(registry, backend, "size");
+        this.deletes = Timers.register(registry, backend, "delete");
+        this.localFileLookups = Timers.register(registry, backend, "localFile");
+        this.bytesRead = Counter.builder("storage.bytes").tag("backend", backend).tag("direction", "read").baseUnit("bytes").register(registry);
+        this.bytesWritten = Counter.builder("storage.bytes").tag("backend", backend).tag("direction", "write").baseUnit("bytes").register(registry);
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        // the source is gone afterwards, so it is measured first
+        long size = Files.size(source);
+        time(puts, () -> {
+            delegate.put(key, source);
+            return null;
+        });
+        bytesWritten.increment(size);
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return new CountingInputStream(time(gets, () -> delegate.get(key)));
+    }
+
+    @Override
+    public InputStream get(String key, long size) throws IOException {
+        return new CountingInputStream(time(gets, () -> delegate.get(key, size)));
+    }
+
+    @Override
+    public InputStream openRange(String key, long offset, long length) throws IOException {
+        return new CountingInputStream(time(rangeOpens, () -> delegate.openRange(key, offset, length)));
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return time(existsChecks, () -> delegate.exists(key));
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return time(sizeLookups, () -> delegate.size(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        time(deletes, () -> {
+            delegate.delete(key);
+            return null;
+        });
+    }
+
+    // bytes sent from this file bypass the streams above and are not in storage.bytes
+    @Override
+    public Path localFile(String key) throws IOException {
+        return time(localFileLookups, () -> delegate.localFile(key));
+    }
+
+    private <T> T time(Timers timers, StorageCall<T> call) throws IOException {
+        long start = System.nanoTime();
+        Timer outcome = timers.error();
+        try {
+            T result = call.run();
+            outcome = timers.success();
+            return result;
+        } finally {
+            outcome.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private record Timers(Timer success, Timer error) {
+        static Timers register(MeterRegistry registry, String backend, String operation) {
+            return new Timers(timer(registry, backend, operation, "success"), timer(registry, backend, operation, "error"));
+        }
+
+        private static Timer timer(MeterRegistry registry, String backend, String operation, String outcome) {
+            return Timer.builder("storage.requests")
+                    .tag("backend", backend)
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .register(registry);
+        }
+    }
+
+    @FunctionalInterface
+    private interface StorageCall<T> {
+        T run() throws IOException;
+    }
+
+    private final class CountingInputStream extends FilterInputStream {
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytesRead.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                bytesRead.increment(n);
+            }
+            return n;
+        }
+
+        // FilterInputStream does not forward this, and InputStream's version counts through read() already
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            long n = in.transferTo(out);
+            bytesRead.increment(n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.kalabay.cloudstorage.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.Future;
+
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3")
+public class S3StorageBackend implements StorageBackend, AutoCloseable {
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String prefix;
+    private final long multipartThreshold;
+    private final long partSize;
+    private final ExecutorService partUploads;
+
+    public S3StorageBackend(
+            @Value("${storage.s3.bucket}") String bucket,
+            @Value("${storage.s3.region:us-east-1}") String region,
+            @Value("${storage.s3.endpoint:}") String endpoint,
+            @Value("${storage.s3.access-key:}") String accessKey,
+            @Value("${storage.s3.secret-key:}") String secretKey,
+            @Value("${storage.s3.path-style-access:false}") boolean pathStyleAccess,
+            @Value("${storage.s3.prefix:}") String prefix,
+            @Value("${storage.s3.max-connections:50}") int maxConnections,
+            @Value("${storage.s3.multipart-threshold:64MB}") DataSize multipartThreshold,
+            @Value("${storage.s3.part-size:16MB}") DataSize partSize,
+            @Value("${storage.s3.upload-concurrency:8}") int uploadConcurrency,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        if (bucket == null || bucket.isBlank()) {
+            throw new IllegalStateException("storage.s3.bucket must be set");
+        }
+        // S3 rejects non-final parts below 5 MiB
+        if (partSize.toBytes() < DataSize.ofMegabytes(5).toBytes()) {
+            throw new IllegalStateException("storage.s3.part-size must be at least 5MB");
+        }
+
+        AwsCredentialsProvider credentials = accessKey.isBlank()
+                ? DefaultCredentialsProvider.builder().build()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .forcePathStyle(pathStyleAccess)
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(maxConnections)
+                        .connectionTimeout(Duration.ofSeconds(5))
+                        .connectionAcquisitionTimeout(Duration.ofSeconds(30)));
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+
+        this.s3 = builder.build();
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.multipartThreshold = multipartThreshold.toBytes();
+        this.partSize = partSize.toBytes();
+        // the pool only bounds concurrency, so its threads can be virtual when the rest of the app runs on them
+        ThreadFactory threads = virtualThreads
+                ? Thread.ofVirtual().name("s3-part-upload-", 0).factory()
+                : Thread.ofPlatform().name("s3-part-upload-", 0).daemon().factory();
+        this.partUploads = Executors.newFixedThreadPool(uploadConcurrency, threads);
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        long size = Files.size(source);
+        try {
+            if (size < multipartThreshold) {
+                s3.putObject(b -> b.bucket(bucket).key(objectKey(key)), RequestBody.fromFile(source));
+            } else {
+                putMultipart(objectKey(key), source, size);
+            }
+        } catch (SdkException e) {
+            throw new IOException("Failed to upload " + key, e);
+        }
+        Files.deleteIfExists(source);
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        try {
+            return s3.getObject(b -> b.bucket(bucket).key(objectKey(key)));
+        } catch (SdkException e) {
+            throw new IOException("Failed to read " + key, e);
+        }
+    }
+
+    @Override
+    public InputStream openRange(String key, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        String range = "bytes=" + offset + "-" + (offset + length - 1);
+        try {
+            return s3.getObject(b -> b.bucket(bucket).key(objectKey(key)).range(range));
+        } catch (SdkException e) {
+            throw new IOException("Failed to read " + key, e);
+        }
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return head(key) != null;
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        HeadObjectResponse head = head(key);
+        if (head == null) {
+            throw new NoSuchFileException(key);
+        }
+        return head.contentLength();
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3.deleteObject(b -> b.bucket(bucket).key(objectKey(key)));
+        } catch (SdkException e) {
+            throw new IOException("Failed to delete " + key, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        partUploads.shutdownNow();
+        s3.close();
+    }
+
+    private HeadObjectResponse head(String key) throws IOException {
+        try {
+            return s3.headObject(b -> b.bucket(bucket).key(objectKey(key)));
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            throw new IOException("Failed to stat " + key, e);
+        } catch (SdkException e) {
+            throw new IOException("Failed to stat " + key, e);
+        }
+    }
+
+    private void putMultipart(String objectKey, Path source, long size) throws IOException {
+        String uploadId = s3.createMultipartUpload(b -> b.bucket(bucket).key(objectKey)).uploadId();
+        try {
+            int parts = (int) ((size + partSize - 1) / partSize);
+            List<Future<CompletedPart>> futures = new ArrayList<>(parts);
+            for (int i = 0; i < parts; i++) {
+                int partNumber = i + 1;
+                long offset = i * partSize;
+                long length = Math.min(partSize, size - offset);
+                futures.add(partUploads.submit(() -> uploadPart(objectKey, uploadId, partNumber, source, offset, length)));
+            }
+
+            List<CompletedPart> completed = new ArrayList<>(parts);
+            for (Future<CompletedPart> future : futures) {
+                completed.add(future.get());
+            }
+
+            s3.completeMultipartUpload(b -> b
+                    .bucket(bucket)
+                    .key(objectKey)
+                    .uploadId(uploadId)
+                    .multipartUpload(m -> m.parts(completed)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(objectKey, uploadId);
+            throw new IOException("Interrupted while uploading " + objectKey, e);
+        } catch (ExecutionException | RuntimeException e) {
+            abort(objectKey, uploadId);
+            throw new IOException("Failed to upload " + objectKey, e instanceof ExecutionException ? e.getCause() : e);
+        }
+    }
+
+    private CompletedPart uploadPart(String objectKey, String uploadId, int partNumber, Path source, long offset, long length) {
+        // a fresh stream per attempt keeps SDK retries possible without buffering the part in memory
+        RequestBody body = RequestBody.fromContentProvider(() -> openSlice(source, offset, length), length, "application/octet-stream");
+        UploadPartResponse response = s3.uploadPart(b -> b
+                .bucket(bucket)
+                .key(objectKey)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength(length), body);
+        return CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build();
+    }
+
+    private InputStream openSlice(Path source, long offset, long length) {
+        try {
+            FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+            try {
+                channel.position(offset);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            return new BoundedInputStream(Channels.newInputStream(channel), length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void abort(String objectKey, String uploadId) {
+        try {
+            s3.abortMultipartUpload(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId));
+        } catch (SdkException ignored) {}
+    }
+
+    private String objectKey(String key) {
+        return prefix + key;
+    }
+}
@@ -0,0 +1,33 @@
+package com.kalabay.cloudstorage.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+public interface StorageBackend {
+
+    // takes ownership of a complete local file; it is moved or uploaded and must not be used afterwards
+    void put(String key, Path source) throws IOException;
+
+    InputStream get(String key) throws IOException;
+
+    // get() for a caller that already knows the stored size from the file's metadata, so a backend that
+    // needs it does not have to look it up
+    default InputStream get(String key, long size) throws IOException {
+        return get(key);
+    }
+
+    InputStream openRange(String key, long offset, long length) throws IOException;
+
+    boolean exists(String key) throws IOException;
+
+    long size(String key) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    // the file holding the blob when this backend keeps blobs on a local filesystem, so it can be sent
+    // without copying it through the JVM; null otherwise, and when the blob is missing
+    default Path localFile(String key) throws IOException {
+        return null;
+    }
+}
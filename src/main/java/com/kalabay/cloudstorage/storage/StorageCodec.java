@@ -0,0 +1,104 @@
+package com.kalabay.cloudstorage.storage;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// How blob bytes are encoded at rest. The names of the compressed codecs are also their
+// HTTP content-coding tokens, so a stored blob can be sent unchanged to a client that accepts it.
+public enum StorageCodec {
+
+    NONE(null) {
+        @Override
+        public OutputStream encode(OutputStream out, int level) {
+            return out;
+        }
+
+        @Override
+        public InputStream decode(InputStream in) {
+            return in;
+        }
+    },
+
+    GZIP("gzip") {
+        @Override
+        public OutputStream encode(OutputStream out, int level) throws IOException {
+            return new GZIPOutputStream(out, STREAM_BUFFER) {
+                {
+                    def.setLevel(level < 0 ? Deflater.DEFAULT_COMPRESSION : level);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new GZIPInputStream(in, STREAM_BUFFER);
+        }
+    },
+
+    ZSTD("zstd") {
+        @Override
+        public OutputStream encode(OutputStream out, int level) throws IOException {
+            return new ZstdOutputStream(out, level < 0 ? 3 : level);
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new ZstdInputStream(in);
+        }
+    };
+
+    private static final int STREAM_BUFFER = 64 * 1024;
+
+    private final String contentEncoding;
+
+    StorageCodec(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    // closing the returned stream finishes the encoding and closes out
+    public abstract OutputStream encode(OutputStream out, int level) throws IOException;
+
+    public abstract InputStream decode(InputStream in) throws IOException;
+
+    public String contentEncoding() {
+        return contentEncoding;
+    }
+
+    // RFC 9110 12.5.3: a coding is acceptable when listed (or matched by *) without q=0
+    public boolean acceptedBy(String acceptEncoding) {
+        if (contentEncoding == null || acceptEncoding == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim().toLowerCase(Locale.ROOT);
+                if (param.startsWith("q=")) {
+                    refused = param.substring(2).trim().matches("0(\\.0{0,3})?");
+                }
+            }
+            if (coding.equals(contentEncoding)) {
+                return !refused;
+            }
+            if (coding.equals("*")) {
+                wildcard = !refused;
+            }
+        }
+        return wildcard;
+    }
+
+    public static StorageCodec fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,37 @@
+package com.kalabay.cloudstorage.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+public class StorageConfig {
+
+    // what everything else injects: whichever backend storage.backend selected, metered, behind the hot
+    // blob cache when that is on (outside the meters, so storage.* shows what still reaches the backend).
+    // The backends stay beans of their own, so their lifecycle callbacks (migration, close) are untouched
+    @Bean
+    @Primary
+    public StorageBackend storageBackend(
+            ObjectProvider<LocalStorageBackend> local,
+            ObjectProvider<S3StorageBackend> s3,
+            MeterRegistry registry,
+            @Value("${cache.hot-blobs.enabled:false}") boolean hotBlobs,
+            @Value("${cache.hot-blobs.max-size:64MB}") DataSize maxSize,
+            @Value("${cache.hot-blobs.max-file-size:256KB}") DataSize maxFileSize,
+            @Value("${cache.hot-blobs.block-size:4KB}") DataSize blockSize
+    ) {
+        S3StorageBackend remote = s3.getIfAvailable();
+        StorageBackend metered = remote != null
+                ? new MeteredStorageBackend(remote, "s3", registry)
+                : new MeteredStorageBackend(local.getObject(), "local", registry);
+        if (!hotBlobs) {
+            return metered;
+        }
+        return new CachingStorageBackend(metered, maxSize.toBytes(), maxFileSize.toBytes(), Math.toIntExact(blockSize.toBytes()), registry);
+    }
+}
@@ -0,0 +1,106 @@
+package com.kalabay.cloudstorage.storage;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+// size comes from file metadata, so building the response (and answering 304) never touches the backend;
+// the stream is opened lazily so that a leading skip() from Range handling becomes a ranged open
+public class StorageResource extends AbstractResource {
+
+    private final StorageBackend storage;
+    private final String key;
+    private final long size;
+
+    public StorageResource(StorageBackend storage, String key, long size) {
+        this.storage = storage;
+        this.key = key;
+        this.size = size;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Path localFile() throws IOException {
+        return storage.localFile(key);
+    }
+
+    @Override
+    public boolean exists() {
+        try {
+            return storage.exists(key);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public long contentLength() {
+        return size;
+    }
+
+    @Override
+    public String getFilename() {
+        return key;
+    }
+
+    @Override
+    public String getDescription() {
+        return "storage [" + key + "]";
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new LazyStream();
+    }
+
+    private final class LazyStream extends InputStream {
+
+        private long position;
+        private InputStream delegate;
+
+        private InputStream open() throws IOException {
+            if (delegate == null) {
+                delegate = position == 0 ? storage.get(key, size) : storage.openRange(key, position, size - position);
+            }
+            return delegate;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (delegate != null) {
+                return delegate.skip(n);
+            }
+            long skipped = Math.max(0, Math.min(n, size - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return open().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return open().read(b, off, len);
+        }
+
+        // lets the backend's stream copy in its own way (the hot blob cache reuses its buffers)
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            return open().transferTo(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (delegate != null) {
+                delegate.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.kalabay.cloudstorage.storage;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+// The representation of a blob sent for one request: the stored bytes as they are when the client
+// accepts their coding (no CPU spent, and Range applies to the encoded bytes), otherwise decoded on the fly.
+public record StoredContent(Resource resource, long length, String contentEncoding) {
+
+    public static StoredContent negotiate(StorageBackend storage, String key, StorageCodec codec, long sizeBytes, long storedSizeBytes, String acceptEncoding) {
+        StorageResource stored = new StorageResource(storage, key, storedSizeBytes);
+        if (codec == StorageCodec.NONE) {
+            return new StoredContent(stored, sizeBytes, null);
+        }
+        if (codec.acceptedBy(acceptEncoding)) {
+            return new StoredContent(stored, storedSizeBytes, codec.contentEncoding());
+        }
+        return new StoredContent(new DecodedResource(stored, codec, sizeBytes), sizeBytes, null);
+    }
+
+    private static final class DecodedResource extends AbstractResource {
+
+        private final StorageResource stored;
+        private final StorageCodec codec;
+        private final long size;
+
+        private DecodedResource(StorageResource stored, StorageCodec codec, long size) {
+            this.stored = stored;
+            this.codec = codec;
+            this.size = size;
+        }
+
+        @Override
+        public boolean exists() {
+            return stored.exists();
+        }
+
+        @Override
+        public long contentLength() {
+            return size;
+        }
+
+        @Override
+        public String getFilename() {
+            return stored.getFilename();
+        }
+
+        @Override
+        public String getDescription() {
+            return codec.name().toLowerCase(Locale.ROOT) + " " + stored.getDescription();
+        }
+
+        // a range inside the decoded bytes cannot be mapped to the stored ones, so skips decode and discard
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return codec.decode(stored.getInputStream());
+        }
+    }
+}
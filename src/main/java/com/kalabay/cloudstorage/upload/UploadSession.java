@@ -0,0 +1,53 @@
+package com.kalabay.cloudstorage.upload;
+
+import com.kalabay.cloudstorage.folder.Folder;
+import com.kalabay.cloudstorage.user.User;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import java.time.Instant;
+
+@Entity
+@Table(name = "upload_sessions")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadSession {
+
+    @Id
+    @Column(length = 32)
+    private String id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "owner_id", nullable = false)
+    private User owner;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "folder_id")
+    private Folder folder;
+
+    @Column(name = "file_name", nullable = false, length = 255)
+    private String fileName;
+
+    @Column(name = "content_type", length = 255)
+    private String contentType;
+
+    @Column(name = "total_size", nullable = false)
+    private long totalSize;
+
+    @Column(name = "chunk_size", nullable = false)
+    private long chunkSize;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    public int getChunkCount() {
+        return (int) ((totalSize + chunkSize - 1) / chunkSize);
+    }
+}
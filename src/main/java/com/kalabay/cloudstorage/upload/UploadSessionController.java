@@ -0,0 +1,60 @@
+package com.kalabay.cloudstorage.upload;
+
+import com.kalabay.cloudstorage.file.dto.FileResponse;
+import com.kalabay.cloudstorage.security.UserPrincipal;
+import com.kalabay.cloudstorage.upload.dto.CreateUploadSessionRequest;
+import com.kalabay.cloudstorage.upload.dto.UploadSessionResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/files/uploads")
+public class UploadSessionController {
+
+    private final UploadSessionService service;
+
+    public UploadSessionController(UploadSessionService service) {
+        this.service = service;
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public UploadSessionResponse create(@Valid @RequestBody CreateUploadSessionRequest request, @AuthenticationPrincipal UserPrincipal user) {
+        var session = service.create(user.getId(), request.filename(), request.contentType(), request.totalSize(), request.chunkSize(), request.folderId());
+        return UploadSessionResponse.fromEntity(session);
+    }
+
+    @GetMapping("/{id}")
+    public UploadSessionResponse status(@PathVariable String id, @AuthenticationPrincipal UserPrincipal user) {
+        return UploadSessionResponse.fromStatus(service.status(user.getId(), id));
+    }
+
+    @PutMapping(value = "/{id}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void uploadChunk(
+            @PathVariable String id,
+            @PathVariable int index,
+            HttpServletRequest request,
+            @AuthenticationPrincipal UserPrincipal user
+    ) throws IOException {
+        service.writeChunk(user.getId(), id, index, request.getContentLengthLong(), request.getInputStream());
+    }
+
+    @PostMapping("/{id}/commit")
+    @ResponseStatus(HttpStatus.CREATED)
+    public FileResponse commit(@PathVariable String id, @AuthenticationPrincipal UserPrincipal user) {
+        return FileResponse.fromEntity(service.commit(user.getId(), id));
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void abort(@PathVariable String id, @AuthenticationPrincipal UserPrincipal user) {
+        service.abort(user.getId(), id);
+    }
+}
@@ -0,0 +1,48 @@
+package com.kalabay.cloudstorage.upload;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    Optional<UploadSession> findByIdAndOwner_Id(String id, Long ownerId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<UploadSession> findLockedByIdAndOwner_Id(String id, Long ownerId);
+
+    @Query("SELECT s.id FROM UploadSession s WHERE s.expiresAt < :now")
+    List<String> findExpiredIds(@Param("now") Instant now);
+
+    @Transactional
+    @Modifying
+    @Query(value = """
+        INSERT INTO upload_chunks (session_id, chunk_index, size_bytes)
+        VALUES (:sessionId, :index, :size)
+        ON CONFLICT (session_id, chunk_index) DO NOTHING
+        """, nativeQuery = true)
+    int insertChunk(@Param("sessionId") String sessionId, @Param("index") int index, @Param("size") long size);
+
+    @Query(value = """
+        SELECT c.chunk_index
+        FROM upload_chunks c
+        WHERE c.session_id = :sessionId
+        ORDER BY c.chunk_index
+        """, nativeQuery = true)
+    List<Integer> findChunkIndexes(@Param("sessionId") String sessionId);
+
+    @Query(value = """
+        SELECT COALESCE(SUM(c.size_bytes), 0)
+        FROM upload_chunks c
+        WHERE c.session_id = :sessionId
+        """, nativeQuery = true)
+    long sumReceivedBytes(@Param("sessionId") String sessionId);
+}
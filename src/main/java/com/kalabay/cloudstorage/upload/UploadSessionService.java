@@ -0,0 +1,302 @@
+package com.kalabay.cloudstorage.upload;
+
+import com.kalabay.cloudstorage.common.exception.BadRequestException;
+import com.kalabay.cloudstorage.common.exception.ConflictException;
+import com.kalabay.cloudstorage.common.exception.NotFoundException;
+import com.kalabay.cloudstorage.file.Blob;
+import com.kalabay.cloudstorage.file.BlobStore;
+import com.kalabay.cloudstorage.file.FileRepository;
+import com.kalabay.cloudstorage.file.StoredFile;
+import com.kalabay.cloudstorage.folder.Folder;
+import com.kalabay.cloudstorage.folder.FolderRepository;
+import com.kalabay.cloudstorage.user.User;
+import com.kalabay.cloudstorage.user.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+@Service
+public class UploadSessionService {
+
+    private final UploadSessionRepository sessions;
+    private final FileRepository files;
+    private final UserRepository users;
+    private final FolderRepository folders;
+    private final BlobStore blobs;
+    private final TransactionTemplate transactions;
+    private final Path stagingDir;
+    private final long maxChunkSize;
+    private final long maxFileSize;
+    private final Duration sessionTtl;
+
+    public UploadSessionService(
+            UploadSessionRepository sessions,
+            FileRepository files,
+            UserRepository users,
+            FolderRepository folders,
+            BlobStore blobs,
+            TransactionTemplate transactions,
+            @Value("${storage.upload.staging-dir:./data/uploads}") String stagingDir,
+            @Value("${storage.upload.max-chunk-size:16MB}") DataSize maxChunkSize,
+            @Value("${storage.upload.max-file-size:10GB}") DataSize maxFileSize,
+            @Value("${storage.upload.session-ttl:24h}") Duration sessionTtl
+    ) {
+        this.sessions = sessions;
+        this.files = files;
+        this.users = users;
+        this.folders = folders;
+        this.blobs = blobs;
+        this.transactions = transactions;
+        this.stagingDir = Paths.get(stagingDir).toAbsolutePath().normalize();
+        this.maxChunkSize = maxChunkSize.toBytes();
+        this.maxFileSize = maxFileSize.toBytes();
+        this.sessionTtl = sessionTtl;
+
+        try {
+            Files.createDirectories(this.stagingDir);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create storage directory", e);
+        }
+    }
+
+    @Transactional
+    public UploadSession create(Long ownerId, String fileName, String contentType, long totalSize, Long chunkSize, Long folderId) {
+        if (fileName == null || fileName.isBlank()) {
+            throw new BadRequestException("{file.upload.filename}");
+        }
+        if (totalSize <= 0) {
+            throw new BadRequestException("{file.upload.empty}");
+        }
+        if (totalSize > maxFileSize) {
+            throw new BadRequestException("File too large");
+        }
+
+        long chunk = chunkSize != null ? chunkSize : maxChunkSize;
+        if (chunk <= 0 || chunk > maxChunkSize) {
+            throw new BadRequestException("Chunk size must be between 1 and " + maxChunkSize + " bytes");
+        }
+        if ((totalSize + chunk - 1) / chunk > Integer.MAX_VALUE) {
+            throw new BadRequestException("Too many chunks");
+        }
+
+        User owner = users.getReferenceById(ownerId);
+
+        Folder folder = null;
+        if (folderId != null) {
+            folder = folders.findByIdAndOwner_Id(folderId, ownerId)
+                    .orElseThrow(() -> new NotFoundException("Folder not found"));
+        }
+
+        UploadSession session = UploadSession.builder()
+                .id(UUID.randomUUID().toString().replace("-", ""))
+                .owner(owner)
+                .folder(folder)
+                .fileName(fileName.trim())
+                .contentType(contentType)
+                .totalSize(totalSize)
+                .chunkSize(chunk)
+                .expiresAt(Instant.now().plus(sessionTtl))
+                .build();
+
+        // sparse part file of the final size, so chunks can land at any offset in any order
+        try (RandomAccessFile part = new RandomAccessFile(partFile(session.getId()).toFile(), "rw")) {
+            part.setLength(totalSize);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create upload session", e);
+        }
+
+        return sessions.save(session);
+    }
+
+    @Transactional(readOnly = true)
+    public SessionStatus status(Long ownerId, String sessionId) {
+        UploadSession session = findActive(ownerId, sessionId);
+        return new SessionStatus(session, sessions.findChunkIndexes(sessionId), sessions.sumReceivedBytes(sessionId));
+    }
+
+    // no transaction around the body copy: the connection is only taken for the lookup and the chunk insert
+    public void writeChunk(Long ownerId, String sessionId, int index, long contentLength, InputStream body) {
+        UploadSession session = findActive(ownerId, sessionId);
+
+        if (index < 0 || index >= session.getChunkCount()) {
+            throw new BadRequestException("Chunk index out of range");
+        }
+
+        long offset = index * session.getChunkSize();
+        long expected = Math.min(session.getChunkSize(), session.getTotalSize() - offset);
+        if (contentLength >= 0 && contentLength != expected) {
+            throw new BadRequestException("Chunk " + index + " must be " + expected + " bytes");
+        }
+
+        try (FileChannel channel = FileChannel.open(partFile(sessionId), StandardOpenOption.WRITE);
+             ReadableByteChannel source = Channels.newChannel(body)) {
+            long written = 0;
+            while (written < expected) {
+                long n = channel.transferFrom(source, offset + written, expected - written);
+                if (n <= 0) break;
+                written += n;
+            }
+            if (written != expected || body.read() != -1) {
+                throw new BadRequestException("Chunk " + index + " must be " + expected + " bytes");
+            }
+        } catch (NoSuchFileException e) {
+            throw new NotFoundException("Upload session not found");
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to store chunk", e);
+        }
+
+        sessions.insertChunk(sessionId, index, expected);
+    }
+
+    // the assembled file is hashed, encoded and put into storage without a transaction, like
+    // FileService.uploadStream; only the session lock, the blob upsert and the file insert run in one.
+    // Renaming the part file first keeps chunk writes and a second commit of the same session away from it meanwhile
+    public StoredFile commit(Long ownerId, String sessionId) {
+        UploadSession session = findActive(ownerId, sessionId);
+
+        long received = sessions.sumReceivedBytes(sessionId);
+        if (received != session.getTotalSize()) {
+            int chunks = sessions.findChunkIndexes(sessionId).size();
+            throw new ConflictException("Upload is incomplete: " + chunks + " of " + session.getChunkCount() + " chunks received");
+        }
+
+        Path claimed = claim(sessionId);
+        BlobStore.StagedBlob staged = null;
+        boolean committed = false;
+        try {
+            staged = blobs.adopt(claimed, session.getContentType());
+            BlobStore.StagedBlob blob = blobs.store(staged);
+            StoredFile file;
+            try {
+                file = transactions.execute(status -> save(ownerId, sessionId, blob));
+            } catch (RuntimeException e) {
+                blobs.abandon(List.of(blob));
+                throw e;
+            }
+            committed = true;
+            return file;
+        } finally {
+            if (staged != null && !staged.path().equals(claimed)) {
+                blobs.discard(staged);
+            }
+            if (committed) {
+                deleteQuietly(claimed);
+            } else {
+                unclaim(claimed, sessionId);
+            }
+        }
+    }
+
+    private StoredFile save(Long ownerId, String sessionId, BlobStore.StagedBlob staged) {
+        // aborted or expired while the file was being hashed
+        UploadSession session = sessions.findLockedByIdAndOwner_Id(sessionId, ownerId)
+                .filter(s -> s.getExpiresAt().isAfter(Instant.now()))
+                .orElseThrow(() -> new NotFoundException("Upload session not found"));
+
+        Blob blob = blobs.commit(staged);
+
+        StoredFile file = StoredFile.builder()
+                .owner(session.getOwner())
+                .folder(session.getFolder())
+                .originalName(session.getFileName())
+                .storageName(blob.getStorageName())
+                .contentType(session.getContentType())
+                .sizeBytes(session.getTotalSize())
+                .codec(blob.getCodec())
+                .storedSizeBytes(blob.getStoredSizeBytes())
+                .build();
+
+        sessions.delete(session);
+        return files.save(file);
+    }
+
+    private Path claim(String sessionId) {
+        Path claimed = claimedFile(sessionId);
+        try {
+            return Files.move(partFile(sessionId), claimed, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            throw new ConflictException("Upload is already being committed");
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to commit upload", e);
+        }
+    }
+
+    // a failed commit leaves the session as it was, so the client can retry; unless the session is gone,
+    // or the file already went into storage before the transaction failed
+    private void unclaim(Path claimed, String sessionId) {
+        if (!Files.exists(claimed)) {
+            sessions.deleteById(sessionId);
+            return;
+        }
+        if (!sessions.existsById(sessionId)) {
+            deleteQuietly(claimed);
+            return;
+        }
+        try {
+            Files.move(claimed, partFile(sessionId), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ignored) {}
+    }
+
+    @Transactional
+    public void abort(Long ownerId, String sessionId) {
+        UploadSession session = sessions.findByIdAndOwner_Id(sessionId, ownerId)
+                .orElseThrow(() -> new NotFoundException("Upload session not found"));
+
+        sessions.delete(session);
+        try {
+            Files.deleteIfExists(partFile(sessionId));
+        } catch (IOException ignored) {}
+    }
+
+    @Scheduled(fixedDelayString = "${storage.upload.cleanup-interval:PT1H}")
+    @Transactional
+    public void purgeExpired() {
+        List<String> expired = sessions.findExpiredIds(Instant.now());
+        if (expired.isEmpty()) {
+            return;
+        }
+        for (String id : expired) {
+            deleteQuietly(partFile(id));
+            // left behind by a commit that never finished
+            deleteQuietly(claimedFile(id));
+        }
+        sessions.deleteAllByIdInBatch(expired);
+    }
+
+    private UploadSession findActive(Long ownerId, String sessionId) {
+        return sessions.findByIdAndOwner_Id(sessionId, ownerId)
+                .filter(s -> s.getExpiresAt().isAfter(Instant.now()))
+                .orElseThrow(() -> new NotFoundException("Upload session not found"));
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {}
+    }
+
+    private Path partFile(String sessionId) {
+        return stagingDir.resolve(sessionId + ".part");
+    }
+
+    private Path claimedFile(String sessionId) {
+        return stagingDir.resolve(sessionId + ".commit");
+    }
+
+    public record SessionStatus(UploadSession session, List<Integer> receivedChunks, long receivedBytes) {}
+}
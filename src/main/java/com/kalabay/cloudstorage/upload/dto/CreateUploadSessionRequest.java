@@ -0,0 +1,19 @@
+package com.kalabay.cloudstorage.upload.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+
+public record CreateUploadSessionRequest(
+        @NotBlank(message = "{file.upload.filename}")
+        @Size(max = 255, message = "{file.upload.filename}")
+        String filename,
+        String contentType,
+        @NotNull(message = "{upload.totalSize.positive}")
+        @Positive(message = "{upload.totalSize.positive}")
+        Long totalSize,
+        @Positive(message = "{upload.chunkSize.positive}")
+        Long chunkSize,
+        Long folderId
+) {}
@@ -0,0 +1,32 @@
+package com.kalabay.cloudstorage.upload.dto;
+
+import com.kalabay.cloudstorage.upload.UploadSession;
+import com.kalabay.cloudstorage.upload.UploadSessionService;
+
+import java.time.Instant;
+import java.util.List;
+
+public record UploadSessionResponse(
+        String id,
+        String filename,
+        Long folderId,
+        long totalSize,
+        long chunkSize,
+        int chunkCount,
+        List<Integer> receivedChunks,
+        long receivedBytes,
+        Instant expiresAt
+) {
+    public static UploadSessionResponse fromEntity(UploadSession s) {
+        return fromEntity(s, List.of(), 0);
+    }
+
+    public static UploadSessionResponse fromStatus(UploadSessionService.SessionStatus status) {
+        return fromEntity(status.session(), status.receivedChunks(), status.receivedBytes());
+    }
+
+    private static UploadSessionResponse fromEntity(UploadSession s, List<Integer> receivedChunks, long receivedBytes) {
+        Long folderId = s.getFolder() != null ? s.getFolder().getId() : null;
+        return new UploadSessionResponse(s.getId(), s.getFileName(), folderId, s.getTotalSize(), s.getChunkSize(), s.getChunkCount(), receivedChunks, receivedBytes, s.getExpiresAt());
+    }
+}
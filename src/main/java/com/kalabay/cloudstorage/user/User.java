@@ -1,5 +1,6 @@
 package com.kalabay.cloudstorage.user;
 
+import com.kalabay.cloudstorage.security.UserCacheEvictor;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
@@ -7,6 +8,7 @@ import java.time.Instant;
 
 @Entity
 @Table(name = "users")
+@EntityListeners(UserCacheEvictor.class)
 @Getter @Setter
 @NoArgsConstructor 
 @AllArgsConstructor 
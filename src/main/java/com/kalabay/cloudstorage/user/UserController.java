@@ -35,11 +35,9 @@ public class UserController {
 
     @PostMapping("/login")
     public TokenResponse login(@Valid @RequestBody LoginRequest req) {
-        boolean ok = service.login(req.username(), req.password());
-        if (!ok) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid credentials");
-        }
-        String token = jwt.generateToken(req.username());
+        User user = service.login(req.username(), req.password())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid credentials"));
+        String token = jwt.generateToken(user.getId(), user.getUsername());
         return new TokenResponse(token, "Bearer", jwt.getExpiresInSeconds());
     }
 }
\ No newline at end of file
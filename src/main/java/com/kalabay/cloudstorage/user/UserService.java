@@ -5,6 +5,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Optional;
+
 @Service
 public class UserService {
 
@@ -32,9 +34,8 @@ public class UserService {
         }
     }
 
-    public boolean login(String username, String rawPassword) {
+    public Optional<User> login(String username, String rawPassword) {
         return repo.findByUsername(username)
-                .map(u -> encoder.matches(rawPassword, u.getPasswordHash()))
-                .orElse(false);
+                .filter(u -> encoder.matches(rawPassword, u.getPasswordHash()));
     }
 }
\ No newline at end of file
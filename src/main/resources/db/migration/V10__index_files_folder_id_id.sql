@@ -0,0 +1,4 @@
+-- keyset scans over a folder's files (archives) walk this index in order
+CREATE INDEX IF NOT EXISTS idx_files_folder_id_id ON files(folder_id, id);
+
+DROP INDEX IF EXISTS idx_files_folder_id;
@@ -0,0 +1,11 @@
+-- keyset pagination: (owner, parent, sort key, id) lets every listing page be a single index range scan
+CREATE INDEX IF NOT EXISTS idx_files_listing_name ON files(owner_id, folder_id, lower(original_name), id);
+CREATE INDEX IF NOT EXISTS idx_files_listing_size ON files(owner_id, folder_id, size_bytes, id);
+CREATE INDEX IF NOT EXISTS idx_files_listing_uploaded_at ON files(owner_id, folder_id, uploaded_at, id);
+
+CREATE INDEX IF NOT EXISTS idx_folders_listing_name ON folders(owner_id, parent_id, lower(name), id);
+CREATE INDEX IF NOT EXISTS idx_folders_listing_created_at ON folders(owner_id, parent_id, created_at, id);
+
+-- covered by the leading owner_id column of the indexes above
+DROP INDEX IF EXISTS idx_files_owner_id;
+DROP INDEX IF EXISTS idx_folders_owner_id;
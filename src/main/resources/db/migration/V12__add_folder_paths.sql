@@ -0,0 +1,73 @@
+-- Materialized path: '/<root id>/.../<own id>/'. Ancestors are the ids in the path, and descendants are
+-- the rows whose path starts with it. "C" collation keeps byte order, so a prefix is an index range.
+ALTER TABLE folders
+  ADD COLUMN IF NOT EXISTS path VARCHAR(2048) COLLATE "C";
+
+WITH RECURSIVE tree AS (
+    SELECT id, '/' || id || '/' AS path
+    FROM folders
+    WHERE parent_id IS NULL
+    UNION ALL
+    SELECT c.id, t.path || c.id || '/'
+    FROM folders c
+    JOIN tree t ON c.parent_id = t.id
+)
+UPDATE folders f
+SET path = tree.path
+FROM tree
+WHERE f.id = tree.id;
+
+ALTER TABLE folders
+  ALTER COLUMN path SET NOT NULL;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_folders_path ON folders(path);
+
+-- the path is maintained here rather than by the application, so every writer (including set-based
+-- statements) keeps it right; the id is known in BEFORE INSERT because the column default has run
+CREATE OR REPLACE FUNCTION folders_set_path() RETURNS trigger AS $$
+DECLARE
+    parent_path VARCHAR(2048);
+BEGIN
+    IF NEW.parent_id IS NOT NULL THEN
+        -- FOR SHARE blocks a concurrent move of the parent, so two crossing moves cannot both pass the check
+        SELECT path INTO parent_path FROM folders WHERE id = NEW.parent_id FOR SHARE;
+    END IF;
+
+    IF TG_OP = 'UPDATE' AND parent_path IS NOT NULL AND starts_with(parent_path, OLD.path) THEN
+        RAISE EXCEPTION 'Cannot move folder % into its own subtree', OLD.id USING ERRCODE = 'check_violation';
+    END IF;
+
+    NEW.path := COALESCE(parent_path, '/') || NEW.id || '/';
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION folders_move_subtree() RETURNS trigger AS $$
+BEGIN
+    -- every path in [old, old with its trailing '/' bumped to '0') starts with the old path
+    UPDATE folders
+    SET path = NEW.path || substr(path, length(OLD.path) + 1)
+    WHERE path > OLD.path
+      AND path < left(OLD.path, -1) || '0';
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_folders_path_insert ON folders;
+CREATE TRIGGER trg_folders_path_insert
+    BEFORE INSERT ON folders
+    FOR EACH ROW EXECUTE FUNCTION folders_set_path();
+
+DROP TRIGGER IF EXISTS trg_folders_path_move ON folders;
+CREATE TRIGGER trg_folders_path_move
+    BEFORE UPDATE OF parent_id ON folders
+    FOR EACH ROW
+    WHEN (OLD.parent_id IS DISTINCT FROM NEW.parent_id)
+    EXECUTE FUNCTION folders_set_path();
+
+DROP TRIGGER IF EXISTS trg_folders_path_move_subtree ON folders;
+CREATE TRIGGER trg_folders_path_move_subtree
+    AFTER UPDATE OF parent_id ON folders
+    FOR EACH ROW
+    WHEN (OLD.parent_id IS DISTINCT FROM NEW.parent_id)
+    EXECUTE FUNCTION folders_move_subtree();
@@ -0,0 +1,222 @@
+-- Recursive totals: every file below a folder, at any depth. Kept current by triggers that add each
+-- change to the folder and all of its ancestors (the ids in its path), so no reader has to walk the tree.
+ALTER TABLE folders
+  ADD COLUMN IF NOT EXISTS total_size_bytes BIGINT NOT NULL DEFAULT 0,
+  ADD COLUMN IF NOT EXISTS total_file_count BIGINT NOT NULL DEFAULT 0;
+
+UPDATE folders r
+SET total_size_bytes = t.size_bytes,
+    total_file_count = t.file_count
+FROM (
+    SELECT CAST(a AS BIGINT) AS id, SUM(f.size_bytes) AS size_bytes, COUNT(*) AS file_count
+    FROM files f
+    JOIN folders d ON d.id = f.folder_id
+    CROSS JOIN LATERAL unnest(string_to_array(trim(BOTH '/' FROM d.path), '/')) AS a
+    GROUP BY 1
+) t
+WHERE r.id = t.id;
+
+CREATE INDEX IF NOT EXISTS idx_folders_listing_size ON folders(owner_id, parent_id, total_size_bytes, id);
+
+-- Adds per-folder deltas to those folders and their ancestors. Rows are locked in id order so two
+-- writers touching overlapping chains queue up instead of deadlocking; folders that no longer exist
+-- (a cascade from a deleted parent) are skipped, their parent's delete already took their totals off.
+CREATE OR REPLACE FUNCTION folders_add_totals(folder_ids BIGINT[], size_deltas BIGINT[], count_deltas BIGINT[]) RETURNS void AS $$
+DECLARE
+    ancestor_ids BIGINT[];
+    ancestor_sizes BIGINT[];
+    ancestor_counts BIGINT[];
+BEGIN
+    IF folder_ids IS NULL OR cardinality(folder_ids) = 0 THEN
+        RETURN;
+    END IF;
+
+    -- waits out a concurrent move of these folders; the next statement then reads their new paths
+    PERFORM 1 FROM folders WHERE id = ANY (folder_ids) ORDER BY id FOR NO KEY UPDATE;
+
+    SELECT array_agg(id ORDER BY id), array_agg(size_bytes ORDER BY id), array_agg(file_count ORDER BY id)
+    INTO ancestor_ids, ancestor_sizes, ancestor_counts
+    FROM (
+        SELECT CAST(a AS BIGINT) AS id, SUM(d.size_bytes) AS size_bytes, SUM(d.file_count) AS file_count
+        FROM unnest(folder_ids, size_deltas, count_deltas) AS d(folder_id, size_bytes, file_count)
+        JOIN folders f ON f.id = d.folder_id
+        CROSS JOIN LATERAL unnest(string_to_array(trim(BOTH '/' FROM f.path), '/')) AS a
+        GROUP BY 1
+        HAVING SUM(d.size_bytes) <> 0 OR SUM(d.file_count) <> 0
+    ) t;
+
+    IF ancestor_ids IS NULL THEN
+        RETURN;
+    END IF;
+
+    PERFORM 1 FROM folders WHERE id = ANY (ancestor_ids) ORDER BY id FOR NO KEY UPDATE;
+
+    UPDATE folders f
+    SET total_size_bytes = f.total_size_bytes + d.size_bytes,
+        total_file_count = f.total_file_count + d.file_count
+    FROM unnest(ancestor_ids, ancestor_sizes, ancestor_counts) AS d(id, size_bytes, file_count)
+    WHERE f.id = d.id;
+END;
+$$ LANGUAGE plpgsql;
+
+-- statement-level with transition tables: a batch insert or a bulk delete is one propagation, not one per row
+CREATE OR REPLACE FUNCTION files_totals_insert() RETURNS trigger AS $$
+DECLARE
+    ids BIGINT[];
+    sizes BIGINT[];
+    counts BIGINT[];
+BEGIN
+    SELECT array_agg(folder_id), array_agg(size_bytes), array_agg(file_count)
+    INTO ids, sizes, counts
+    FROM (
+        SELECT folder_id, SUM(size_bytes) AS size_bytes, COUNT(*) AS file_count
+        FROM new_rows
+        WHERE folder_id IS NOT NULL
+        GROUP BY folder_id
+    ) d;
+
+    PERFORM folders_add_totals(ids, sizes, counts);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION files_totals_delete() RETURNS trigger AS $$
+DECLARE
+    ids BIGINT[];
+    sizes BIGINT[];
+    counts BIGINT[];
+BEGIN
+    SELECT array_agg(folder_id), array_agg(size_bytes), array_agg(file_count)
+    INTO ids, sizes, counts
+    FROM (
+        SELECT folder_id, -SUM(size_bytes) AS size_bytes, -COUNT(*) AS file_count
+        FROM old_rows
+        WHERE folder_id IS NOT NULL
+        GROUP BY folder_id
+    ) d;
+
+    PERFORM folders_add_totals(ids, sizes, counts);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- transition tables rule out an UPDATE OF column list, so unchanged rows (renames) are filtered here
+CREATE OR REPLACE FUNCTION files_totals_update() RETURNS trigger AS $$
+DECLARE
+    ids BIGINT[];
+    sizes BIGINT[];
+    counts BIGINT[];
+BEGIN
+    SELECT array_agg(folder_id), array_agg(size_bytes), array_agg(file_count)
+    INTO ids, sizes, counts
+    FROM (
+        SELECT folder_id, SUM(size_bytes) AS size_bytes, SUM(file_count) AS file_count
+        FROM (
+            SELECT o.folder_id, -o.size_bytes AS size_bytes, -1 AS file_count
+            FROM old_rows o
+            JOIN new_rows n ON n.id = o.id
+            WHERE o.folder_id IS DISTINCT FROM n.folder_id OR o.size_bytes <> n.size_bytes
+            UNION ALL
+            SELECT n.folder_id, n.size_bytes, 1
+            FROM old_rows o
+            JOIN new_rows n ON n.id = o.id
+            WHERE o.folder_id IS DISTINCT FROM n.folder_id OR o.size_bytes <> n.size_bytes
+        ) changes
+        WHERE folder_id IS NOT NULL
+        GROUP BY folder_id
+    ) d;
+
+    PERFORM folders_add_totals(ids, sizes, counts);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_files_totals_insert ON files;
+CREATE TRIGGER trg_files_totals_insert
+    AFTER INSERT ON files
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION files_totals_insert();
+
+DROP TRIGGER IF EXISTS trg_files_totals_delete ON files;
+CREATE TRIGGER trg_files_totals_delete
+    AFTER DELETE ON files
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION files_totals_delete();
+
+DROP TRIGGER IF EXISTS trg_files_totals_update ON files;
+CREATE TRIGGER trg_files_totals_update
+    AFTER UPDATE ON files
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION files_totals_update();
+
+-- A moved folder takes its totals from the old parent chain to the new one. The move trigger now
+-- locks the new parent FOR NO KEY UPDATE: with FOR SHARE, two moves into one parent would each hold
+-- a share lock and then deadlock upgrading it here.
+CREATE OR REPLACE FUNCTION folders_set_path() RETURNS trigger AS $$
+DECLARE
+    parent_path VARCHAR(2048);
+BEGIN
+    IF NEW.parent_id IS NOT NULL AND TG_OP = 'UPDATE' THEN
+        SELECT path INTO parent_path FROM folders WHERE id = NEW.parent_id FOR NO KEY UPDATE;
+    ELSIF NEW.parent_id IS NOT NULL THEN
+        -- FOR SHARE blocks a concurrent move of the parent, so two crossing moves cannot both pass the check
+        SELECT path INTO parent_path FROM folders WHERE id = NEW.parent_id FOR SHARE;
+    END IF;
+
+    IF TG_OP = 'UPDATE' AND parent_path IS NOT NULL AND starts_with(parent_path, OLD.path) THEN
+        RAISE EXCEPTION 'Cannot move folder % into its own subtree', OLD.id USING ERRCODE = 'check_violation';
+    END IF;
+
+    NEW.path := COALESCE(parent_path, '/') || NEW.id || '/';
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION folders_move_totals() RETURNS trigger AS $$
+BEGIN
+    IF NEW.total_size_bytes = 0 AND NEW.total_file_count = 0 THEN
+        RETURN NULL;
+    END IF;
+
+    PERFORM folders_add_totals(
+        ARRAY[OLD.parent_id, NEW.parent_id],
+        ARRAY[-NEW.total_size_bytes, NEW.total_size_bytes],
+        ARRAY[-NEW.total_file_count, NEW.total_file_count]);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_folders_totals_move ON folders;
+CREATE TRIGGER trg_folders_totals_move
+    AFTER UPDATE OF parent_id ON folders
+    FOR EACH ROW
+    WHEN (OLD.parent_id IS DISTINCT FROM NEW.parent_id)
+    EXECUTE FUNCTION folders_move_totals();
+
+-- only the top of a deleted subtree has a surviving parent; the rows cascaded below it find
+-- theirs gone and are skipped, as are the files the cascade removes
+CREATE OR REPLACE FUNCTION folders_totals_delete() RETURNS trigger AS $$
+DECLARE
+    ids BIGINT[];
+    sizes BIGINT[];
+    counts BIGINT[];
+BEGIN
+    SELECT array_agg(parent_id), array_agg(size_bytes), array_agg(file_count)
+    INTO ids, sizes, counts
+    FROM (
+        SELECT parent_id, -SUM(total_size_bytes) AS size_bytes, -SUM(total_file_count) AS file_count
+        FROM old_rows
+        WHERE parent_id IS NOT NULL
+        GROUP BY parent_id
+    ) d;
+
+    PERFORM folders_add_totals(ids, sizes, counts);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_folders_totals_delete ON folders;
+CREATE TRIGGER trg_folders_totals_delete
+    AFTER DELETE ON folders
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION folders_totals_delete();
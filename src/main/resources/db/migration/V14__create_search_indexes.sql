@@ -0,0 +1,13 @@
+-- Filename search over a user's whole namespace. Both extensions are trusted, so the database owner
+-- may create them. btree_gin lets owner_id sit in the trigram index, so the bitmap only ever holds
+-- the searching user's rows.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+
+CREATE INDEX IF NOT EXISTS idx_files_search_name ON files USING gin (owner_id, lower(original_name) gin_trgm_ops);
+
+-- when a pattern matches most of a user's files, walking one of these in result order and stopping
+-- after a page is cheaper than collecting every match from the trigram index and sorting it
+CREATE INDEX IF NOT EXISTS idx_files_search_uploaded_at ON files(owner_id, uploaded_at, id);
+CREATE INDEX IF NOT EXISTS idx_files_search_size ON files(owner_id, size_bytes, id);
+CREATE INDEX IF NOT EXISTS idx_files_search_name_order ON files(owner_id, lower(original_name), id);
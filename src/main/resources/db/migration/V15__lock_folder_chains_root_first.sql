@@ -0,0 +1,94 @@
+-- Row locks for the totals triggers, taken root first. V13 locked the changed folders first and their
+-- ancestors after, while a move or delete locks the moved folder, then what lies below it, and only then
+-- the ancestors its totals come off; an upload below a folder being moved could hold one half and wait
+-- for the other. Every writer now locks a folder's whole chain, from the root down, in one statement
+-- (ORDER BY path: a path sorts before every path below it), file rows take it before they are written,
+-- and FolderService takes the same locks before it moves or deletes folders.
+--
+-- The price is that writes under one root are serialized: every file insert, delete or move locks the
+-- root and each folder above the one it changes until the transaction ends. Uploads into different
+-- top-level folders do not wait for each other; uploads anywhere under one busy root do, so keep the
+-- transactions that change files short.
+
+-- Locks the folders and all of their ancestors. The chain is read from the paths without a lock, so it is
+-- read again once locked: a move that got in between changed a path, and the new chain is locked as well.
+-- With the chain held nothing in it can move, so the paths then stay as they are. Returns the chain length
+CREATE OR REPLACE FUNCTION folders_lock_chains(folder_ids BIGINT[]) RETURNS integer AS $$
+DECLARE
+    chain BIGINT[];
+    locked BIGINT[];
+BEGIN
+    IF folder_ids IS NULL OR cardinality(folder_ids) = 0 THEN
+        RETURN 0;
+    END IF;
+
+    LOOP
+        SELECT array_agg(DISTINCT CAST(a AS BIGINT) ORDER BY CAST(a AS BIGINT))
+        INTO chain
+        FROM folders f
+        CROSS JOIN LATERAL unnest(string_to_array(trim(BOTH '/' FROM f.path), '/')) AS a
+        WHERE f.id = ANY (folder_ids);
+
+        IF chain IS NULL THEN
+            RETURN 0;
+        END IF;
+        IF chain = locked THEN
+            RETURN cardinality(chain);
+        END IF;
+
+        PERFORM 1 FROM folders WHERE id = ANY (chain) ORDER BY path FOR NO KEY UPDATE;
+        locked := chain;
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+-- as in V13, but with the whole chain locked before the deltas are read from the paths
+CREATE OR REPLACE FUNCTION folders_add_totals(folder_ids BIGINT[], size_deltas BIGINT[], count_deltas BIGINT[]) RETURNS void AS $$
+BEGIN
+    IF folder_ids IS NULL OR cardinality(folder_ids) = 0 THEN
+        RETURN;
+    END IF;
+
+    PERFORM folders_lock_chains(folder_ids);
+
+    UPDATE folders f
+    SET total_size_bytes = f.total_size_bytes + d.size_bytes,
+        total_file_count = f.total_file_count + d.file_count
+    FROM (
+        SELECT CAST(a AS BIGINT) AS id, SUM(d.size_bytes) AS size_bytes, SUM(d.file_count) AS file_count
+        FROM unnest(folder_ids, size_deltas, count_deltas) AS d(folder_id, size_bytes, file_count)
+        JOIN folders c ON c.id = d.folder_id
+        CROSS JOIN LATERAL unnest(string_to_array(trim(BOTH '/' FROM c.path), '/')) AS a
+        GROUP BY 1
+        HAVING SUM(d.size_bytes) <> 0 OR SUM(d.file_count) <> 0
+    ) d
+    WHERE f.id = d.id;
+END;
+$$ LANGUAGE plpgsql;
+
+-- A file row's foreign key check takes a key-share lock on its folder, and it runs before the statement
+-- level totals trigger. A move needs a full lock on every folder it rewrites (path and parent_id are
+-- in unique indexes), so an upload holding that key-share lock while it waits for the root deadlocks with
+-- it. Taking the chain before the row is written keeps the key-share lock behind the root-first ones
+CREATE OR REPLACE FUNCTION files_lock_folder_chains() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'UPDATE' THEN
+        PERFORM folders_lock_chains(ARRAY[OLD.folder_id, NEW.folder_id]);
+    ELSIF NEW.folder_id IS NOT NULL THEN
+        PERFORM folders_lock_chains(ARRAY[NEW.folder_id]);
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_files_lock_insert ON files;
+CREATE TRIGGER trg_files_lock_insert
+    BEFORE INSERT ON files
+    FOR EACH ROW EXECUTE FUNCTION files_lock_folder_chains();
+
+DROP TRIGGER IF EXISTS trg_files_lock_move ON files;
+CREATE TRIGGER trg_files_lock_move
+    BEFORE UPDATE OF folder_id ON files
+    FOR EACH ROW
+    WHEN (OLD.folder_id IS DISTINCT FROM NEW.folder_id)
+    EXECUTE FUNCTION files_lock_folder_chains();
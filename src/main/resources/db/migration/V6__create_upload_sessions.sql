@@ -0,0 +1,21 @@
+CREATE TABLE IF NOT EXISTS upload_sessions (
+    id           VARCHAR(32)  PRIMARY KEY,
+    owner_id     BIGINT       NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    folder_id    BIGINT       NULL REFERENCES folders(id) ON DELETE CASCADE,
+    file_name    VARCHAR(255) NOT NULL,
+    content_type VARCHAR(255),
+    total_size   BIGINT       NOT NULL,
+    chunk_size   BIGINT       NOT NULL,
+    created_at   TIMESTAMPTZ  NOT NULL DEFAULT NOW(),
+    expires_at   TIMESTAMPTZ  NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_upload_sessions_owner_id ON upload_sessions(owner_id);
+CREATE INDEX IF NOT EXISTS idx_upload_sessions_expires_at ON upload_sessions(expires_at);
+
+CREATE TABLE IF NOT EXISTS upload_chunks (
+    session_id  VARCHAR(32) NOT NULL REFERENCES upload_sessions(id) ON DELETE CASCADE,
+    chunk_index INT         NOT NULL,
+    size_bytes  BIGINT      NOT NULL,
+    PRIMARY KEY (session_id, chunk_index)
+);
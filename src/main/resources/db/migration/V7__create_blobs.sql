@@ -0,0 +1,21 @@
+CREATE TABLE IF NOT EXISTS blobs (
+    storage_name VARCHAR(64) PRIMARY KEY,
+    size_bytes   BIGINT      NOT NULL,
+    ref_count    BIGINT      NOT NULL,
+    created_at   TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+
+-- files stored before content addressing keep their random names, one reference each
+INSERT INTO blobs (storage_name, size_bytes, ref_count)
+SELECT storage_name, size_bytes, 1
+FROM files
+ON CONFLICT (storage_name) DO NOTHING;
+
+ALTER TABLE files
+  DROP CONSTRAINT IF EXISTS files_storage_name_key;
+
+ALTER TABLE files
+  ADD CONSTRAINT fk_files_blob
+    FOREIGN KEY (storage_name) REFERENCES blobs(storage_name);
+
+CREATE INDEX IF NOT EXISTS idx_files_storage_name ON files(storage_name, owner_id);
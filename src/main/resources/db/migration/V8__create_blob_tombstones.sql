@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS blob_tombstones (
+    storage_name    VARCHAR(64)  PRIMARY KEY,
+    created_at      TIMESTAMPTZ  NOT NULL DEFAULT NOW(),
+    attempts        INT          NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMPTZ  NOT NULL DEFAULT NOW(),
+    last_error      VARCHAR(500)
+);
+
+CREATE INDEX IF NOT EXISTS idx_blob_tombstones_next_attempt_at ON blob_tombstones(next_attempt_at);
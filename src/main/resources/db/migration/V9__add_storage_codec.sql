@@ -0,0 +1,19 @@
+-- how the bytes are encoded at rest; existing content was stored raw
+ALTER TABLE blobs
+  ADD COLUMN IF NOT EXISTS codec VARCHAR(16) NOT NULL DEFAULT 'NONE',
+  ADD COLUMN IF NOT EXISTS stored_size_bytes BIGINT;
+
+UPDATE blobs SET stored_size_bytes = size_bytes WHERE stored_size_bytes IS NULL;
+
+ALTER TABLE blobs
+  ALTER COLUMN stored_size_bytes SET NOT NULL;
+
+-- copied from the blob, so downloads need no join
+ALTER TABLE files
+  ADD COLUMN IF NOT EXISTS codec VARCHAR(16) NOT NULL DEFAULT 'NONE',
+  ADD COLUMN IF NOT EXISTS stored_size_bytes BIGINT;
+
+UPDATE files SET stored_size_bytes = size_bytes WHERE stored_size_bytes IS NULL;
+
+ALTER TABLE files
+  ALTER COLUMN stored_size_bytes SET NOT NULL;
@@ -0,0 +1,47 @@
+package com.kalabay.cloudstorage;
+
+import com.kalabay.cloudstorage.user.User;
+import com.kalabay.cloudstorage.user.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+// Base for tests that need the real schema: the totals, path and share rules live partly in the
+// migrations' triggers. Runs against a throwaway PostgreSQL container when Docker is available, and
+// otherwise against the database of the active profile, like CloudStorageApplicationTests. Every test
+// works under users of its own, so it never sees anyone else's rows.
+@SpringBootTest
+public abstract class DatabaseTests {
+
+    static final PostgreSQLContainer<?> postgres = DockerClientFactory.instance().isDockerAvailable()
+            ? new PostgreSQLContainer<>("postgres:16-alpine")
+            : null;
+
+    // not a @TempDir: the Spring context, and with it these settings, outlives the test class
+    static final Path storageDir = Path.of("target", "test-data").toAbsolutePath();
+
+    @Autowired
+    protected UserService userService;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        if (postgres != null) {
+            postgres.start();
+            registry.add("spring.datasource.url", postgres::getJdbcUrl);
+            registry.add("spring.datasource.username", postgres::getUsername);
+            registry.add("spring.datasource.password", postgres::getPassword);
+        }
+        registry.add("storage.root-dir", () -> storageDir.resolve("storage").toString());
+        registry.add("storage.upload.staging-dir", () -> storageDir.resolve("uploads").toString());
+    }
+
+    protected User newUser() {
+        return userService.register("test-" + UUID.randomUUID().toString().substring(0, 18), "secret123");
+    }
+}
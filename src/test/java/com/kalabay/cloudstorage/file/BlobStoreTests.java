@@ -0,0 +1,100 @@
+package com.kalabay.cloudstorage.file;
+
+import com.kalabay.cloudstorage.DatabaseTests;
+import com.kalabay.cloudstorage.storage.StorageBackend;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlobStoreTests extends DatabaseTests {
+
+    @Autowired
+    BlobStore blobs;
+
+    @Autowired
+    StorageBackend storage;
+
+    @Autowired
+    TransactionTemplate transactions;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    private final Random random = new Random();
+
+    @Test
+    void storedBytesAreCommittedWithoutAnotherPut() throws Exception {
+        BlobStore.StagedBlob stored = blobs.store(stage());
+
+        assertTrue(stored.stored());
+        assertTrue(storage.exists(stored.digest()));
+
+        Blob blob = transactions.execute(status -> blobs.commit(stored));
+        assertEquals(stored.storedSizeBytes(), blob.getStoredSizeBytes());
+        assertEquals(1, refCount(stored.digest()));
+    }
+
+    @Test
+    void contentAlreadyInStorageIsNotUploadedAgain() {
+        byte[] content = new byte[256];
+        random.nextBytes(content);
+        BlobStore.StagedBlob first = blobs.store(stage(content));
+        transactions.execute(status -> blobs.commit(first));
+        BlobStore.StagedBlob second = stage(content);
+
+        assertFalse(blobs.store(second).stored());
+
+        transactions.execute(status -> blobs.commit(second));
+        assertEquals(2, refCount(second.digest()));
+        blobs.discard(second);
+    }
+
+    @Test
+    void abandonedBytesGoToTheReaper() {
+        BlobStore.StagedBlob stored = blobs.store(stage());
+
+        blobs.abandon(List.of(stored));
+
+        assertNull(refCount(stored.digest()));
+        assertTrue(entombed(stored.digest()));
+    }
+
+    @Test
+    void abandonedBytesStayWhileAFileReferencesThem() {
+        byte[] content = new byte[256];
+        random.nextBytes(content);
+        BlobStore.StagedBlob stored = blobs.store(stage(content));
+        transactions.execute(status -> blobs.commit(stage(content)));
+
+        blobs.abandon(List.of(stored));
+
+        assertEquals(1, refCount(stored.digest()));
+        assertFalse(entombed(stored.digest()));
+    }
+
+    private BlobStore.StagedBlob stage() {
+        byte[] content = new byte[256];
+        random.nextBytes(content);
+        return stage(content);
+    }
+
+    private BlobStore.StagedBlob stage(byte[] content) {
+        return blobs.stage(new ByteArrayInputStream(content), "application/octet-stream", content.length);
+    }
+
+    private Integer refCount(String digest) {
+        return jdbc.query("SELECT ref_count FROM blobs WHERE storage_name = ?",
+                rs -> rs.next() ? rs.getInt(1) : null, digest);
+    }
+
+    private boolean entombed(String digest) {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM blob_tombstones WHERE storage_name = ?", Integer.class, digest) > 0;
+    }
+}
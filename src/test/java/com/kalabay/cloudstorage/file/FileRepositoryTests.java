@@ -0,0 +1,94 @@
+package com.kalabay.cloudstorage.file;
+
+import com.kalabay.cloudstorage.DatabaseTests;
+import com.kalabay.cloudstorage.folder.Folder;
+import com.kalabay.cloudstorage.folder.FolderService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// moveOwned and deleteOwned write past the persistence context; these load the files into it first and
+// check that what the same transaction reads afterwards matches the rows
+class FileRepositoryTests extends DatabaseTests {
+
+    @Autowired
+    FileRepository files;
+
+    @Autowired
+    FileService fileService;
+
+    @Autowired
+    FolderService folderService;
+
+    @Autowired
+    TransactionTemplate transactions;
+
+    private final Random random = new Random();
+    private Long ownerId;
+
+    @BeforeEach
+    void setUp() {
+        ownerId = newUser().getId();
+    }
+
+    @Test
+    void movedFilesAreReadBackInTheirNewFolder() {
+        Folder from = folderService.create(ownerId, "from", null);
+        Folder to = folderService.create(ownerId, "to", null);
+        StoredFile file = upload(from);
+
+        transactions.executeWithoutResult(status -> {
+            assertEquals(from.getId(), files.findById(file.getId()).orElseThrow().getFolder().getId());
+
+            fileService.moveAll(ownerId, List.of(file.getId()), to.getId());
+
+            assertEquals(to.getId(), files.findById(file.getId()).orElseThrow().getFolder().getId());
+        });
+    }
+
+    @Test
+    void pendingChangesAreWrittenBeforeTheMove() {
+        Folder from = folderService.create(ownerId, "from", null);
+        Folder to = folderService.create(ownerId, "to", null);
+        StoredFile file = upload(from);
+
+        transactions.executeWithoutResult(status -> {
+            files.findById(file.getId()).orElseThrow().setOriginalName("renamed.bin");
+
+            fileService.moveAll(ownerId, List.of(file.getId()), to.getId());
+        });
+
+        StoredFile moved = files.findById(file.getId()).orElseThrow();
+        assertEquals("renamed.bin", moved.getOriginalName());
+    }
+
+    @Test
+    void deletedFilesAreGoneForTheRestOfTheTransaction() {
+        Folder folder = folderService.create(ownerId, "folder", null);
+        StoredFile deleted = upload(folder);
+        StoredFile kept = upload(folder);
+
+        transactions.executeWithoutResult(status -> {
+            files.findAllById(List.of(deleted.getId(), kept.getId()));
+
+            fileService.deleteAll(ownerId, List.of(deleted.getId()));
+
+            assertTrue(files.findById(deleted.getId()).isEmpty());
+            assertTrue(files.findById(kept.getId()).isPresent());
+        });
+    }
+
+    private StoredFile upload(Folder folder) {
+        byte[] content = new byte[64];
+        random.nextBytes(content);
+        return fileService.uploadStream(new ByteArrayInputStream(content), "file-" + random.nextInt(1_000_000) + ".bin",
+                "application/octet-stream", content.length, ownerId, folder.getId());
+    }
+}
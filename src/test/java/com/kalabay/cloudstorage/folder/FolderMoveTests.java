@@ -0,0 +1,139 @@
+package com.kalabay.cloudstorage.folder;
+
+import com.kalabay.cloudstorage.DatabaseTests;
+import com.kalabay.cloudstorage.common.exception.BadRequestException;
+import com.kalabay.cloudstorage.common.exception.ConflictException;
+import com.kalabay.cloudstorage.common.web.ItemResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FolderMoveTests extends DatabaseTests {
+
+    private static final String CYCLE = "Cannot move folder into itself or its descendant";
+    private static final String CLASH = "Folder with the same name already exists at this level";
+
+    @Autowired
+    FolderService folderService;
+
+    @Autowired
+    FolderRepository folders;
+
+    @Autowired
+    TransactionTemplate transactions;
+
+    private Long ownerId;
+
+    @BeforeEach
+    void setUp() {
+        ownerId = newUser().getId();
+    }
+
+    @Test
+    void moveRejectsItselfAndItsDescendants() {
+        Folder top = folderService.create(ownerId, "top", null);
+        Folder child = folderService.create(ownerId, "child", top.getId());
+        Folder grandchild = folderService.create(ownerId, "grandchild", child.getId());
+
+        assertThrows(BadRequestException.class, () -> folderService.move(ownerId, top.getId(), top.getId()));
+        assertThrows(BadRequestException.class, () -> folderService.move(ownerId, top.getId(), child.getId()));
+        assertThrows(BadRequestException.class, () -> folderService.move(ownerId, top.getId(), grandchild.getId()));
+
+        assertParent(top, null);
+        assertEquals("/" + top.getId() + "/" + child.getId() + "/" + grandchild.getId() + "/", path(grandchild));
+    }
+
+    @Test
+    void moveAllRejectsCyclesAndMovesTheRest() {
+        Folder top = folderService.create(ownerId, "top", null);
+        Folder child = folderService.create(ownerId, "child", top.getId());
+        Folder target = folderService.create(ownerId, "target", child.getId());
+        Folder other = folderService.create(ownerId, "other", null);
+
+        List<ItemResult> results = folderService.moveAll(ownerId, List.of(top.getId(), target.getId(), other.getId()), target.getId());
+
+        assertEquals(List.of(
+                ItemResult.failed(top.getId(), CYCLE),
+                ItemResult.failed(target.getId(), CYCLE),
+                ItemResult.done(other.getId())), results);
+        assertParent(top, null);
+        assertParent(other, target.getId());
+    }
+
+    // the trigger repeats the check, so a cycle that got past the service still cannot be written
+    @Test
+    void pathTriggerRejectsACycle() {
+        Folder top = folderService.create(ownerId, "top", null);
+        Folder child = folderService.create(ownerId, "child", top.getId());
+
+        assertThrows(DataIntegrityViolationException.class, () -> transactions.executeWithoutResult(
+                status -> folders.moveOwned(ownerId, List.of(top.getId()), child.getId())));
+
+        assertParent(top, null);
+    }
+
+    @Test
+    void moveRejectsANameTakenInTheTarget() {
+        Folder source = folderService.create(ownerId, "source", null);
+        Folder docs = folderService.create(ownerId, "docs", source.getId());
+        Folder target = folderService.create(ownerId, "target", null);
+        folderService.create(ownerId, "docs", target.getId());
+
+        ConflictException clash = assertThrows(ConflictException.class,
+                () -> folderService.move(ownerId, docs.getId(), target.getId()));
+
+        assertEquals(CLASH, clash.getMessage());
+        assertParent(docs, source.getId());
+    }
+
+    @Test
+    void moveAllRejectsNamesTakenInTheTargetOrEarlierInTheSelection() {
+        Folder left = folderService.create(ownerId, "left", null);
+        Folder right = folderService.create(ownerId, "right", null);
+        Folder target = folderService.create(ownerId, "target", null);
+        folderService.create(ownerId, "taken", target.getId());
+        Folder taken = folderService.create(ownerId, "taken", left.getId());
+        Folder first = folderService.create(ownerId, "same", left.getId());
+        Folder second = folderService.create(ownerId, "same", right.getId());
+
+        List<ItemResult> results = folderService.moveAll(ownerId, List.of(taken.getId(), first.getId(), second.getId()), target.getId());
+
+        assertEquals(List.of(
+                ItemResult.failed(taken.getId(), CLASH),
+                ItemResult.done(first.getId()),
+                ItemResult.failed(second.getId(), CLASH)), results);
+        assertParent(taken, left.getId());
+        assertParent(first, target.getId());
+        assertParent(second, right.getId());
+    }
+
+    @Test
+    void createAndRenameRejectATakenName() {
+        Folder parent = folderService.create(ownerId, "parent", null);
+        folderService.create(ownerId, "a", parent.getId());
+        Folder b = folderService.create(ownerId, "b", parent.getId());
+
+        assertThrows(ConflictException.class, () -> folderService.create(ownerId, " a ", parent.getId()));
+        assertThrows(ConflictException.class, () -> folderService.create(ownerId, "parent", null));
+        assertThrows(ConflictException.class, () -> folderService.rename(ownerId, b.getId(), "a"));
+
+        // the same name one level up or down is fine
+        assertNotNull(folderService.create(ownerId, "a", null));
+        assertEquals("b", folders.findById(b.getId()).orElseThrow().getName());
+    }
+
+    private void assertParent(Folder folder, Long parentId) {
+        Folder current = folders.findById(folder.getId()).orElseThrow();
+        assertEquals(parentId, current.getParent() == null ? null : current.getParent().getId(), "parent of " + folder.getName());
+    }
+
+    private String path(Folder folder) {
+        return folders.findById(folder.getId()).orElseThrow().getPath();
+    }
+}
@@ -0,0 +1,262 @@
+package com.kalabay.cloudstorage.folder;
+
+import com.kalabay.cloudstorage.DatabaseTests;
+import com.kalabay.cloudstorage.file.FileService;
+import com.kalabay.cloudstorage.file.StoredFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FolderTotalsTests extends DatabaseTests {
+
+    @Autowired
+    FolderService folderService;
+
+    @Autowired
+    FileService fileService;
+
+    @Autowired
+    FolderRepository folders;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    private final Random random = new Random();
+    private Long ownerId;
+
+    @BeforeEach
+    void setUp() {
+        ownerId = newUser().getId();
+    }
+
+    @Test
+    void insertAddsToTheFolderAndItsAncestors() {
+        Folder root = folderService.create(ownerId, "root", null);
+        Folder middle = folderService.create(ownerId, "middle", root.getId());
+        Folder leaf = folderService.create(ownerId, "leaf", middle.getId());
+
+        upload(leaf, 100);
+        upload(leaf, 50);
+        upload(middle, 7);
+
+        assertTotals(leaf, 150, 2);
+        assertTotals(middle, 157, 3);
+        assertTotals(root, 157, 3);
+    }
+
+    @Test
+    void deleteTakesTheFileOffAgain() {
+        Folder root = folderService.create(ownerId, "root", null);
+        Folder leaf = folderService.create(ownerId, "leaf", root.getId());
+        StoredFile kept = upload(leaf, 100);
+        StoredFile deleted = upload(leaf, 30);
+        StoredFile batchDeleted = upload(leaf, 5);
+
+        fileService.delete(deleted.getId(), ownerId);
+        fileService.deleteAll(ownerId, List.of(batchDeleted.getId()));
+
+        assertTotals(leaf, kept.getSizeBytes(), 1);
+        assertTotals(root, kept.getSizeBytes(), 1);
+    }
+
+    @Test
+    void movingAFileShiftsItBetweenChains() {
+        Folder left = folderService.create(ownerId, "left", null);
+        Folder leftChild = folderService.create(ownerId, "child", left.getId());
+        Folder right = folderService.create(ownerId, "right", null);
+        StoredFile file = upload(leftChild, 40);
+        StoredFile other = upload(leftChild, 2);
+
+        fileService.move(ownerId, file.getId(), right.getId());
+        fileService.moveAll(ownerId, List.of(other.getId()), null);
+
+        assertTotals(leftChild, 0, 0);
+        assertTotals(left, 0, 0);
+        assertTotals(right, 40, 1);
+    }
+
+    @Test
+    void movingAFolderTakesItsTotalsAlong() {
+        Folder from = folderService.create(ownerId, "from", null);
+        Folder to = folderService.create(ownerId, "to", null);
+        Folder toChild = folderService.create(ownerId, "child", to.getId());
+        Folder moved = folderService.create(ownerId, "moved", from.getId());
+        Folder inside = folderService.create(ownerId, "inside", moved.getId());
+        upload(inside, 64);
+        upload(moved, 16);
+
+        folderService.move(ownerId, moved.getId(), toChild.getId());
+
+        assertTotals(from, 0, 0);
+        assertTotals(toChild, 80, 2);
+        assertTotals(to, 80, 2);
+        assertTotals(moved, 80, 2);
+
+        folderService.moveAll(ownerId, List.of(moved.getId()), null);
+
+        assertTotals(to, 0, 0);
+        assertTotals(moved, 80, 2);
+    }
+
+    @Test
+    void deletingAFolderTakesItsSubtreeOff() {
+        Folder root = folderService.create(ownerId, "root", null);
+        Folder gone = folderService.create(ownerId, "gone", root.getId());
+        Folder goneChild = folderService.create(ownerId, "child", gone.getId());
+        Folder kept = folderService.create(ownerId, "kept", root.getId());
+        upload(goneChild, 500);
+        upload(kept, 20);
+
+        folderService.delete(ownerId, gone.getId());
+
+        assertTotals(root, 20, 1);
+    }
+
+    // the selected folders overlap, but each file below them gives up its blob reference once
+    @Test
+    void deletingNestedFoldersReleasesEachFileOnce() {
+        Folder outer = folderService.create(ownerId, "outer", null);
+        Folder inner = folderService.create(ownerId, "inner", outer.getId());
+        Folder kept = folderService.create(ownerId, "kept", null);
+        byte[] content = new byte[32];
+        random.nextBytes(content);
+        StoredFile copy = upload(inner, content);
+        upload(outer, content);
+        upload(kept, content);
+
+        folderService.deleteAll(ownerId, List.of(outer.getId(), inner.getId()));
+
+        assertEquals(1, jdbc.queryForObject("SELECT ref_count FROM blobs WHERE storage_name = ?", Integer.class,
+                copy.getStorageName()));
+        assertTotals(kept, 32, 1);
+    }
+
+    // a move locks the moved folder's chain and its subtree, an upload below it the same chain: both go
+    // root first, so they queue up instead of deadlocking, and the totals add up afterwards
+    @Test
+    void concurrentMovesAndUploadsAgree() throws Exception {
+        Folder root = folderService.create(ownerId, "root", null);
+        Folder left = folderService.create(ownerId, "left", root.getId());
+        Folder right = folderService.create(ownerId, "right", root.getId());
+        Folder moving = folderService.create(ownerId, "moving", left.getId());
+        Folder leaf = folderService.create(ownerId, "leaf", moving.getId());
+        int rounds = 40;
+
+        CyclicBarrier start = new CyclicBarrier(3);
+        List<Future<?>> workers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(3)) {
+            workers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < rounds; i++) {
+                    folderService.move(ownerId, moving.getId(), (i % 2 == 0 ? right : left).getId());
+                }
+                return null;
+            }));
+            workers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < rounds; i++) {
+                    upload(leaf, 10);
+                }
+                return null;
+            }));
+            workers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < rounds; i++) {
+                    upload(i % 2 == 0 ? left : right, 1);
+                }
+                return null;
+            }));
+            for (Future<?> worker : workers) {
+                worker.get(2, TimeUnit.MINUTES);
+            }
+        }
+
+        assertTotals(root, rounds * 11L, rounds * 2L);
+        assertTotals(leaf, rounds * 10L, rounds);
+        assertEquals(0, inconsistentFolders());
+    }
+
+    // a delete locks the blob row before the chain, as an upload of the same content does, so deleting copies
+    // of a file under one root while more copies are uploaded under it cannot deadlock either
+    @Test
+    void concurrentDeletesAndUploadsOfTheSameContentAgree() throws Exception {
+        Folder root = folderService.create(ownerId, "root", null);
+        Folder left = folderService.create(ownerId, "left", root.getId());
+        Folder right = folderService.create(ownerId, "right", root.getId());
+        byte[] content = new byte[64];
+        random.nextBytes(content);
+        int rounds = 40;
+        List<StoredFile> copies = new ArrayList<>(rounds);
+        for (int i = 0; i < rounds; i++) {
+            copies.add(upload(left, content));
+        }
+
+        CyclicBarrier start = new CyclicBarrier(2);
+        List<Future<?>> workers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            workers.add(executor.submit(() -> {
+                start.await();
+                for (StoredFile copy : copies) {
+                    fileService.delete(copy.getId(), ownerId);
+                }
+                return null;
+            }));
+            workers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < rounds; i++) {
+                    upload(right, content);
+                }
+                return null;
+            }));
+            for (Future<?> worker : workers) {
+                worker.get(2, TimeUnit.MINUTES);
+            }
+        }
+
+        assertTotals(left, 0, 0);
+        assertTotals(root, rounds * 64L, rounds);
+        assertEquals(rounds, jdbc.queryForObject("SELECT ref_count FROM blobs WHERE storage_name = ?", Integer.class,
+                copies.getFirst().getStorageName()));
+        assertEquals(0, inconsistentFolders());
+    }
+
+    private StoredFile upload(Folder folder, int size) {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        return upload(folder, content);
+    }
+
+    private StoredFile upload(Folder folder, byte[] content) {
+        return fileService.uploadStream(new ByteArrayInputStream(content), "file-" + random.nextInt(1_000_000) + ".bin",
+                "application/octet-stream", content.length, ownerId, folder.getId());
+    }
+
+    private void assertTotals(Folder folder, long size, long count) {
+        Folder current = folders.findById(folder.getId()).orElseThrow();
+        assertEquals(size, current.getTotalSizeBytes(), "total size of " + folder.getName());
+        assertEquals(count, current.getTotalFileCount(), "total file count of " + folder.getName());
+    }
+
+    // folders of this user whose stored totals differ from a count of the files below them
+    private int inconsistentFolders() {
+        return jdbc.queryForObject("""
+            SELECT COUNT(*)
+            FROM folders r
+            WHERE r.owner_id = ?
+              AND (r.total_size_bytes, r.total_file_count) <> (
+                  SELECT COALESCE(SUM(f.size_bytes), 0), COUNT(f.id)
+                  FROM folders d
+                  JOIN files f ON f.folder_id = d.id
+                  WHERE starts_with(d.path, r.path))
+            """, Integer.class, ownerId);
+    }
+}
@@ -0,0 +1,125 @@
+package com.kalabay.cloudstorage.folder;
+
+import com.kalabay.cloudstorage.DatabaseTests;
+import com.kalabay.cloudstorage.folder.dto.FolderTreeNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// every write reads the tree first, so it is cached, and then checks the next read sees the write
+class FolderTreeCacheTests extends DatabaseTests {
+
+    @Autowired
+    FolderService folderService;
+
+    @Autowired
+    TransactionTemplate transactions;
+
+    private Long ownerId;
+
+    @BeforeEach
+    void setUp() {
+        ownerId = newUser().getId();
+    }
+
+    @Test
+    void repeatedReadsShareOneSnapshot() {
+        folderService.create(ownerId, "a", null);
+
+        assertSame(folderService.getTree(ownerId), folderService.getTree(ownerId));
+    }
+
+    @Test
+    void createShowsUpInTheNextRead() {
+        Folder a = folderService.create(ownerId, "a", null);
+        assertEquals(List.of("a"), paths());
+
+        folderService.create(ownerId, "b", a.getId());
+
+        assertEquals(List.of("a", "a/b"), paths());
+    }
+
+    @Test
+    void renameShowsUpInTheNextRead() {
+        Folder a = folderService.create(ownerId, "a", null);
+        folderService.create(ownerId, "b", a.getId());
+        assertEquals(List.of("a", "a/b"), paths());
+
+        folderService.rename(ownerId, a.getId(), "renamed");
+
+        assertEquals(List.of("renamed", "renamed/b"), paths());
+    }
+
+    @Test
+    void movesShowUpInTheNextRead() {
+        Folder a = folderService.create(ownerId, "a", null);
+        Folder b = folderService.create(ownerId, "b", null);
+        Folder c = folderService.create(ownerId, "c", null);
+        assertEquals(List.of("a", "b", "c"), paths());
+
+        folderService.move(ownerId, b.getId(), a.getId());
+        assertEquals(List.of("a", "a/b", "c"), paths());
+
+        folderService.moveAll(ownerId, List.of(c.getId()), b.getId());
+        assertEquals(List.of("a", "a/b", "a/b/c"), paths());
+    }
+
+    @Test
+    void deletesShowUpInTheNextRead() {
+        Folder a = folderService.create(ownerId, "a", null);
+        folderService.create(ownerId, "child", a.getId());
+        Folder b = folderService.create(ownerId, "b", null);
+        folderService.create(ownerId, "c", null);
+        assertEquals(List.of("a", "a/child", "b", "c"), paths());
+
+        folderService.delete(ownerId, a.getId());
+        assertEquals(List.of("b", "c"), paths());
+
+        folderService.deleteAll(ownerId, List.of(b.getId()));
+        assertEquals(List.of("c"), paths());
+    }
+
+    // a read while the write is still uncommitted caches the old tree; the commit has to drop it again
+    @Test
+    void aTreeReadBeforeTheCommitIsNotKept() throws Exception {
+        Folder a = folderService.create(ownerId, "a", null);
+        assertEquals(List.of("a"), paths());
+
+        try (ExecutorService reader = Executors.newSingleThreadExecutor()) {
+            transactions.executeWithoutResult(status -> {
+                folderService.rename(ownerId, a.getId(), "renamed");
+                try {
+                    assertEquals(List.of("a"), reader.submit(this::paths).get(10, TimeUnit.SECONDS));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        assertEquals(List.of("renamed"), paths());
+    }
+
+    // the tree as slash-joined name paths, parents before children
+    private List<String> paths() {
+        List<String> paths = new ArrayList<>();
+        collect(folderService.getTree(ownerId), "", paths);
+        return paths;
+    }
+
+    private static void collect(List<FolderTreeNode> nodes, String prefix, List<String> paths) {
+        for (FolderTreeNode node : nodes) {
+            String path = prefix + node.name();
+            paths.add(path);
+            collect(node.children(), path + "/", paths);
+        }
+    }
+}
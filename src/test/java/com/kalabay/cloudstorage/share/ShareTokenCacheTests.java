@@ -0,0 +1,155 @@
+package com.kalabay.cloudstorage.share;
+
+import com.kalabay.cloudstorage.DatabaseTests;
+import com.kalabay.cloudstorage.file.FileService;
+import com.kalabay.cloudstorage.file.StoredFile;
+import com.kalabay.cloudstorage.folder.Folder;
+import com.kalabay.cloudstorage.folder.FolderService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// every link is resolved first, so it is cached, and then has to stop working once its share or file goes
+class ShareTokenCacheTests extends DatabaseTests {
+
+    @Autowired
+    FileShareService shareService;
+
+    @Autowired
+    FileService fileService;
+
+    @Autowired
+    FolderService folderService;
+
+    @Autowired
+    TransactionTemplate transactions;
+
+    private final Random random = new Random();
+    private Long ownerId;
+    private Folder folder;
+
+    @BeforeEach
+    void setUp() {
+        ownerId = newUser().getId();
+        folder = folderService.create(ownerId, "shared", null);
+    }
+
+    @Test
+    void revokedLinkStopsWorking() {
+        StoredFile file = upload();
+        FileShare share = resolvedShare(file);
+
+        shareService.revoke(ownerId, share.getId());
+
+        assertRevoked(share);
+    }
+
+    @Test
+    void linksOfADeletedFileStopWorking() {
+        StoredFile file = upload();
+        FileShare first = resolvedShare(file);
+        FileShare second = resolvedShare(file);
+
+        fileService.delete(file.getId(), ownerId);
+
+        assertGone(first);
+        assertGone(second);
+    }
+
+    @Test
+    void linksOfFilesDeletedTogetherStopWorking() {
+        StoredFile deleted = upload();
+        StoredFile kept = upload();
+        FileShare gone = resolvedShare(deleted);
+        FileShare working = resolvedShare(kept);
+
+        fileService.deleteAll(ownerId, List.of(deleted.getId()));
+
+        assertGone(gone);
+        assertNotNull(shareService.resolvePublicDownload(working.getToken(), null));
+    }
+
+    @Test
+    void linksOfADeletedFolderStopWorking() {
+        Folder inside = folderService.create(ownerId, "inside", folder.getId());
+        FileShare share = resolvedShare(upload(inside));
+
+        folderService.delete(ownerId, folder.getId());
+
+        assertGone(share);
+    }
+
+    @Test
+    void linksBelowBulkDeletedFoldersStopWorking() {
+        Folder inside = folderService.create(ownerId, "inside", folder.getId());
+        Folder other = folderService.create(ownerId, "other", null);
+        FileShare nested = resolvedShare(upload(inside));
+        FileShare top = resolvedShare(upload());
+        FileShare working = resolvedShare(upload(other));
+
+        folderService.deleteAll(ownerId, List.of(folder.getId(), inside.getId()));
+
+        assertGone(nested);
+        assertGone(top);
+        assertNotNull(shareService.resolvePublicDownload(working.getToken(), null));
+    }
+
+    // a resolve while the revoke is still uncommitted caches the live share; the commit has to drop it again
+    @Test
+    void aLinkResolvedBeforeTheRevokeCommitsIsNotKept() throws Exception {
+        FileShare share = resolvedShare(upload());
+
+        try (ExecutorService reader = Executors.newSingleThreadExecutor()) {
+            transactions.executeWithoutResult(status -> {
+                shareService.revoke(ownerId, share.getId());
+                try {
+                    assertNotNull(reader.submit(() -> shareService.resolvePublicDownload(share.getToken(), null))
+                            .get(10, TimeUnit.SECONDS));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        assertRevoked(share);
+    }
+
+    private FileShare resolvedShare(StoredFile file) {
+        FileShare share = shareService.createShare(ownerId, file.getId(), null);
+        assertNotNull(shareService.resolvePublicDownload(share.getToken(), null));
+        return share;
+    }
+
+    private void assertRevoked(FileShare share) {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> shareService.resolvePublicDownload(share.getToken(), null));
+        assertEquals("Share revoked", e.getMessage());
+    }
+
+    private void assertGone(FileShare share) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> shareService.resolvePublicDownload(share.getToken(), null));
+        assertEquals("Share not found", e.getMessage());
+    }
+
+    private StoredFile upload() {
+        return upload(folder);
+    }
+
+    private StoredFile upload(Folder target) {
+        byte[] content = new byte[64];
+        random.nextBytes(content);
+        return fileService.uploadStream(new ByteArrayInputStream(content), "file-" + random.nextInt(1_000_000) + ".bin",
+                "application/octet-stream", content.length, ownerId, target.getId());
+    }
+}
@@ -0,0 +1,73 @@
+package com.kalabay.cloudstorage.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockArenaTests {
+
+    @Test
+    void allocatesDistinctBlocksUntilFull() {
+        BlockArena arena = new BlockArena(8 * 1024, 1024);
+
+        int[] first = arena.allocate(5);
+        int[] second = arena.allocate(3);
+
+        assertEquals(0, arena.freeBlocks());
+        Set<Integer> blocks = new HashSet<>();
+        Arrays.stream(first).forEach(blocks::add);
+        Arrays.stream(second).forEach(blocks::add);
+        assertEquals(8, blocks.size());
+        assertNull(arena.allocate(1));
+    }
+
+    @Test
+    void reusesReleasedBlocks() {
+        BlockArena arena = new BlockArena(4 * 1024, 1024);
+        int[] blocks = arena.allocate(4);
+
+        arena.release(Arrays.copyOfRange(blocks, 0, 2));
+
+        assertEquals(2, arena.freeBlocks());
+        assertNull(arena.allocate(3));
+        assertNotNull(arena.allocate(2));
+    }
+
+    @Test
+    void roundsSizesUpToWholeBlocks() {
+        BlockArena arena = new BlockArena(4 * 1024, 1024);
+
+        assertEquals(0, arena.blocksFor(0));
+        assertEquals(1, arena.blocksFor(1));
+        assertEquals(1, arena.blocksFor(1024));
+        assertEquals(2, arena.blocksFor(1025));
+    }
+
+    @Test
+    void keepsBlocksApart() {
+        BlockArena arena = new BlockArena(4 * 1024, 1024);
+        int[] blocks = arena.allocate(2);
+        byte[] ones = filled(1024, (byte) 1);
+        byte[] twos = filled(1024, (byte) 2);
+
+        arena.write(blocks[0], 0, ones, 0, ones.length);
+        arena.write(blocks[1], 0, twos, 0, twos.length);
+
+        byte[] read = new byte[1024];
+        arena.read(blocks[0], 0, read, 0, read.length);
+        assertArrayEquals(ones, read);
+        arena.read(blocks[1], 0, read, 0, read.length);
+        assertArrayEquals(twos, read);
+        assertEquals(2, arena.read(blocks[1], 1023));
+    }
+
+    private static byte[] filled(int length, byte value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, value);
+        return bytes;
+    }
+}
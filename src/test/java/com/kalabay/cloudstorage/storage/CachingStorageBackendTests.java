@@ -0,0 +1,282 @@
+package com.kalabay.cloudstorage.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingStorageBackendTests {
+
+    private static final int BLOCK = 1024;
+
+    private final MemoryBackend backend = new MemoryBackend();
+
+    @Test
+    void servesRepeatedReadsFromMemory() throws Exception {
+        CachingStorageBackend cache = cache(8 * BLOCK);
+        byte[] content = backend.add("a", 3000);
+
+        assertArrayEquals(content, read(cache.get("a")));
+        assertArrayEquals(content, read(cache.get("a")));
+
+        assertEquals(1, backend.gets.get());
+        assertEquals(1, cache.size());
+        assertEquals(3000, cache.weight());
+    }
+
+    @Test
+    void knownSizeSkipsTheLookup() throws Exception {
+        CachingStorageBackend cache = cache(8 * BLOCK);
+        byte[] content = backend.add("a", 3000);
+
+        assertArrayEquals(content, read(cache.get("a", content.length)));
+
+        assertEquals(0, backend.sizes.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void wrongKnownSizeIsNotCached() throws Exception {
+        CachingStorageBackend cache = cache(8 * BLOCK);
+        byte[] content = backend.add("a", 3000);
+
+        assertArrayEquals(content, read(cache.get("a", 2000)));
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void leavesOutBlobsAboveTheFileLimit() throws Exception {
+        CachingStorageBackend cache = new CachingStorageBackend(backend, 8 * BLOCK, 2 * BLOCK, BLOCK, new SimpleMeterRegistry());
+        byte[] content = backend.add("big", 3000);
+
+        assertArrayEquals(content, read(cache.get("big")));
+        assertArrayEquals(content, read(cache.get("big")));
+
+        assertEquals(0, cache.size());
+        // remembered as too large, so the second read did not ask again
+        assertEquals(1, backend.sizes.get());
+    }
+
+    @Test
+    void admitsABlobReadMoreOftenThanTheOneItPushesOut() throws Exception {
+        CachingStorageBackend cache = cache(4 * BLOCK);
+        backend.add("cold", 4 * BLOCK);
+        byte[] hot = backend.add("hot", 4 * BLOCK);
+        read(cache.get("cold"));
+
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(hot, read(cache.get("hot")));
+        }
+
+        assertEquals(1, cache.size());
+        int gets = backend.gets.get();
+        read(cache.get("hot"));
+        assertEquals(gets, backend.gets.get());
+    }
+
+    @Test
+    void rejectsAOneOffReadWithoutAskingForItsSize() throws Exception {
+        CachingStorageBackend cache = cache(4 * BLOCK);
+        byte[] hot = backend.add("hot", 4 * BLOCK);
+        byte[] once = backend.add("once", 100);
+        for (int i = 0; i < 3; i++) {
+            read(cache.get("hot"));
+        }
+        int sizes = backend.sizes.get();
+
+        assertArrayEquals(once, read(cache.get("once")));
+
+        assertEquals(sizes, backend.sizes.get());
+        int gets = backend.gets.get();
+        assertArrayEquals(hot, read(cache.get("hot")));
+        assertEquals(gets, backend.gets.get());
+    }
+
+    @Test
+    void doesNotEvictAnEntryWhileItIsRead() throws Exception {
+        CachingStorageBackend cache = cache(4 * BLOCK);
+        byte[] first = backend.add("first", 4 * BLOCK);
+        byte[] second = backend.add("second", 4 * BLOCK);
+
+        InputStream reader = cache.get("first");
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(second, read(cache.get("second")));
+        }
+        assertArrayEquals(first, read(reader));
+
+        // once the reader is gone the more popular blob takes its place
+        read(cache.get("second"));
+        int gets = backend.gets.get();
+        read(cache.get("second"));
+        assertEquals(gets, backend.gets.get());
+    }
+
+    @Test
+    void keepsDeletedBlocksUntilTheLastReaderCloses() throws Exception {
+        CachingStorageBackend cache = cache(4 * BLOCK);
+        byte[] first = backend.add("first", 4 * BLOCK);
+        byte[] second = backend.add("second", 4 * BLOCK);
+        read(cache.get("first"));
+
+        InputStream reader = cache.get("first");
+        cache.delete("first");
+        // the blocks are still held, so this one cannot overwrite them
+        assertArrayEquals(second, read(cache.get("second")));
+
+        assertArrayEquals(first, read(reader));
+        assertEquals(0, cache.size());
+        read(cache.get("second"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void discardsABlobDeletedWhileItWasLoading() throws Exception {
+        CachingStorageBackend cache = cache(8 * BLOCK);
+        byte[] content = backend.add("a", 3000);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch deleted = new CountDownLatch(1);
+        backend.beforeGet = () -> {
+            reading.countDown();
+            await(deleted);
+        };
+
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            Future<byte[]> load = executor.submit(() -> read(cache.get("a")));
+            await(reading);
+            backend.beforeGet = null;
+            cache.delete("a");
+            deleted.countDown();
+
+            assertArrayEquals(content, load.get(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    void readsRangesAcrossBlockBoundaries() throws Exception {
+        CachingStorageBackend cache = cache(8 * BLOCK);
+        byte[] content = backend.add("a", 3 * BLOCK + 100);
+        read(cache.get("a"));
+        int gets = backend.gets.get();
+
+        assertArrayEquals(Arrays.copyOfRange(content, BLOCK - 10, 2 * BLOCK + 10),
+                read(cache.openRange("a", BLOCK - 10, BLOCK + 20)));
+        assertArrayEquals(Arrays.copyOfRange(content, 3 * BLOCK, content.length),
+                read(cache.openRange("a", 3 * BLOCK, 1000)));
+        try (InputStream in = cache.get("a")) {
+            assertEquals(BLOCK + 1, in.skip(BLOCK + 1));
+            assertEquals(content[BLOCK + 1] & 0xff, in.read());
+            byte[] buffer = new byte[2 * BLOCK];
+            assertEquals(2 * BLOCK, in.read(buffer, 0, buffer.length));
+            assertArrayEquals(Arrays.copyOfRange(content, BLOCK + 2, 3 * BLOCK + 2), buffer);
+        }
+
+        assertEquals(gets, backend.gets.get());
+    }
+
+    @Test
+    void rangesOfUncachedBlobsGoToTheBackend() throws Exception {
+        CachingStorageBackend cache = cache(8 * BLOCK);
+        byte[] content = backend.add("a", 3000);
+
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 200), read(cache.openRange("a", 100, 100)));
+
+        assertEquals(0, cache.size());
+    }
+
+    private CachingStorageBackend cache(long maxSize) {
+        return new CachingStorageBackend(backend, maxSize, maxSize, BLOCK, new SimpleMeterRegistry());
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class MemoryBackend implements StorageBackend {
+
+        private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+        private final Random random = new Random(42);
+        final AtomicInteger gets = new AtomicInteger();
+        final AtomicInteger sizes = new AtomicInteger();
+        volatile Runnable beforeGet;
+
+        byte[] add(String key, int length) {
+            byte[] content = new byte[length];
+            random.nextBytes(content);
+            blobs.put(key, content);
+            return content;
+        }
+
+        @Override
+        public void put(String key, Path source) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InputStream get(String key) throws IOException {
+            gets.incrementAndGet();
+            Runnable hook = beforeGet;
+            if (hook != null) {
+                hook.run();
+            }
+            return new ByteArrayInputStream(blob(key));
+        }
+
+        @Override
+        public InputStream openRange(String key, long offset, long length) throws IOException {
+            byte[] blob = blob(key);
+            int from = (int) Math.min(offset, blob.length);
+            return new ByteArrayInputStream(blob, from, (int) Math.min(length, blob.length - from));
+        }
+
+        @Override
+        public boolean exists(String key) {
+            return blobs.containsKey(key);
+        }
+
+        @Override
+        public long size(String key) throws IOException {
+            sizes.incrementAndGet();
+            return blob(key).length;
+        }
+
+        @Override
+        public void delete(String key) {
+            // kept, so a read racing the delete still gets the bytes, as it would from a real backend
+        }
+
+        private byte[] blob(String key) throws IOException {
+            byte[] blob = blobs.get(key);
+            if (blob == null) {
+                throw new IOException("No blob " + key);
+            }
+            return blob;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.kalabay.cloudstorage.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrequencySketchTests {
+
+    @Test
+    void countsIncrementsPerKey() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("hot");
+        }
+        sketch.increment("warm");
+
+        assertEquals(5, sketch.frequency("hot"));
+        assertEquals(1, sketch.frequency("warm"));
+        assertEquals(0, sketch.frequency("cold"));
+    }
+
+    @Test
+    void saturatesAtFifteen() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("hot");
+        }
+
+        assertEquals(15, sketch.frequency("hot"));
+    }
+
+    @Test
+    void halvesCountsOnceTheSampleIsFull() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 12; i++) {
+            sketch.increment("hot");
+        }
+
+        // 128 slots, so the counters are aged after 1280 additions
+        for (int i = 0; i < 1280 - 12; i++) {
+            sketch.increment("once-" + i);
+        }
+
+        // other keys may share a counter with it, but nothing above 15 survives halving
+        int aged = sketch.frequency("hot");
+        assertTrue(aged >= 6 && aged <= 7, "frequency after aging was " + aged);
+    }
+}
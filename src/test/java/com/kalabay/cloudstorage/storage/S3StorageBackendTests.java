@@ -0,0 +1,122 @@
+package com.kalabay.cloudstorage.storage;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers(disabledWithoutDocker = true)
+class S3StorageBackendTests {
+
+    private static final String BUCKET = "cloud-storage-test";
+
+    @Container
+    static final MinIOContainer minio = new MinIOContainer("minio/minio:RELEASE.2024-10-13T13-34-11Z");
+
+    static S3StorageBackend storage;
+
+    @BeforeAll
+    static void setUp() {
+        try (S3Client admin = S3Client.builder()
+                .endpointOverride(URI.create(minio.getS3URL()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(minio.getUserName(), minio.getPassword())))
+                .forcePathStyle(true)
+                .build()) {
+            admin.createBucket(b -> b.bucket(BUCKET));
+        }
+
+        storage = new S3StorageBackend(
+                BUCKET,
+                "us-east-1",
+                minio.getS3URL(),
+                minio.getUserName(),
+                minio.getPassword(),
+                true,
+                "blobs/",
+                4,
+                DataSize.ofMegabytes(6),
+                DataSize.ofMegabytes(5),
+                3,
+                false
+        );
+    }
+
+    @AfterAll
+    static void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void storesSmallObjectWithSinglePut() throws Exception {
+        byte[] content = randomBytes(1024);
+        storage.put("aaaa0001", tempFile(content));
+
+        assertTrue(storage.exists("aaaa0001"));
+        assertEquals(content.length, storage.size("aaaa0001"));
+        try (InputStream in = storage.get("aaaa0001")) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void storesLargeObjectWithParallelMultipartUpload() throws Exception {
+        byte[] content = randomBytes(12 * 1024 * 1024 + 17);
+        Path source = tempFile(content);
+        storage.put("bbbb0002", source);
+
+        assertFalse(Files.exists(source));
+        assertEquals(content.length, storage.size("bbbb0002"));
+        try (InputStream in = storage.get("bbbb0002")) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void readsRanges() throws Exception {
+        byte[] content = randomBytes(4096);
+        storage.put("cccc0003", tempFile(content));
+
+        try (InputStream in = storage.openRange("cccc0003", 100, 50)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 100, 150), in.readAllBytes());
+        }
+        try (InputStream in = new StorageResource(storage, "cccc0003", content.length).getInputStream()) {
+            assertEquals(4000, in.skip(4000));
+            assertArrayEquals(Arrays.copyOfRange(content, 4000, 4096), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void deletesObjects() throws Exception {
+        storage.put("dddd0004", tempFile(randomBytes(10)));
+        storage.delete("dddd0004");
+
+        assertFalse(storage.exists("dddd0004"));
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static Path tempFile(byte[] content) throws Exception {
+        return Files.write(Files.createTempFile("s3-test", ".blob"), content);
+    }
+}